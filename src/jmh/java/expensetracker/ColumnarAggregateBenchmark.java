@@ -0,0 +1,110 @@
+package expensetracker;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// SQL SUM/GROUP BY over the expenses table against loops over ColumnarExpenseStore's arrays,
+// on the suite's seeded database (10M rows by default). Read-only, so it works on the seeded
+// file directly.
+// Usage: java -jar target/benchmarks.jar ColumnarAggregateBenchmark [-p rows=1000000]
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ColumnarAggregateBenchmark {
+    private static final int ACCOUNT = 1;
+
+    @Param({"10000000"})
+    public int rows;
+
+    private Connection conn;
+    private PreparedStatement totalsByAccount;
+    private PreparedStatement totalsByCategory;
+    private PreparedStatement totalsByMonth;
+    private ColumnarExpenseStore store;
+    private int fromMonth;
+    private int toMonth;
+
+    @Setup
+    public void setUp() throws IOException, SQLException, InterruptedException {
+        Logger.getLogger(ExpenseTracker.class.getName()).setLevel(Level.WARNING);
+        Path seeded = ExpenseBenchmarkSuite.seeded(rows, ExpenseBenchmarkSuite.accountsFor(rows));
+        conn = DriverManager.getConnection(ExpenseBenchmarkSuite.url(seeded));
+        totalsByAccount = conn.prepareStatement("SELECT account_id, SUM(amount) FROM expenses GROUP BY account_id");
+        totalsByCategory = conn.prepareStatement("SELECT category_id, SUM(amount) FROM expenses WHERE account_id = ? GROUP BY category_id");
+        totalsByCategory.setInt(1, ACCOUNT);
+        totalsByMonth = conn.prepareStatement("SELECT substr(date, 1, 7), SUM(amount) FROM expenses WHERE account_id = ? GROUP BY substr(date, 1, 7)");
+        totalsByMonth.setInt(1, ACCOUNT);
+        store = ColumnarExpenseStore.load(conn);
+        fromMonth = ColumnarExpenseStore.epochMonth(2015, 1);
+        toMonth = ColumnarExpenseStore.epochMonth(2024, 12);
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        conn.close();
+    }
+
+    @Benchmark
+    public long sqlTotalsByAccount() throws SQLException {
+        return drain(totalsByAccount);
+    }
+
+    @Benchmark
+    public long[] columnTotalsByAccount() {
+        return store.totalsByAccountCents();
+    }
+
+    @Benchmark
+    public long sqlTotalsByCategory() throws SQLException {
+        return drain(totalsByCategory);
+    }
+
+    @Benchmark
+    public long[] columnTotalsByCategory() {
+        return store.totalsByCategoryCents(ACCOUNT);
+    }
+
+    @Benchmark
+    public long sqlTotalsByMonth() throws SQLException {
+        return drain(totalsByMonth);
+    }
+
+    @Benchmark
+    public long[] columnTotalsByMonth() {
+        return store.totalsByMonthCents(ACCOUNT, fromMonth, toMonth);
+    }
+
+    // Reads every row as the report would, summing the totals so nothing is optimized away
+    private static long drain(PreparedStatement stmt) throws SQLException {
+        long sum = 0;
+        try (ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                sum += rs.getLong(2);
+            }
+        }
+        return sum;
+    }
+}
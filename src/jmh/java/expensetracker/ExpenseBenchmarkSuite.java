@@ -0,0 +1,273 @@
+package expensetracker;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Regression benchmarks for every ExpenseTracker data path: insert throughput, per-account fetch
+// latency, report aggregation latency and transfer contention, each on synthetic databases of
+// 10k, 1M and 10M expenses spread over many accounts. Latency benchmarks are sampled, so the
+// JSON results carry percentiles; insert throughput is rows per second. The amount benchmarks sum
+// and parse that many amounts as double, as long minor units (Money) and as BigDecimal.
+// Every trial works on a fresh copy of a seeded database, built once per size and schema version
+// in java.io.tmpdir (expense-jmh-<rows>-v<version>.db) because seeding 10M rows takes minutes.
+// Usage: mvn -Pjmh package && java -jar target/benchmarks.jar ExpenseBenchmarkSuite -rf json -rff benchmark-results.json
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ExpenseBenchmarkSuite {
+    private static final String[] CATEGORIES = {"Food", "Transport", "Bills", "Entertainment", "Health", "Travel"};
+    private static final int INSERT_BATCH = 10_000;
+    private static final Money ONE_DOLLAR = Money.ofMinor(100);
+
+    @Param({"10000", "1000000", "10000000"})
+    public int rows;
+
+    private int accounts;
+    private Path dbFile;
+    private List<Expense> insertBatch;
+
+    // Each thread's own random account picks
+    @State(Scope.Thread)
+    public static class Picks {
+        private final Random random = new Random(Thread.currentThread().getId());
+
+        int account(int accounts) {
+            return 1 + random.nextInt(accounts);
+        }
+    }
+
+    // The same random amounts in each representation; parsing uses at most the first million
+    @State(Scope.Benchmark)
+    public static class Amounts {
+        long[] minorUnits;
+        double[] doubles;
+        BigDecimal[] decimals;
+        String[] texts;
+
+        @Setup
+        public void setUp(ExpenseBenchmarkSuite suite) {
+            Random random = new Random(42);
+            minorUnits = new long[suite.rows];
+            doubles = new double[suite.rows];
+            decimals = new BigDecimal[suite.rows];
+            texts = new String[Math.min(suite.rows, 1_000_000)];
+            for (int i = 0; i < suite.rows; i++) {
+                minorUnits[i] = 1 + random.nextInt(1_000_000);
+                doubles[i] = minorUnits[i] / 100.0;
+                decimals[i] = BigDecimal.valueOf(minorUnits[i], 2);
+                if (i < texts.length) {
+                    texts[i] = Money.format(minorUnits[i]);
+                }
+            }
+        }
+
+        // How far the double total drifted from the exact one, next to the timings
+        @TearDown
+        public void tearDown() {
+            long exact = Money.sum(minorUnits, 0, minorUnits.length);
+            double approximate = 0;
+            for (double value : doubles) {
+                approximate += value;
+            }
+            System.out.printf("%nExact total %s, double %.6f (off by %.6f)%n", Money.format(exact), approximate, approximate - exact / 100.0);
+        }
+    }
+
+    @Setup
+    public void setUp() throws IOException, SQLException, InterruptedException {
+        Logger.getLogger(ExpenseTracker.class.getName()).setLevel(Level.WARNING);
+        accounts = accountsFor(rows);
+        Path seeded = seeded(rows, accounts);
+        dbFile = Files.createTempFile("expense-jmh-", ".db");
+        Files.copy(seeded, dbFile, StandardCopyOption.REPLACE_EXISTING);
+        ExpenseTracker.initDB(url(dbFile));
+        insertBatch = IntStream.range(0, INSERT_BATCH).mapToObj(i -> syntheticExpense(i, accounts)).collect(Collectors.toList());
+    }
+
+    @TearDown
+    public void tearDown() throws IOException, InterruptedException {
+        ExpenseTracker.closeDB();
+        deleteDatabase(dbFile);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @OperationsPerInvocation(INSERT_BATCH)
+    public BulkInsertResult insertBulk() {
+        return ExpenseTracker.addExpenses(insertBatch);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public List<Expense> fetchByAccount(Picks picks) {
+        return ExpenseTracker.findExpensesByAccount(picks.account(accounts));
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Map<Integer, Long> reportTotalsByAccount() throws SQLException {
+        try (PooledConnection conn = ExpenseTracker.database().reader()) {
+            return ExpenseSummary.totalsByAccount(conn);
+        }
+    }
+
+    // Many threads moving money between random accounts
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Threads(8)
+    public void transferContended(Picks picks) throws SQLException {
+        int from = picks.account(accounts);
+        int to = 1 + (from + picks.account(accounts - 1) - 1) % accounts;
+        ExpenseTracker.transferFunds(from, to, ONE_DOLLAR);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public double sumDouble(Amounts amounts) {
+        double total = 0;
+        for (double value : amounts.doubles) {
+            total += value;
+        }
+        return total;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public long sumMoney(Amounts amounts) {
+        return Money.sum(amounts.minorUnits, 0, amounts.minorUnits.length);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public BigDecimal sumBigDecimal(Amounts amounts) {
+        BigDecimal total = BigDecimal.ZERO;
+        for (BigDecimal value : amounts.decimals) {
+            total = total.add(value);
+        }
+        return total;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public double parseDouble(Amounts amounts) {
+        double total = 0;
+        for (String text : amounts.texts) {
+            total += Double.parseDouble(text);
+        }
+        return total;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public long parseMoney(Amounts amounts) {
+        long total = 0;
+        for (String text : amounts.texts) {
+            total += Money.parseMinor(text);
+        }
+        return total;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public BigDecimal parseBigDecimal(Amounts amounts) {
+        BigDecimal total = BigDecimal.ZERO;
+        for (String text : amounts.texts) {
+            total = total.add(new BigDecimal(text));
+        }
+        return total;
+    }
+
+    static int accountsFor(int rows) {
+        return Math.max(10, Math.min(10_000, rows / 1_000));
+    }
+
+    // The seeded database of a size, built by the first trial that needs it
+    static synchronized Path seeded(int rows, int accounts) throws IOException, SQLException, InterruptedException {
+        Path file = Paths.get(System.getProperty("java.io.tmpdir"), "expense-jmh-" + rows + "-v" + SchemaMigrations.latestVersion() + ".db");
+        if (Files.exists(file)) {
+            return file;
+        }
+        Path partial = Paths.get(file + ".part");
+        deleteDatabase(partial);
+        ExpenseTracker.initDB(url(partial));
+        try (PooledConnection conn = ExpenseTracker.database().writer()) {
+            conn.connection().setAutoCommit(false);
+            try {
+                PreparedStatement stmt = conn.prepare("INSERT INTO accounts (id, name, balance) VALUES (?, ?, 100000000)");
+                for (int i = 1; i <= accounts; i++) {
+                    stmt.setInt(1, i);
+                    stmt.setString(2, "Account " + i);
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+                conn.connection().commit();
+            } finally {
+                conn.connection().setAutoCommit(true);
+            }
+        }
+        ExpenseTracker.database().accounts().invalidate();
+        BulkInsertResult result = ExpenseTracker.addExpenses(IntStream.range(0, rows).mapToObj(i -> syntheticExpense(i, accounts)));
+        ExpenseTracker.closeDB(); // Checkpoints the WAL into the file
+        if (result.getInsertedRows() != rows) {
+            throw new IllegalStateException("Seeded " + result.getInsertedRows() + " of " + rows + " rows");
+        }
+        Files.move(partial, file, StandardCopyOption.ATOMIC_MOVE);
+        deleteDatabase(partial);
+        return file;
+    }
+
+    private static Expense syntheticExpense(int i, int accounts) {
+        String date = String.format("%04d-%02d-%02d", 2015 + i % 10, 1 + i % 12, 1 + i % 28);
+        return new Expense(1 + i % accounts, date, "Synthetic expense " + i, 100 + i % 50_000, CATEGORIES[i % CATEGORIES.length]);
+    }
+
+    static String url(Path file) {
+        return "jdbc:sqlite:" + file.toAbsolutePath();
+    }
+
+    // A database file and whatever SQLite and the write-behind queue keep beside it
+    private static void deleteDatabase(Path file) throws IOException {
+        for (String suffix : new String[]{"", "-wal", "-shm", ".writes"}) {
+            Files.deleteIfExists(Paths.get(file + suffix));
+        }
+    }
+}
@@ -0,0 +1,470 @@
+package expensetracker;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Write-behind queue for expense inserts from the GUI, the HTTP API and the static API.
+// submit() appends the expenses to the ExpenseJournal and returns once that is fsync'd, so an
+// acknowledged expense survives a crash. The submission then waits in a bounded ring buffer
+// and one writer thread commits what has queued as a single transaction, after flushMillis or
+// once flushRows rows are waiting, whichever comes first. That transaction also records the
+// journal sequence it reached, which is what makes replay at startup exact. If a group fails a
+// constraint, each submission is retried on its own so one bad row only fails its own caller.
+// Any other failure (busy past busy_timeout, I/O) is retried with backoff; if it persists the
+// writer stops, failing what is queued but leaving it in the journal for the next start to replay.
+public class BatchingExpenseWriter implements AutoCloseable {
+    private static final Logger logger = Logger.getLogger(BatchingExpenseWriter.class.getName());
+
+    static final int FLUSH_ROWS = Integer.getInteger("expensetracker.writes.flush_rows", 1_000);
+    static final long FLUSH_MILLIS = Long.getLong("expensetracker.writes.flush_millis", 20);
+    static final int CAPACITY = Integer.getInteger("expensetracker.writes.capacity", 16_384); // Submissions, not rows
+    private static final long TRUNCATE_BYTES = 4L << 20;
+    private static final int MAX_ATTEMPTS = 8;
+    private static final long FIRST_BACKOFF_MILLIS = 10; // Doubles per attempt, about 1.3s in all
+    private static final Metrics.Timer GROUP_COMMIT = Metrics.timer("writes.groupCommit");
+    private static final Metrics.Timer JOURNAL_SYNC = Metrics.timer("writes.journalSync");
+
+    // Called on the writer thread after every commit, once the submitters' futures are complete,
+    // with the rows and the id of the first; the others follow consecutively
+    public interface CommitListener {
+        void committed(List<Expense> rows, long firstId);
+    }
+
+    private static final class Pending {
+        final long seq; // Journal sequence, 0 without a journal
+        final List<Expense> expenses;
+        final CompletableFuture<Long> firstId = new CompletableFuture<>();
+
+        Pending(long seq, List<Expense> expenses) {
+            this.seq = seq;
+            this.expenses = expenses;
+        }
+    }
+
+    private final Database db;
+    private final ExpenseJournal journal; // Null: submissions are only durable once committed
+    private final int flushRows;
+    private final long flushNanos;
+    private final CommitListener listener;
+    private final BlockingQueue<Pending> queue;
+    private final Object submitLock = new Object(); // Keeps journal order and queue order the same
+    private CompletableFuture<Long> lastSubmitted = CompletableFuture.completedFuture(0L); // Guarded by submitLock
+    private final Thread writer;
+    private volatile boolean running = true;
+    private volatile SQLException failure; // Why the writer stopped on its own, null while it works
+    private long appliedSeq; // Writer thread only
+
+    // The writer for 'db', journaling next to the database file; anything a previous run
+    // acknowledged but did not commit is written before this returns
+    public static BatchingExpenseWriter open(Database db, CommitListener listener) throws SQLException, IOException {
+        Path file = journalFile(db.getUrl());
+        ExpenseJournal journal = null;
+        if (file != null) {
+            long applied;
+            try (PooledConnection conn = db.writer()) {
+                applied = ExpenseJournal.appliedSeq(conn);
+            }
+            journal = ExpenseJournal.open(file, applied);
+            if (journal == null) {
+                logger.warning("Write journal " + file + " is held by another process; inserts are durable only once committed.");
+            }
+        }
+        return new BatchingExpenseWriter(db, journal, FLUSH_ROWS, FLUSH_MILLIS, CAPACITY, listener);
+    }
+
+    public BatchingExpenseWriter(Database db, ExpenseJournal journal, int flushRows, long flushMillis, int capacity, CommitListener listener) {
+        this.db = db;
+        this.journal = journal;
+        this.flushRows = flushRows;
+        this.flushNanos = TimeUnit.MILLISECONDS.toNanos(flushMillis);
+        this.listener = listener;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        if (journal != null) {
+            replay(journal.unapplied());
+        }
+        this.writer = new Thread(this::work, "expense-batch-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // Journal file for a JDBC url: ExpensesDB.db -> ExpensesDB.db.writes, none for in-memory
+    // databases. -Dexpensetracker.writes.journal=<path> overrides it, =none turns it off.
+    static Path journalFile(String url) {
+        String override = System.getProperty("expensetracker.writes.journal");
+        if (override != null) {
+            return override.equals("none") ? null : Paths.get(override);
+        }
+        Path file = Database.file(url);
+        return file == null ? null : Paths.get(file + ".writes");
+    }
+
+    // Queue one expense. Returns once it is journaled; the future completes with its id once committed.
+    public CompletableFuture<Long> submit(Expense expense) {
+        return submitAll(Collections.singletonList(expense));
+    }
+
+    // Queue expenses that are committed together; completes with the id of the first, the rest follow consecutively.
+    // Blocks while the ring buffer is full.
+    public CompletableFuture<Long> submitAll(List<Expense> expenses) {
+        if (!running) {
+            throw failure != null ? new IllegalStateException("Writer stopped: " + failure.getMessage(), failure)
+                    : new IllegalStateException("Writer is closed");
+        }
+        if (expenses.isEmpty()) {
+            return CompletableFuture.completedFuture(0L);
+        }
+        Pending pending;
+        boolean interrupted = false;
+        synchronized (submitLock) {
+            try {
+                pending = new Pending(journal != null ? journal.append(expenses) : 0, expenses);
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not journal expenses: " + e.getMessage(), e);
+            }
+            // Once journaled it has to be queued, or replay order and applied_seq would disagree
+            while (true) {
+                try {
+                    queue.put(pending);
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            lastSubmitted = pending.firstId;
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure != null) {
+            failQueued(); // Raced with halt(); the writer thread won't take it any more
+        }
+        if (journal != null) {
+            Metrics.Sample sample = JOURNAL_SYNC.start();
+            try {
+                journal.sync(pending.seq);
+                sample.stop(pending.expenses.size());
+            } catch (IOException e) {
+                sample.fail(e);
+                // Still queued and committed as usual, just not crash-safe until then
+                logger.warning("Could not sync write journal: " + e.getMessage());
+            }
+        }
+        return pending.firstId;
+    }
+
+    // Wait until everything submitted before this call is committed or has failed (its submitter
+    // hears which); groups commit in queue order, so that is when the last submission completes
+    public void flush() throws InterruptedException {
+        CompletableFuture<Long> last;
+        synchronized (submitLock) {
+            last = lastSubmitted;
+        }
+        try {
+            last.get();
+        } catch (ExecutionException e) {
+            // Reported to whoever submitted it
+        }
+    }
+
+    private void work() {
+        List<Pending> group = new ArrayList<>();
+        Pending carried = null; // Didn't fit into the previous group
+        try {
+            while (running || carried != null || !queue.isEmpty()) {
+                Pending first = carried != null ? carried : queue.poll(50, TimeUnit.MILLISECONDS);
+                carried = null;
+                if (first == null) {
+                    continue;
+                }
+                group.add(first);
+                int rows = first.expenses.size();
+                long deadline = System.nanoTime() + flushNanos;
+                while (rows < flushRows) {
+                    long wait = running ? deadline - System.nanoTime() : 0; // Closing: no need to wait for more
+                    Pending next = wait > 0 ? queue.poll(wait, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    if (rows + next.expenses.size() > flushRows) {
+                        carried = next;
+                        break;
+                    }
+                    group.add(next);
+                    rows += next.expenses.size();
+                }
+                commit(group);
+                group.clear();
+                if (queue.isEmpty() && carried == null) {
+                    truncateJournal(TRUNCATE_BYTES);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        SQLException stopped = failure != null ? failure : new SQLException("Writer stopped");
+        for (Pending pending : group) {
+            pending.firstId.completeExceptionally(stopped);
+        }
+        if (carried != null) {
+            carried.firstId.completeExceptionally(stopped);
+        }
+        if (failure != null) {
+            failQueued();
+        }
+    }
+
+    // Commit journaled submissions left over from the last run, before anything new is accepted
+    private void replay(List<ExpenseJournal.Entry> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        List<Pending> group = new ArrayList<>();
+        int rows = 0;
+        int replayed = 0;
+        for (ExpenseJournal.Entry entry : entries) {
+            if (!group.isEmpty() && rows + entry.expenses.size() > flushRows) {
+                commit(group);
+                group.clear();
+                rows = 0;
+            }
+            group.add(new Pending(entry.seq, entry.expenses));
+            rows += entry.expenses.size();
+            replayed += entry.expenses.size();
+        }
+        commit(group);
+        logger.info("Replayed " + replayed + " journaled expense(s) from " + journal.getFile() + ".");
+        truncateJournal(0);
+    }
+
+    private void commit(List<Pending> group) {
+        if (failure != null) {
+            fail(group, failure);
+            return;
+        }
+        List<Expense> rows;
+        if (group.size() == 1) {
+            rows = group.get(0).expenses;
+        } else {
+            rows = new ArrayList<>();
+            for (Pending pending : group) {
+                rows.addAll(pending.expenses);
+            }
+        }
+        try {
+            long firstId = insertRetrying(rows, group.get(group.size() - 1).seq);
+            long id = firstId;
+            for (Pending pending : group) {
+                pending.firstId.complete(id);
+                id += pending.expenses.size();
+            }
+            notifyCommitted(rows, firstId);
+            return;
+        } catch (SQLException e) {
+            if (!Database.isConstraint(e)) {
+                halt(group, e);
+                return;
+            }
+            if (group.size() == 1) {
+                drop(group.get(0), e);
+                return;
+            }
+            logger.warning("Batch of " + rows.size() + " rows failed, retrying each request on its own: " + e.getMessage());
+        }
+        for (Pending pending : group) {
+            try {
+                long firstId = insertRetrying(pending.expenses, pending.seq);
+                pending.firstId.complete(firstId);
+                notifyCommitted(pending.expenses, firstId);
+            } catch (SQLException e) {
+                if (!Database.isConstraint(e)) {
+                    halt(group, e);
+                    return;
+                }
+                drop(pending, e);
+            }
+        }
+    }
+
+    // insert(), retrying with backoff while the failure may pass; a constraint failure never will
+    private long insertRetrying(List<Expense> rows, long seq) throws SQLException {
+        long backoff = FIRST_BACKOFF_MILLIS;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return insert(rows, seq);
+            } catch (SQLException e) {
+                if (Database.isConstraint(e) || attempt == MAX_ATTEMPTS) {
+                    throw e;
+                }
+                logger.warning("Commit of " + rows.size() + " rows failed (attempt " + attempt + "), retrying in " + backoff + "ms: " + e.getMessage());
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+                backoff *= 2;
+            }
+        }
+    }
+
+    // One transaction with the rows and the journal sequence they bring the database up to
+    private long insert(List<Expense> rows, long seq) throws SQLException {
+        long firstId;
+        Metrics.Sample sample = GROUP_COMMIT.start();
+        try (PooledConnection lease = db.writer()) {
+            Connection conn = lease.connection();
+            conn.setAutoCommit(false);
+            try {
+                firstId = ExpenseTracker.insertRows(lease, rows);
+                if (seq > 0) {
+                    ExpenseJournal.markApplied(lease, seq);
+                }
+                conn.commit();
+                sample.stop(rows.size());
+            } catch (SQLException e) {
+                sample.fail(e);
+                conn.rollback();
+                db.categories().invalidate(); // Categories first seen in this group went with it
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+        appliedSeq = Math.max(appliedSeq, seq);
+        ColumnarExpenseStore columnar = db.columnar();
+        if (columnar != null) {
+            columnar.addAll(rows, firstId);
+        }
+        return firstId;
+    }
+
+    // A listener failure is logged; the rows are committed and the submitters already told so
+    private void notifyCommitted(List<Expense> rows, long firstId) {
+        if (listener == null || rows.isEmpty()) {
+            return;
+        }
+        try {
+            listener.committed(rows, firstId);
+        } catch (RuntimeException e) {
+            logger.log(Level.WARNING, "Commit listener failed for " + rows.size() + " rows", e);
+        }
+    }
+
+    // A submission that fails a constraint is failed and marked applied, so replay doesn't retry it forever.
+    // Its rows go to the log, which is then the only place they are kept.
+    private void drop(Pending pending, SQLException e) {
+        logger.severe("Dropping " + pending.expenses.size() + " expense(s) the database refused: " + e.getMessage()
+                + (pending.expenses.size() <= 100 ? " " + pending.expenses : ""));
+        if (pending.seq > 0) {
+            try {
+                insert(Collections.emptyList(), pending.seq);
+            } catch (SQLException again) {
+                logger.severe("Could not mark journal sequence " + pending.seq + " applied: " + again.getMessage());
+            }
+        }
+        pending.firstId.completeExceptionally(e);
+    }
+
+    // The database keeps failing for a reason other than the rows themselves: stop taking
+    // submissions and fail every one not yet committed. None is marked applied, so all of them
+    // stay in the journal and the next start replays them.
+    private void halt(List<Pending> group, SQLException e) {
+        logger.log(Level.SEVERE, "Stopping the expense writer; uncommitted submissions stay in the write journal", e);
+        failure = e;
+        running = false;
+        fail(group, e);
+        failQueued();
+    }
+
+    private static void fail(List<Pending> group, SQLException e) {
+        for (Pending pending : group) {
+            pending.firstId.completeExceptionally(e); // No-op for those already committed
+        }
+    }
+
+    private void failQueued() {
+        List<Pending> queued = new ArrayList<>();
+        queue.drainTo(queued);
+        fail(queued, failure);
+    }
+
+    // Empty the journal once the database holds everything in it and it has grown past minBytes.
+    // Under synchronous=NORMAL a WAL commit survives a crash of this process but not a power cut,
+    // so first make one commit at synchronous=FULL, which syncs the WAL up to and including it.
+    private void truncateJournal(long minBytes) {
+        if (journal == null || appliedSeq == 0 || failure != null) {
+            return;
+        }
+        try {
+            if (journal.size() <= minBytes) {
+                return;
+            }
+            try (PooledConnection lease = db.writer(); Statement stmt = lease.connection().createStatement()) {
+                int synchronous;
+                try (ResultSet rs = stmt.executeQuery("PRAGMA synchronous")) {
+                    synchronous = rs.next() ? rs.getInt(1) : 2;
+                }
+                stmt.execute("PRAGMA synchronous = FULL");
+                try {
+                    stmt.executeUpdate("UPDATE write_journal SET applied_seq = applied_seq WHERE id = 1");
+                } finally {
+                    stmt.execute("PRAGMA synchronous = " + synchronous);
+                }
+            }
+            journal.truncateIfApplied(appliedSeq);
+        } catch (SQLException | IOException e) {
+            logger.log(Level.WARNING, "Could not truncate write journal", e);
+        }
+    }
+
+    // Commit everything already queued, empty the journal, then stop
+    @Override
+    public void close() {
+        running = false;
+        boolean interrupted = false;
+        while (writer.isAlive()) {
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        // Submissions that raced with close() are journaled too, so commit rather than fail them
+        List<Pending> late = new ArrayList<>();
+        queue.drainTo(late);
+        if (!late.isEmpty()) {
+            commit(late);
+        }
+        if (journal != null) {
+            truncateJournal(0);
+            try {
+                journal.close();
+            } catch (IOException e) {
+                logger.warning("Could not close write journal: " + e.getMessage());
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Null while the writer works, otherwise the failure that stopped it
+    SQLException failure() {
+        return failure;
+    }
+}
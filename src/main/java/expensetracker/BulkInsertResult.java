@@ -0,0 +1,42 @@
+package expensetracker;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Outcome of a chunked bulk insert: rows committed plus the batches that were rolled back
+public class BulkInsertResult {
+    private int insertedRows;
+    private int failedRows;
+    private final List<String> failedBatches = new ArrayList<>();
+
+    void batchCommitted(int rows) {
+        insertedRows += rows;
+    }
+
+    void batchFailed(int batchIndex, int rows, String reason) {
+        failedRows += rows;
+        failedBatches.add("batch " + batchIndex + " (" + rows + " rows): " + reason);
+    }
+
+    public int getInsertedRows() {
+        return insertedRows;
+    }
+
+    public int getFailedRows() {
+        return failedRows;
+    }
+
+    public List<String> getFailedBatches() {
+        return Collections.unmodifiableList(failedBatches);
+    }
+
+    public boolean hasFailures() {
+        return !failedBatches.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "BulkInsertResult[inserted=" + insertedRows + ", failed=" + failedRows + ", failedBatches=" + failedBatches.size() + "]";
+    }
+}
@@ -0,0 +1,282 @@
+package expensetracker;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// In-memory, column-per-array mirror of the 'expenses' table for fast aggregation.
+// Rows are kept in id order; deletes leave a tombstone (account id -1) that every scan skips.
+// Amounts are held as minor units (cents), categories as small dictionary codes (0 = no category),
+// dates as epoch days plus an epoch month ((year - 1970) * 12 + month - 1).
+public class ColumnarExpenseStore {
+    private static final int DELETED = -1;
+    private static final int WINDOW = 10_000; // Rows read at a time when the archive takes several batches
+    public static final int NO_DATE = Integer.MIN_VALUE;
+
+    private long[] ids = new long[1024];
+    private int[] accountIds = new int[1024];
+    private int[] epochDays = new int[1024];
+    private int[] epochMonths = new int[1024];
+    private int[] categoryCodes = new int[1024];
+    private long[] amountCents = new long[1024];
+    private int size;
+    private int liveRows;
+
+    private final Map<String, Integer> categoryDictionary = new HashMap<>();
+    private final List<String> categoryNames = new ArrayList<>();
+    private int maxAccountId;
+
+    public ColumnarExpenseStore() {
+        categoryNames.add(null);
+    }
+
+    // Build the mirror from the current contents of the expenses table
+    public static ColumnarExpenseStore load(Connection conn) throws SQLException {
+        return load(conn, "expenses");
+    }
+
+    // Build the mirror from every expense, archived ones included. When more years are archived
+    // than can be attached at once, rows come a window at a time, merged in id order across the
+    // archive's batches.
+    public static ColumnarExpenseStore load(PooledConnection conn) throws SQLException {
+        ExpenseArchive archive = conn.database().archive();
+        if (archive.batches(conn, null, null) == 1) {
+            return load(conn.connection(), archive.expenses(conn, null, null));
+        }
+        ColumnarExpenseStore store = new ColumnarExpenseStore();
+        long afterId = Long.MIN_VALUE;
+        while (true) {
+            long fromId = afterId;
+            List<Expense> rows = archive.select(conn, null, null, 1, (schemas, offset, limit) -> {
+                PreparedStatement stmt = conn.prepare("SELECT e.id, e.account_id, e.date, c.name, e.amount FROM " + ExpenseArchive.expenses(schemas)
+                        + " e LEFT JOIN categories c ON c.id = e.category_id WHERE e.id > ? ORDER BY e.id LIMIT ? OFFSET ?");
+                stmt.setLong(1, fromId);
+                stmt.setInt(2, limit);
+                stmt.setInt(3, offset);
+                return stmt;
+            }, 0, WINDOW, rs -> new Expense(rs.getLong(1), rs.getInt(2), rs.getString(3), null, rs.getLong(5), rs.getString(4)));
+            if (rows.isEmpty()) {
+                return store;
+            }
+            for (Expense expense : rows) {
+                store.add(expense.getId(), expense.getAccountId(), expense.getDate(), expense.getCategory(), expense.getAmount());
+            }
+            afterId = rows.get(rows.size() - 1).getId();
+        }
+    }
+
+    private static ColumnarExpenseStore load(Connection conn, String source) throws SQLException {
+        ColumnarExpenseStore store = new ColumnarExpenseStore();
+        try (Statement stmt = conn.createStatement()) {
+            stmt.setFetchSize(10_000);
+            try (ResultSet rs = stmt.executeQuery("SELECT e.id, e.account_id, e.date, c.name, e.amount FROM " + source
+                    + " e LEFT JOIN categories c ON c.id = e.category_id ORDER BY e.id")) {
+                while (rs.next()) {
+                    store.add(rs.getLong(1), rs.getInt(2), rs.getString(3), rs.getString(4), rs.getLong(5));
+                }
+            }
+        }
+        return store;
+    }
+
+    // Record an inserted row; ids normally arrive in ascending order
+    public synchronized void add(long id, int accountId, String date, String category, long amount) {
+        if (size == ids.length) {
+            grow();
+        }
+        int index = size;
+        if (size > 0 && id <= ids[size - 1]) {
+            index = insertionPoint(id);
+            if (index < size && ids[index] == id) {
+                return; // Already mirrored
+            }
+            shiftRight(index);
+        }
+        int epochDay = NO_DATE;
+        int epochMonth = NO_DATE;
+        if (date != null) {
+            try {
+                LocalDate d = LocalDate.parse(date);
+                epochDay = (int) d.toEpochDay();
+                epochMonth = (d.getYear() - 1970) * 12 + d.getMonthValue() - 1;
+            } catch (DateTimeException e) {
+                // Unparseable dates still count towards totals, just not towards months
+            }
+        }
+        ids[index] = id;
+        accountIds[index] = accountId;
+        epochDays[index] = epochDay;
+        epochMonths[index] = epochMonth;
+        categoryCodes[index] = categoryCode(category);
+        amountCents[index] = amount;
+        size++;
+        liveRows++;
+        maxAccountId = Math.max(maxAccountId, accountId);
+    }
+
+    // Record rows inserted together, with consecutive ids from firstId
+    public synchronized void addAll(List<Expense> rows, long firstId) {
+        long id = firstId;
+        for (Expense expense : rows) {
+            add(id++, expense.getAccountId(), expense.getDate(), expense.getCategory(), expense.getAmount());
+        }
+    }
+
+    // Record that the rows of an account with an id from fromId to toId (inclusive) were deleted
+    public synchronized void deleteRange(int accountId, long fromId, long toId) {
+        int index = Arrays.binarySearch(ids, 0, size, fromId);
+        for (int i = index >= 0 ? index : -index - 1; i < size && ids[i] <= toId; i++) {
+            if (accountIds[i] == accountId) {
+                accountIds[i] = DELETED;
+                liveRows--;
+            }
+        }
+        compactIfSparse();
+    }
+
+    // Record that every row of an account was deleted
+    public synchronized void deleteAccount(int accountId) {
+        for (int i = 0; i < size; i++) {
+            if (accountIds[i] == accountId) {
+                accountIds[i] = DELETED;
+                liveRows--;
+            }
+        }
+        compactIfSparse();
+    }
+
+    public synchronized int size() {
+        return liveRows;
+    }
+
+    // Sum of one account, in cents
+    public synchronized long totalCents(int accountId) {
+        long total = 0;
+        int[] accounts = accountIds;
+        long[] amounts = amountCents;
+        for (int i = 0; i < size; i++) {
+            if (accounts[i] == accountId) {
+                total = Math.addExact(total, amounts[i]);
+            }
+        }
+        return total;
+    }
+
+    // Sum per account, in cents, indexed by account id
+    public synchronized long[] totalsByAccountCents() {
+        long[] totals = new long[maxAccountId + 1];
+        int[] accounts = accountIds;
+        long[] amounts = amountCents;
+        for (int i = 0; i < size; i++) {
+            int account = accounts[i];
+            if (account >= 0) {
+                totals[account] = Math.addExact(totals[account], amounts[i]);
+            }
+        }
+        return totals;
+    }
+
+    // Sum per category of one account, in cents, indexed by category code (see categoryName)
+    public synchronized long[] totalsByCategoryCents(int accountId) {
+        long[] totals = new long[categoryNames.size()];
+        int[] accounts = accountIds;
+        int[] categories = categoryCodes;
+        long[] amounts = amountCents;
+        for (int i = 0; i < size; i++) {
+            if (accounts[i] == accountId) {
+                totals[categories[i]] = Math.addExact(totals[categories[i]], amounts[i]);
+            }
+        }
+        return totals;
+    }
+
+    // Sum per month of one account, in cents; slot 0 is fromEpochMonth, the last slot toEpochMonth
+    public synchronized long[] totalsByMonthCents(int accountId, int fromEpochMonth, int toEpochMonth) {
+        long[] totals = new long[Math.max(0, toEpochMonth - fromEpochMonth + 1)];
+        int[] accounts = accountIds;
+        int[] months = epochMonths;
+        long[] amounts = amountCents;
+        for (int i = 0; i < size; i++) {
+            int month = months[i];
+            if (accounts[i] == accountId && month >= fromEpochMonth && month <= toEpochMonth) {
+                totals[month - fromEpochMonth] = Math.addExact(totals[month - fromEpochMonth], amounts[i]);
+            }
+        }
+        return totals;
+    }
+
+    public static int epochMonth(int year, int month) {
+        return (year - 1970) * 12 + month - 1;
+    }
+
+    public synchronized String categoryName(int code) {
+        return categoryNames.get(code);
+    }
+
+    private int categoryCode(String category) {
+        if (category == null) {
+            return 0;
+        }
+        Integer code = categoryDictionary.get(category);
+        if (code == null) {
+            code = categoryNames.size();
+            categoryNames.add(category);
+            categoryDictionary.put(category, code);
+        }
+        return code;
+    }
+
+    private int insertionPoint(long id) {
+        int index = Arrays.binarySearch(ids, 0, size, id);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    private void shiftRight(int index) {
+        int count = size - index;
+        System.arraycopy(ids, index, ids, index + 1, count);
+        System.arraycopy(accountIds, index, accountIds, index + 1, count);
+        System.arraycopy(epochDays, index, epochDays, index + 1, count);
+        System.arraycopy(epochMonths, index, epochMonths, index + 1, count);
+        System.arraycopy(categoryCodes, index, categoryCodes, index + 1, count);
+        System.arraycopy(amountCents, index, amountCents, index + 1, count);
+    }
+
+    private void grow() {
+        int capacity = ids.length * 2;
+        ids = Arrays.copyOf(ids, capacity);
+        accountIds = Arrays.copyOf(accountIds, capacity);
+        epochDays = Arrays.copyOf(epochDays, capacity);
+        epochMonths = Arrays.copyOf(epochMonths, capacity);
+        categoryCodes = Arrays.copyOf(categoryCodes, capacity);
+        amountCents = Arrays.copyOf(amountCents, capacity);
+    }
+
+    // Squeeze tombstones out once they make up more than half of the arrays
+    private void compactIfSparse() {
+        if (size < 1024 || liveRows > size / 2) {
+            return;
+        }
+        int out = 0;
+        for (int i = 0; i < size; i++) {
+            if (accountIds[i] != DELETED) {
+                ids[out] = ids[i];
+                accountIds[out] = accountIds[i];
+                epochDays[out] = epochDays[i];
+                epochMonths[out] = epochMonths[i];
+                categoryCodes[out] = categoryCodes[i];
+                amountCents[out] = amountCents[i];
+                out++;
+            }
+        }
+        size = out;
+    }
+}
@@ -0,0 +1,272 @@
+package expensetracker;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+// Streams expenses from the database to RFC-4180 CSV with constant memory.
+// Rows come from a forward-only ResultSet with a large fetch size and go through a buffered
+// writer onto a FileChannel, optionally gzip-compressed. exportPartitioned() writes one file per
+// account in parallel, each on its own reader connection. Archived years are read when the date
+// range reaches them; when it reaches more than can be attached at once, rows are read a window
+// at a time and merged across the archive's batches instead.
+public class CsvExporter {
+    public static final String HEADER = "Account,Date,Description,Amount,Category";
+    private static final int FETCH_SIZE = 10_000;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    // Account and category names come from the dictionaries, not from a join per row
+    private static final String SELECT_COLUMNS = "SELECT e.account_id, e.date, e.description, e.amount, e.category_id FROM ";
+
+    private final Database db;
+    private final boolean gzip;
+
+    public CsvExporter(Database db, boolean gzip) {
+        this.db = db;
+        this.gzip = gzip;
+    }
+
+    // Every expense, optionally limited to one account and a date range (null = open-ended)
+    public long export(Path file, String accountName, String fromDate, String toDate) throws IOException, SQLException {
+        StringBuilder sql = new StringBuilder("WHERE 1 = 1");
+        List<Object> params = new ArrayList<>();
+        if (accountName != null) {
+            try (PooledConnection conn = db.reader()) {
+                sql.append(" AND e.account_id = ?");
+                params.add(db.accounts().idOf(conn, accountName)); // -1, matching nothing, if unknown
+            }
+        }
+        appendDateRange(sql, params, fromDate, toDate);
+        return write(file, sql.toString(), params, fromDate, toDate);
+    }
+
+    // One file per account (<directory>/<account id>.csv[.gz]) written by 'threads' parallel workers
+    public long exportPartitioned(Path directory, String fromDate, String toDate, int threads)
+            throws IOException, SQLException, InterruptedException {
+        List<Integer> accountIds;
+        try (PooledConnection conn = db.reader()) {
+            accountIds = new ArrayList<>(db.accounts().ids(conn).values());
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads));
+        try {
+            List<Future<Long>> parts = new ArrayList<>();
+            for (int accountId : accountIds) {
+                parts.add(pool.submit(() -> {
+                    StringBuilder sql = new StringBuilder("WHERE e.account_id = ?");
+                    List<Object> params = new ArrayList<>();
+                    params.add(accountId);
+                    appendDateRange(sql, params, fromDate, toDate);
+                    return write(directory.resolve(accountId + (gzip ? ".csv.gz" : ".csv")), sql.toString(), params, fromDate, toDate);
+                }));
+            }
+            long rows = 0;
+            for (Future<Long> part : parts) {
+                try {
+                    rows += part.get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof IOException) {
+                        throw (IOException) cause;
+                    }
+                    if (cause instanceof SQLException) {
+                        throw (SQLException) cause;
+                    }
+                    throw new IOException(cause);
+                }
+            }
+            return rows;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static void appendDateRange(StringBuilder sql, List<Object> params, String fromDate, String toDate) {
+        if (fromDate != null) {
+            sql.append(" AND e.date >= ?");
+            params.add(fromDate);
+        }
+        if (toDate != null) {
+            sql.append(" AND e.date <= ?");
+            params.add(toDate);
+        }
+    }
+
+    // 'where' is the WHERE of the query, rows go out by account and id; the partitions it reads
+    // are attached to the connection that runs it
+    private long write(Path file, String where, List<Object> params, String fromDate, String toDate) throws IOException, SQLException {
+        long rows = 0;
+        StringBuilder amount = new StringBuilder(24);
+        Long fromDay = ExpenseArchive.epochDay(fromDate);
+        Long toDay = ExpenseArchive.epochDay(toDate);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+             Writer out = openWriter(channel);
+             PooledConnection conn = db.reader()) {
+            out.write(HEADER);
+            out.write("\r\n");
+            NameDictionary accounts = db.accounts();
+            NameDictionary categories = db.categories();
+            ExpenseArchive archive = db.archive();
+            if (archive.batches(conn, fromDay, toDay) > 1) {
+                return writeWindows(out, conn, where, params, fromDay, toDay);
+            }
+            PreparedStatement stmt = conn.prepare(SELECT_COLUMNS + archive.expenses(conn, fromDay, toDay) + " e " + where + " ORDER BY e.account_id, e.id");
+            stmt.setFetchSize(FETCH_SIZE);
+            for (int i = 0; i < params.size(); i++) {
+                stmt.setObject(i + 1, params.get(i));
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    writeRow(out, amount, accounts.nameOf(conn, rs.getInt(1)), rs.getString(2), rs.getString(3), rs.getLong(4),
+                            categories.nameOf(conn, rs.getInt(5)));
+                    rows++;
+                }
+            }
+        }
+        return rows;
+    }
+
+    // The same query a window of FETCH_SIZE rows at a time, each merged across the archive's
+    // batches and continued after the last (account, id) written
+    private long writeWindows(Writer out, PooledConnection conn, String where, List<Object> params, Long fromDay, Long toDay)
+            throws IOException, SQLException {
+        long rows = 0;
+        StringBuilder amount = new StringBuilder(24);
+        NameDictionary accounts = db.accounts();
+        NameDictionary categories = db.categories();
+        int afterAccount = Integer.MIN_VALUE;
+        long afterId = Long.MIN_VALUE;
+        while (true) {
+            int fromAccount = afterAccount;
+            long fromId = afterId;
+            List<Expense> window = db.archive().select(conn, fromDay, toDay, 2, (schemas, offset, limit) -> {
+                PreparedStatement stmt = conn.prepare("SELECT e.account_id, e.id, e.date, e.description, e.amount, e.category_id FROM "
+                        + ExpenseArchive.expenses(schemas) + " e " + where + " AND (e.account_id, e.id) > (?, ?) ORDER BY e.account_id, e.id LIMIT ? OFFSET ?");
+                int i = 0;
+                for (Object param : params) {
+                    stmt.setObject(++i, param);
+                }
+                stmt.setInt(++i, fromAccount);
+                stmt.setLong(++i, fromId);
+                stmt.setInt(++i, limit);
+                stmt.setInt(++i, offset);
+                return stmt;
+            }, 0, FETCH_SIZE, rs -> new Expense(rs.getLong(2), rs.getInt(1), rs.getString(3), rs.getString(4), rs.getLong(5),
+                    categories.nameOf(conn, rs.getInt(6))));
+            if (window.isEmpty()) {
+                return rows;
+            }
+            for (Expense expense : window) {
+                writeRow(out, amount, accounts.nameOf(conn, expense.getAccountId()), expense.getDate(), expense.getDescription(),
+                        expense.getAmount(), expense.getCategory());
+                rows++;
+            }
+            Expense last = window.get(window.size() - 1);
+            afterAccount = last.getAccountId();
+            afterId = last.getId();
+        }
+    }
+
+    private static void writeRow(Writer out, StringBuilder amount, String account, String date, String description, long minor,
+                                 String category) throws IOException {
+        writeField(out, account);
+        out.write(',');
+        writeField(out, date);
+        out.write(',');
+        writeField(out, description);
+        out.write(',');
+        amount.setLength(0);
+        out.append(Money.appendMinor(amount, minor, Money.LEDGER_SCALE));
+        out.write(',');
+        writeField(out, category);
+        out.write("\r\n");
+    }
+
+    private Writer openWriter(FileChannel channel) throws IOException {
+        OutputStream stream = Channels.newOutputStream(channel);
+        if (gzip) {
+            stream = new GZIPOutputStream(stream, BUFFER_SIZE);
+        }
+        return new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8), BUFFER_SIZE);
+    }
+
+    // RFC-4180: quote fields holding a comma, quote or line break, doubling embedded quotes
+    static void writeField(Writer out, String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            out.write(value);
+            return;
+        }
+        out.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                out.write('"');
+            }
+            out.write(c);
+        }
+        out.write('"');
+    }
+
+    // Headless nightly export:
+    // java expensetracker.CsvExporter <file|directory> [--account NAME] [--from YYYY-MM-DD] [--to YYYY-MM-DD] [--gzip] [--per-account] [--threads N]
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: java expensetracker.CsvExporter <file|directory> [--account NAME] [--from YYYY-MM-DD] [--to YYYY-MM-DD] [--gzip] [--per-account] [--threads N]");
+            System.exit(2);
+        }
+        Path target = Paths.get(args[0]);
+        String account = null, from = null, to = null;
+        boolean gzip = false, perAccount = false;
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "--account": account = args[++i]; break;
+                case "--from": from = args[++i]; break;
+                case "--to": to = args[++i]; break;
+                case "--gzip": gzip = true; break;
+                case "--per-account": perAccount = true; break;
+                case "--threads": threads = Integer.parseInt(args[++i]); break;
+                default:
+                    System.err.println("Unknown option " + args[i]);
+                    System.exit(2);
+            }
+        }
+        try (Database db = Database.open(ExpenseTracker.DB_URL)) {
+            try (PooledConnection conn = db.writer()) {
+                SchemaMigrations.migrate(conn.connection());
+            }
+            CsvExporter exporter = new CsvExporter(db, gzip);
+            long start = System.nanoTime();
+            long rows = perAccount
+                    ? exporter.exportPartitioned(target, from, to, threads)
+                    : exporter.export(target, account, from, to);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("Exported %,d rows in %.2f s (%,.0f rows/sec)%n", rows, seconds, rows / seconds);
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package expensetracker;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+
+// Connection management for ExpensesDB.db.
+// One writer connection, handed out under a lock, and a small pool of query-only reader
+// connections so reports never wait behind a write. Every connection is opened with the
+// configured pragmas (WAL by default) and foreign keys enforced (deleting an account cascades to its
+// expenses), and keeps its own prepared-statement cache. Account and
+// category names are resolved through in-memory dictionaries shared by every connection.
+public class Database implements AutoCloseable {
+    private static final Logger logger = Logger.getLogger(Database.class.getName());
+
+    // Pragmas and pool size; defaults can be overridden with -Dexpensetracker.db.<name>=...
+    public static class Config {
+        String journalMode = System.getProperty("expensetracker.db.journal_mode", "WAL");
+        String synchronous = System.getProperty("expensetracker.db.synchronous", "NORMAL");
+        long cacheSize = Long.getLong("expensetracker.db.cache_size", -65_536L); // Negative = KiB, so 64 MiB
+        long mmapSize = Long.getLong("expensetracker.db.mmap_size", 268_435_456L);
+        String tempStore = System.getProperty("expensetracker.db.temp_store", "MEMORY");
+        int busyTimeoutMillis = Integer.getInteger("expensetracker.db.busy_timeout", 5_000);
+        int readers = Integer.getInteger("expensetracker.db.readers", 4);
+        boolean cacheStatements = !"false".equals(System.getProperty("expensetracker.db.statement_cache"));
+        int statementCacheSize = Integer.getInteger("expensetracker.db.statement_cache_size", 128); // Per connection
+
+        // SQLite's own defaults and the old access pattern: rollback journal, synchronous=FULL,
+        // one shared connection, every statement prepared again
+        public static Config untuned() {
+            Config config = new Config();
+            config.journalMode = "DELETE";
+            config.synchronous = "FULL";
+            config.cacheSize = -2_000;
+            config.mmapSize = 0;
+            config.tempStore = "DEFAULT";
+            config.readers = 0;
+            config.cacheStatements = false;
+            return config;
+        }
+    }
+
+    private static final Metrics.Timer WRITER_WAIT = Metrics.timer("db.writerLockWait");
+    private static final Metrics.Timer READER_WAIT = Metrics.timer("db.readerWait");
+
+    private final String url;
+    private final Config config;
+    private final PooledConnection writer;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final BlockingQueue<PooledConnection> readers;
+    private final List<PooledConnection> allReaders = new ArrayList<>();
+    private final NameDictionary accounts = new NameDictionary("accounts");
+    private final NameDictionary categories = new NameDictionary("categories");
+    private final ExpenseArchive archive = new ExpenseArchive(this);
+    private volatile ColumnarExpenseStore columnar;
+
+    private Database(String url, Config config) throws SQLException {
+        this.url = url;
+        this.config = config;
+        this.writer = new PooledConnection(this, openConnection(), statementCacheSize(), this::releaseWriter);
+        try (Statement stmt = writer.connection().createStatement()) {
+            // Journal mode is stored in the file, so set it once from the writer
+            stmt.execute("PRAGMA journal_mode = " + config.journalMode);
+        }
+        this.readers = new ArrayBlockingQueue<>(Math.max(1, config.readers));
+        for (int i = 0; i < config.readers; i++) {
+            Connection conn = openConnection();
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("PRAGMA query_only = ON");
+            }
+            PooledConnection reader = new PooledConnection(this, conn, statementCacheSize(), this::releaseReader);
+            allReaders.add(reader);
+            readers.add(reader);
+        }
+    }
+
+    // Open the database with the default (tuned) configuration
+    public static Database open(String url) throws SQLException {
+        return open(url, new Config());
+    }
+
+    public static Database open(String url, Config config) throws SQLException {
+        try {
+            Class.forName("org.sqlite.JDBC");
+        } catch (ClassNotFoundException e) {
+            throw new SQLException("JDBC driver not found. Please ensure the SQLite JDBC driver is in the classpath.", e);
+        }
+        Database db = new Database(url, config);
+        logger.info("Database " + url + " opened: journal_mode=" + config.journalMode + ", synchronous=" + config.synchronous
+                + ", readers=" + config.readers);
+        return db;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    // Account name <-> id
+    public NameDictionary accounts() {
+        return accounts;
+    }
+
+    // Category name <-> id (expenses.category_id)
+    public NameDictionary categories() {
+        return categories;
+    }
+
+    // Per-year partitions of archived expenses
+    public ExpenseArchive archive() {
+        return archive;
+    }
+
+    // In-memory mirror of every expense for aggregates; null unless loadColumnar built it
+    public ColumnarExpenseStore columnar() {
+        return columnar;
+    }
+
+    // With -Dexpensetracker.columnar=true, build the mirror; call once the schema is current.
+    // Inserts through BatchingExpenseWriter or ExpenseTracker.addExpenses and deletes through
+    // ExpenseTracker.deleteExpenses keep it up to date.
+    void loadColumnar(PooledConnection conn) throws SQLException {
+        if (Boolean.getBoolean("expensetracker.columnar")) {
+            columnar = ColumnarExpenseStore.load(conn);
+            logger.info("Columnar store loaded with " + columnar.size() + " expenses.");
+        }
+    }
+
+    // The file behind a SQLite JDBC url; null for in-memory databases
+    static Path file(String url) {
+        String path = url.startsWith("jdbc:sqlite:") ? url.substring("jdbc:sqlite:".length()) : url;
+        int query = path.indexOf('?');
+        if (query >= 0) {
+            path = path.substring(0, query);
+        }
+        if (path.startsWith("file:")) {
+            path = path.substring("file:".length());
+        }
+        if (path.isEmpty() || path.contains(":memory:") || url.contains("mode=memory")) {
+            return null;
+        }
+        return Paths.get(path);
+    }
+
+    // Statements each pooled connection keeps prepared; 0 when caching is off
+    private int statementCacheSize() {
+        return config.cacheStatements ? Math.max(1, config.statementCacheSize) : 0;
+    }
+
+    // A new, unpooled connection with the configured pragmas; the caller closes it
+    public Connection openConnection() throws SQLException {
+        Connection conn = DriverManager.getConnection(url);
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("PRAGMA synchronous = " + config.synchronous);
+            stmt.execute("PRAGMA cache_size = " + config.cacheSize);
+            stmt.execute("PRAGMA mmap_size = " + config.mmapSize);
+            stmt.execute("PRAGMA temp_store = " + config.tempStore);
+            stmt.execute("PRAGMA busy_timeout = " + config.busyTimeoutMillis);
+            stmt.execute("PRAGMA foreign_keys = ON");
+        }
+        return conn;
+    }
+
+    // The writer connection, held exclusively until the lease is closed
+    public PooledConnection writer() {
+        if (!writeLock.tryLock()) {
+            Metrics.Sample wait = WRITER_WAIT.start(); // Only contended acquisitions are timed
+            writeLock.lock();
+            wait.stop(0);
+        }
+        return writer;
+    }
+
+    // A reader connection from the pool; falls back to the writer when no pool is configured
+    public PooledConnection reader() throws SQLException {
+        if (config.readers == 0) {
+            return writer();
+        }
+        PooledConnection reader = readers.poll();
+        if (reader != null) {
+            return reader;
+        }
+        Metrics.Sample wait = READER_WAIT.start();
+        try {
+            reader = readers.take();
+            wait.stop(0);
+            return reader;
+        } catch (InterruptedException e) {
+            wait.fail(e);
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a read connection", e);
+        }
+    }
+
+    // Prepare these statements on every reader now, so the first queries of a session don't pay
+    // for reading the schema and planning; nothing to keep without the statement cache
+    public void warmUp(String... sqls) throws SQLException {
+        if (!config.cacheStatements) {
+            return;
+        }
+        List<PooledConnection> leased = new ArrayList<>();
+        try {
+            for (int i = 0; i < config.readers; i++) {
+                leased.add(reader());
+            }
+            for (PooledConnection conn : leased) {
+                for (String sql : sqls) {
+                    conn.prepare(sql);
+                }
+            }
+        } finally {
+            for (PooledConnection conn : leased) {
+                conn.close();
+            }
+        }
+    }
+
+    // SQLITE_BUSY or SQLITE_LOCKED-as-busy: another connection holds the lock past busy_timeout
+    static boolean isBusy(SQLException e) {
+        String message = String.valueOf(e.getMessage());
+        return (e.getErrorCode() & 0xff) == 5 || message.contains("SQLITE_BUSY") || message.contains("database is locked");
+    }
+
+    // SQLITE_CONSTRAINT and its extended codes: the rows themselves are wrong, retrying can't help
+    static boolean isConstraint(SQLException e) {
+        return (e.getErrorCode() & 0xff) == 19 || String.valueOf(e.getMessage()).contains("SQLITE_CONSTRAINT");
+    }
+
+    private void releaseWriter(PooledConnection conn) {
+        writeLock.unlock();
+    }
+
+    private void releaseReader(PooledConnection conn) {
+        readers.offer(conn);
+    }
+
+    @Override
+    public void close() throws SQLException {
+        for (PooledConnection reader : allReaders) {
+            reader.closeConnection();
+        }
+        writer.closeConnection();
+    }
+}
@@ -0,0 +1,58 @@
+package expensetracker;
+
+import java.awt.AWTEvent;
+import java.awt.EventQueue;
+import java.awt.Toolkit;
+import java.awt.event.ActionEvent;
+import java.util.logging.Logger;
+
+// Event queue that logs every event whose dispatch keeps the EDT busy longer than a threshold.
+// Threshold in ms comes from -Dexpensetracker.edt.stallMillis (default 100). With metrics or a
+// JFR recording on, every dispatch is also timed as a UI action (see Metrics): button and menu
+// clicks by their command, everything else by event type.
+public class EdtStallDetector extends EventQueue {
+    private static final Logger logger = Logger.getLogger(EdtStallDetector.class.getName());
+    private static volatile boolean installed;
+
+    private final long thresholdNanos;
+
+    private EdtStallDetector(long thresholdMillis) {
+        this.thresholdNanos = thresholdMillis * 1_000_000L;
+    }
+
+    // Push the detector onto the system event queue; safe to call more than once
+    public static synchronized void install() {
+        if (installed) {
+            return;
+        }
+        long threshold = Long.getLong("expensetracker.edt.stallMillis", 100L);
+        Toolkit.getDefaultToolkit().getSystemEventQueue().push(new EdtStallDetector(threshold));
+        installed = true;
+        logger.info("EDT stall detector installed, threshold " + threshold + " ms.");
+    }
+
+    @Override
+    protected void dispatchEvent(AWTEvent event) {
+        String outer = Metrics.uiAction(); // Modal dialogs dispatch events inside another one
+        Metrics.Sample sample = Metrics.startUiAction(() -> actionName(event));
+        long start = System.nanoTime();
+        try {
+            super.dispatchEvent(event);
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            sample.stop(0);
+            Metrics.setUiAction(outer);
+            if (elapsed > thresholdNanos) {
+                logger.warning(String.format("EDT stalled for %d ms dispatching %s from %s",
+                        elapsed / 1_000_000, event.getClass().getSimpleName(), event.getSource().getClass().getName()));
+            }
+        }
+    }
+
+    private static String actionName(AWTEvent event) {
+        if (event instanceof ActionEvent && ((ActionEvent) event).getActionCommand() != null) {
+            return "ActionEvent[" + ((ActionEvent) event).getActionCommand() + "]";
+        }
+        return event.getClass().getSimpleName();
+    }
+}
@@ -0,0 +1,62 @@
+package expensetracker;
+
+// A single expense row of the 'expenses' table; id is 0 until the row has been stored.
+// The amount is in minor units (cents) of the ledger currency, see Money.
+public class Expense {
+    private final long id;
+    private final int accountId;
+    private final String date;
+    private final String description;
+    private final long amount;
+    private final String category;
+
+    public Expense(int accountId, String date, String description, long amount) {
+        this(accountId, date, description, amount, null);
+    }
+
+    public Expense(int accountId, String date, String description, long amount, String category) {
+        this(0, accountId, date, description, amount, category);
+    }
+
+    public Expense(long id, int accountId, String date, String description, long amount, String category) {
+        this.id = id;
+        this.accountId = accountId;
+        this.date = date;
+        this.description = description;
+        this.amount = amount;
+        this.category = category;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public int getAccountId() {
+        return accountId;
+    }
+
+    public String getDate() {
+        return date;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public long getAmount() {
+        return amount;
+    }
+
+    public Money getMoney() {
+        return Money.ofMinor(amount);
+    }
+
+    public String getCategory() {
+        return category;
+    }
+
+    @Override
+    public String toString() {
+        return "Expense[id=" + id + ", account=" + accountId + ", date=" + date + ", description=" + description + ", amount=" + Money.format(amount) + ", category=" + category + "]";
+    }
+}
@@ -0,0 +1,646 @@
+package expensetracker;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+// Cold expenses moved out of the main database into one SQLite file per year next to it
+// (ExpensesDB.2019.db, optionally VACUUMed and gzipped to ExpensesDB.2019.db.gz), so the hot
+// file, its indexes and its backups only grow with the recent years. Partitions are listed in
+// expense_partitions and ATTACHed to a connection only when a query's date range reaches them;
+// expenses() and schemas() give what to read from. A range reaching more partitions than can be
+// attached at once is read in batches of them (forEachBatch(), select()). Archived rows keep their
+// ids and stay counted in expense_totals and expense_daily_totals, so totals and reports never
+// open a partition.
+//
+// Archiving copies a year into its file and commits, then deletes it from the main file in a
+// second transaction: SQLite can't commit two WAL databases atomically. A crash in between
+// leaves the rows in both places until archive() runs again, which finishes the move. Archived
+// rows are read-only. The partition list is loaded once per Database; partitions archived by
+// another process are seen when the database is next opened.
+public class ExpenseArchive {
+    private static final Logger logger = Logger.getLogger(ExpenseArchive.class.getName());
+    private static final Metrics.Timer ATTACH = Metrics.timer("db.archive.attach");
+
+    // SQLite refuses more than 10 attached databases unless built with a higher limit
+    static final int MAX_ATTACHED = Integer.getInteger("expensetracker.archive.max_attached", 10);
+    // Years kept in the main file by the command line when no --before is given, this one included
+    static final int KEEP_YEARS = Integer.getInteger("expensetracker.archive.keep_years", 2);
+
+    private static final String COLUMNS = "id, account_id, date, description, amount, category_id, epoch_day";
+    private static final Map<Path, Path> unpacked = new ConcurrentHashMap<>(); // .db.gz -> temp copy for this process
+
+    // One archived year
+    public static final class Partition {
+        private final int year;
+        private final String file;
+        private final long firstDay;
+        private final long lastDay;
+        private final long rowCount;
+        private final boolean compressed;
+
+        Partition(int year, String file, long firstDay, long lastDay, long rowCount, boolean compressed) {
+            this.year = year;
+            this.file = file;
+            this.firstDay = firstDay;
+            this.lastDay = lastDay;
+            this.rowCount = rowCount;
+            this.compressed = compressed;
+        }
+
+        public int getYear() {
+            return year;
+        }
+
+        public String getFile() {
+            return file;
+        }
+
+        public long getRowCount() {
+            return rowCount;
+        }
+
+        public boolean isCompressed() {
+            return compressed;
+        }
+
+        String schema() {
+            return "p" + year;
+        }
+
+        boolean overlaps(Long fromDay, Long toDay) {
+            return (fromDay == null || lastDay >= fromDay) && (toDay == null || firstDay <= toDay);
+        }
+    }
+
+    // Reads from one batch of schemas; see forEachBatch()
+    public interface Batch {
+        void read(List<String> schemas) throws SQLException;
+    }
+
+    // Prepares a query over one batch of schemas, every parameter bound, its LIMIT and OFFSET
+    // included; see select()
+    public interface Query {
+        PreparedStatement prepare(List<String> schemas, int offset, int limit) throws SQLException;
+    }
+
+    // Reads the current row of a result
+    public interface RowReader<T> {
+        T read(ResultSet rs) throws SQLException;
+    }
+
+    // A row of one batch and the values it is ordered by
+    private static final class Keyed<T> {
+        final long[] key;
+        final T row;
+
+        Keyed(long[] key, T row) {
+            this.key = key;
+            this.row = row;
+        }
+    }
+
+    private static final Comparator<Keyed<?>> BY_KEY = (a, b) -> {
+        for (int i = 0; i < a.key.length; i++) {
+            int order = Long.compare(a.key[i], b.key[i]);
+            if (order != 0) {
+                return order;
+            }
+        }
+        return 0;
+    };
+
+    private final Database db;
+    private volatile List<Partition> partitions; // Null until first used or after archive()
+
+    ExpenseArchive(Database db) {
+        this.db = db;
+    }
+
+    // Create the partition registry
+    public static void install(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate(
+                "CREATE TABLE IF NOT EXISTS expense_partitions (" +
+                "year INTEGER PRIMARY KEY, " +
+                "file TEXT NOT NULL, " +
+                "first_day INTEGER NOT NULL, " +
+                "last_day INTEGER NOT NULL, " +
+                "row_count INTEGER NOT NULL, " +
+                "compressed INTEGER NOT NULL DEFAULT 0)"
+            );
+        }
+    }
+
+    // Every archived year, oldest first
+    public List<Partition> partitions(PooledConnection conn) throws SQLException {
+        List<Partition> current = partitions;
+        if (current != null) {
+            return current;
+        }
+        List<Partition> loaded = new ArrayList<>();
+        try (ResultSet rs = conn.prepare("SELECT year, file, first_day, last_day, row_count, compressed FROM expense_partitions ORDER BY year").executeQuery()) {
+            while (rs.next()) {
+                loaded.add(new Partition(rs.getInt(1), rs.getString(2), rs.getLong(3), rs.getLong(4), rs.getLong(5), rs.getInt(6) != 0));
+            }
+        }
+        partitions = Collections.unmodifiableList(loaded);
+        return partitions;
+    }
+
+    private List<Partition> overlapping(PooledConnection conn, Long fromDay, Long toDay) throws SQLException {
+        List<Partition> needed = new ArrayList<>();
+        for (Partition partition : partitions(conn)) {
+            if (partition.overlaps(fromDay, toDay)) {
+                needed.add(partition);
+            }
+        }
+        return needed;
+    }
+
+    // Schemas holding the expenses of a range of epoch days (null for open-ended): "main" first,
+    // then every partition the range overlaps, attached to this connection if they weren't yet.
+    // Fails when they can't all be attached at once; batches() tells beforehand.
+    public List<String> schemas(PooledConnection conn, Long fromDay, Long toDay) throws SQLException {
+        List<Partition> needed = overlapping(conn, fromDay, toDay);
+        attach(conn, needed);
+        List<String> schemas = new ArrayList<>();
+        schemas.add("main");
+        for (Partition partition : needed) {
+            schemas.add(partition.schema());
+        }
+        return schemas;
+    }
+
+    // What to select expenses of a range of epoch days from: the 'expenses' table itself while
+    // the range is only in the main file, otherwise a UNION ALL of it and the partitions. Either
+    // way it has the columns of 'expenses' and is meant to be aliased; SQLite pushes the outer
+    // WHERE into every branch, so each still uses its own indexes. Fails like schemas().
+    public String expenses(PooledConnection conn, Long fromDay, Long toDay) throws SQLException {
+        return expenses(schemas(conn, fromDay, toDay));
+    }
+
+    // The same over schemas already attached, such as one batch of forEachBatch()
+    public static String expenses(List<String> schemas) {
+        if (schemas.size() == 1 && "main".equals(schemas.get(0))) {
+            return "expenses";
+        }
+        StringBuilder union = new StringBuilder("(");
+        for (String schema : schemas) {
+            if (union.length() > 1) {
+                union.append(" UNION ALL ");
+            }
+            union.append("SELECT ").append(COLUMNS).append(" FROM ").append(schema).append(".expenses");
+        }
+        return union.append(')').toString();
+    }
+
+    // Number of batches forEachBatch() reads a range of epoch days in; 1 while every partition
+    // it overlaps can be attached at once
+    public int batches(PooledConnection conn, Long fromDay, Long toDay) throws SQLException {
+        int needed = overlapping(conn, fromDay, toDay).size();
+        return needed <= MAX_ATTACHED ? 1 : (needed + MAX_ATTACHED - 1) / MAX_ATTACHED;
+    }
+
+    // Read the expenses of a range of epoch days in as few batches of schemas as the attach limit
+    // allows: "main" and the partitions the range overlaps, oldest first, MAX_ATTACHED partitions
+    // to a batch, each attached in its turn (dropping the previous one). Every batch holds
+    // different rows, so whatever spans them is for the reader to merge; it must be done with
+    // its statements before returning.
+    public void forEachBatch(PooledConnection conn, Long fromDay, Long toDay, Batch batch) throws SQLException {
+        List<Partition> needed = overlapping(conn, fromDay, toDay);
+        int first = 0;
+        do {
+            List<Partition> part = needed.subList(first, Math.min(needed.size(), first + MAX_ATTACHED));
+            attach(conn, part);
+            List<String> schemas = new ArrayList<>();
+            if (first == 0) {
+                schemas.add("main");
+            }
+            for (Partition partition : part) {
+                schemas.add(partition.schema());
+            }
+            batch.read(schemas);
+            first += MAX_ATTACHED;
+        } while (first < needed.size());
+    }
+
+    // Rows of a query over the expenses of a range of epoch days: 'limit' of them (all when
+    // negative) after the first 'offset', each read by 'row'. The query is ordered by its first
+    // 'keys' columns, integers, ascending. In a single batch it runs as is; otherwise it runs in
+    // each batch for the first offset + limit rows and those are merged on the keys, so the
+    // result is the same.
+    public <T> List<T> select(PooledConnection conn, Long fromDay, Long toDay, int keys, Query query, int offset, int limit,
+                              RowReader<T> row) throws SQLException {
+        boolean merge = batches(conn, fromDay, toDay) > 1;
+        List<Keyed<T>> rows = new ArrayList<>();
+        forEachBatch(conn, fromDay, toDay, schemas -> {
+            PreparedStatement stmt = merge ? query.prepare(schemas, 0, limit < 0 ? -1 : offset + limit) : query.prepare(schemas, offset, limit);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    long[] key = new long[merge ? keys : 0];
+                    for (int i = 0; i < key.length; i++) {
+                        key[i] = rs.getLong(i + 1);
+                    }
+                    rows.add(new Keyed<>(key, row.read(rs)));
+                }
+            }
+        });
+        if (merge) {
+            rows.sort(BY_KEY); // Each batch is already in order, so this merges runs
+        }
+        int from = merge ? Math.min(offset, rows.size()) : 0;
+        int to = merge && limit >= 0 ? Math.min(rows.size(), from + limit) : rows.size();
+        List<T> result = new ArrayList<>(to - from);
+        for (Keyed<T> keyed : rows.subList(from, to)) {
+            result.add(keyed.row);
+        }
+        return result;
+    }
+
+    // An account's expenses, archived ones included, in id order: 'limit' of them (all when
+    // negative) after skipping 'offset' of those with an id above afterId. 'columns' is what to
+    // select of alias 'e' besides e.id, which 'row' reads as column 1, or null for just the id.
+    public <T> List<T> accountExpenses(PooledConnection conn, String columns, int accountId, long afterId, int offset, int limit,
+                                       RowReader<T> row) throws SQLException {
+        return select(conn, null, null, 1, (schemas, skip, rows) -> {
+            PreparedStatement stmt = conn.prepare("SELECT e.id" + (columns != null ? ", " + columns : "") + " FROM " + expenses(schemas)
+                    + " e WHERE e.account_id = ? AND e.id > ? ORDER BY e.id LIMIT ? OFFSET ?");
+            stmt.setInt(1, accountId);
+            stmt.setLong(2, afterId);
+            stmt.setInt(3, rows);
+            stmt.setInt(4, skip);
+            return stmt;
+        }, offset, limit, row);
+    }
+
+    // Epoch day of a YYYY-MM-DD date; null when there is none or it doesn't parse (no bound)
+    static Long epochDay(String date) {
+        if (date == null || date.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            return LocalDate.parse(date.trim()).toEpochDay();
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private void attach(PooledConnection conn, List<Partition> needed) throws SQLException {
+        if (needed.size() > MAX_ATTACHED) {
+            throw new SQLException("The date range spans " + needed.size() + " archived years, but only " + MAX_ATTACHED
+                    + " can be attached at once; narrow it or raise expensetracker.archive.max_attached");
+        }
+        Map<String, String> attached = conn.attached();
+        for (Partition partition : needed) {
+            String file = readableFile(partition).toString();
+            if (file.equals(attached.get(partition.schema()))) {
+                continue;
+            }
+            if (attached.containsKey(partition.schema())) {
+                detach(conn, partition.schema()); // Re-archived since, and unpacked to a new copy
+            }
+            // Make room by dropping the partitions attached longest ago that this query doesn't need
+            Iterator<String> oldest = new ArrayList<>(attached.keySet()).iterator();
+            while (attached.size() >= MAX_ATTACHED && oldest.hasNext()) {
+                String schema = oldest.next();
+                if (needed.stream().noneMatch(p -> p.schema().equals(schema))) {
+                    detach(conn, schema);
+                }
+            }
+            Metrics.Sample sample = ATTACH.start();
+            try (PreparedStatement stmt = conn.connection().prepareStatement("ATTACH DATABASE ? AS " + partition.schema())) {
+                stmt.setString(1, file);
+                stmt.execute();
+                sample.stop(1);
+            } catch (SQLException e) {
+                sample.fail(e);
+                throw e;
+            }
+            attached.put(partition.schema(), file);
+        }
+    }
+
+    private static void detach(PooledConnection conn, String schema) throws SQLException {
+        try (Statement stmt = conn.connection().createStatement()) {
+            stmt.executeUpdate("DETACH DATABASE " + schema);
+        }
+        conn.attached().remove(schema);
+    }
+
+    // The partition file itself, or a copy unpacked once per process when only the .gz is left
+    private Path readableFile(Partition partition) throws SQLException {
+        Path file = mainFile().resolveSibling(partition.file);
+        if (Files.exists(file)) {
+            return file;
+        }
+        Path packed = Paths.get(file + ".gz");
+        if (!Files.exists(packed)) {
+            throw new SQLException("Archived expenses of " + partition.year + " are missing: " + file);
+        }
+        try {
+            return unpacked.computeIfAbsent(packed, gz -> {
+                try {
+                    Path copy = Files.createTempFile("expenses-" + partition.year + "-", ".db");
+                    copy.toFile().deleteOnExit();
+                    gunzip(gz, copy);
+                    copy.toFile().setReadOnly();
+                    return copy;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw new SQLException("Could not unpack " + packed, e.getCause());
+        }
+    }
+
+    private Path mainFile() throws SQLException {
+        Path file = Database.file(db.getUrl());
+        if (file == null) {
+            throw new SQLException("An in-memory database has no archive");
+        }
+        return file.toAbsolutePath();
+    }
+
+    // File name of a year's partition: ExpensesDB.db -> ExpensesDB.2019.db
+    private static String partitionName(Path mainFile, int year) {
+        String name = mainFile.getFileName().toString();
+        String base = name.endsWith(".db") ? name.substring(0, name.length() - ".db".length()) : name;
+        return base + "." + year + ".db";
+    }
+
+    // Move every expense dated before January 1st of 'beforeYear' into its year's partition.
+    // 'vacuum' compacts the partitions and the main file afterwards; 'compress' gzips the
+    // partitions (a partition that was compressed stays compressed). Returns the rows moved.
+    public long archive(int beforeYear, boolean vacuum, boolean compress) throws SQLException, IOException {
+        Path mainFile = mainFile();
+        List<Integer> years = new ArrayList<>();
+        try (PooledConnection conn = db.writer()) {
+            PreparedStatement stmt = conn.prepare("SELECT DISTINCT substr(date, 1, 4) FROM expenses WHERE epoch_day < ? ORDER BY 1");
+            stmt.setLong(1, LocalDate.of(beforeYear, 1, 1).toEpochDay());
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    years.add(Integer.parseInt(rs.getString(1)));
+                }
+            }
+        }
+        long moved = 0;
+        try {
+            for (int year : years) {
+                // One year per writer lease, so queued inserts get in between years
+                try (PooledConnection conn = db.writer()) {
+                    moved += archiveYear(conn, mainFile, year, vacuum, compress);
+                }
+            }
+            if (vacuum && moved > 0) {
+                try (PooledConnection conn = db.writer(); Statement stmt = conn.connection().createStatement()) {
+                    stmt.executeUpdate("VACUUM");
+                }
+            }
+        } finally {
+            partitions = null;
+        }
+        logger.info("Archived " + moved + " expense(s) from " + years.size() + " year(s) before " + beforeYear + ".");
+        return moved;
+    }
+
+    private long archiveYear(PooledConnection conn, Path mainFile, int year, boolean vacuum, boolean compress) throws SQLException, IOException {
+        String name = partitionName(mainFile, year);
+        Path file = mainFile.resolveSibling(name);
+        Path packed = Paths.get(file + ".gz");
+        if (attachWritable(conn, file, packed)) {
+            compress = true; // Adding to a compressed year
+        }
+        long firstDay = LocalDate.of(year, 1, 1).toEpochDay();
+        long lastDay = LocalDate.of(year, 12, 31).toEpochDay();
+        long moved;
+
+        Connection c = conn.connection();
+        try (Statement stmt = c.createStatement()) {
+            stmt.execute("PRAGMA archive.journal_mode = DELETE"); // A single file, nothing left beside it
+            stmt.executeUpdate(
+                "CREATE TABLE IF NOT EXISTS archive.expenses (" +
+                "id INTEGER PRIMARY KEY, " +
+                "account_id INTEGER NOT NULL, " +
+                "date TEXT NOT NULL, " +
+                "description TEXT NOT NULL, " +
+                "amount INTEGER NOT NULL, " +
+                "category_id INTEGER, " +
+                "epoch_day INTEGER)"
+            );
+            stmt.executeUpdate("CREATE INDEX IF NOT EXISTS archive.idx_expenses_account ON expenses(account_id)");
+            stmt.executeUpdate("CREATE INDEX IF NOT EXISTS archive.idx_expenses_account_day ON expenses(account_id, epoch_day, amount)");
+            stmt.executeUpdate("CREATE VIRTUAL TABLE IF NOT EXISTS archive.expenses_fts USING fts5(" + ExpenseSearch.FTS_COLUMNS + ")");
+
+            c.setAutoCommit(false);
+            try {
+                // 1: copy the year into its partition (ids already there were copied by a run that didn't finish)
+                PreparedStatement copy = conn.prepare("INSERT OR IGNORE INTO archive.expenses (" + COLUMNS + ") SELECT " + COLUMNS
+                        + " FROM main.expenses WHERE epoch_day BETWEEN ? AND ?");
+                copy.setLong(1, firstDay);
+                copy.setLong(2, lastDay);
+                copy.executeUpdate();
+                stmt.executeUpdate("INSERT INTO archive.expenses_fts (expenses_fts) VALUES ('rebuild')");
+                c.commit();
+
+                // 2: drop what is now safely in the partition, keeping it counted in the buckets
+                PreparedStatement keep = conn.prepare("CREATE TEMP TABLE archived_rows AS SELECT " + COLUMNS + " FROM main.expenses "
+                        + "WHERE epoch_day BETWEEN ? AND ? AND id IN (SELECT id FROM archive.expenses)");
+                keep.setLong(1, firstDay);
+                keep.setLong(2, lastDay);
+                keep.executeUpdate();
+                moved = stmt.executeUpdate("DELETE FROM main.expenses WHERE id IN (SELECT id FROM temp.archived_rows)");
+                ExpenseSummary.addTotals(c, "temp.archived_rows");
+                ExpenseReports.addTotals(c, "temp.archived_rows");
+                stmt.executeUpdate("DROP TABLE temp.archived_rows");
+                PreparedStatement register = conn.prepare(
+                        "INSERT INTO expense_partitions (year, file, first_day, last_day, row_count, compressed) " +
+                        "VALUES (?, ?, ?, ?, (SELECT COUNT(*) FROM archive.expenses), ?) " +
+                        "ON CONFLICT (year) DO UPDATE SET file = excluded.file, row_count = excluded.row_count, compressed = excluded.compressed");
+                register.setInt(1, year);
+                register.setString(2, name);
+                register.setLong(3, firstDay);
+                register.setLong(4, lastDay);
+                register.setInt(5, compress ? 1 : 0);
+                register.executeUpdate();
+                c.commit();
+            } catch (SQLException e) {
+                c.rollback();
+                throw e;
+            } finally {
+                c.setAutoCommit(true);
+            }
+            if (vacuum) {
+                stmt.executeUpdate("VACUUM archive");
+            }
+        } finally {
+            detach(conn, "archive");
+        }
+        seal(file, packed, compress);
+        logger.info("Archived " + moved + " expense(s) of " + year + " into " + (compress ? packed : file) + ".");
+        return moved;
+    }
+
+    // Delete every archived expense of an account, as deleting the account deletes its other ones.
+    // Each partition holding some is opened for writing (unpacked and packed again if compressed)
+    // and commits on its own; the caller, holding the writer, deletes the account and its buckets
+    // afterwards, so a failure part way leaves the account there to be deleted again.
+    // Returns the rows deleted.
+    public long deleteAccount(PooledConnection conn, int accountId) throws SQLException, IOException {
+        long deleted = 0;
+        try {
+            for (Partition partition : partitions(conn)) {
+                deleted += deleteAccount(conn, partition, accountId);
+            }
+        } finally {
+            partitions = null; // Row counts changed
+        }
+        return deleted;
+    }
+
+    private long deleteAccount(PooledConnection conn, Partition partition, int accountId) throws SQLException, IOException {
+        attach(conn, Collections.singletonList(partition));
+        try (PreparedStatement holds = conn.connection().prepareStatement("SELECT 1 FROM " + partition.schema() + ".expenses WHERE account_id = ? LIMIT 1")) {
+            holds.setInt(1, accountId);
+            try (ResultSet rs = holds.executeQuery()) {
+                if (!rs.next()) {
+                    return 0; // Nothing to unpack and rewrite
+                }
+            }
+        }
+        Path file = mainFile().resolveSibling(partition.getFile());
+        Path packed = Paths.get(file + ".gz");
+        boolean compress = attachWritable(conn, file, packed) || partition.isCompressed();
+        long deleted;
+        Connection c = conn.connection();
+        try (PreparedStatement unindex = c.prepareStatement("INSERT INTO archive.expenses_fts (expenses_fts, rowid, description) "
+                     + "SELECT 'delete', id, description FROM archive.expenses WHERE account_id = ?");
+             PreparedStatement delete = c.prepareStatement("DELETE FROM archive.expenses WHERE account_id = ?");
+             PreparedStatement recount = c.prepareStatement("UPDATE expense_partitions SET row_count = (SELECT COUNT(*) FROM archive.expenses) WHERE year = ?")) {
+            c.setAutoCommit(false);
+            try {
+                unindex.setInt(1, accountId);
+                unindex.executeUpdate();
+                delete.setInt(1, accountId);
+                deleted = delete.executeUpdate();
+                c.commit();
+            } catch (SQLException e) {
+                c.rollback();
+                throw e;
+            } finally {
+                c.setAutoCommit(true);
+            }
+            recount.setInt(1, partition.getYear());
+            recount.executeUpdate();
+        } finally {
+            detach(conn, "archive");
+        }
+        seal(file, packed, compress);
+        logger.info("Deleted " + deleted + " archived expense(s) of account " + accountId + " from " + (compress ? packed : file) + ".");
+        return deleted;
+    }
+
+    // Attach a partition file as 'archive' on the writer for changes, unpacking it when only the
+    // .gz is left. Returns whether it had to be unpacked.
+    private static boolean attachWritable(PooledConnection conn, Path file, Path packed) throws SQLException, IOException {
+        boolean unpackedHere = false;
+        if (!Files.exists(file) && Files.exists(packed)) {
+            gunzip(packed, file);
+            unpackedHere = true;
+        }
+        if (Files.exists(file)) {
+            file.toFile().setWritable(true);
+        }
+        Path stale = unpacked.remove(packed);
+        if (stale != null) {
+            Files.deleteIfExists(stale);
+        }
+        for (String schema : new ArrayList<>(conn.attached().keySet())) {
+            detach(conn, schema); // The writer may have read partitions before; 'archive' may be one of them
+        }
+        try (PreparedStatement attach = conn.connection().prepareStatement("ATTACH DATABASE ? AS archive")) {
+            attach.setString(1, file.toString());
+            attach.execute();
+        }
+        return unpackedHere;
+    }
+
+    // A partition file done with: read-only again, and replaced by its .gz if 'compress'
+    private static void seal(Path file, Path packed, boolean compress) throws IOException {
+        file.toFile().setReadOnly();
+        if (compress) {
+            gzip(file, packed);
+            Files.delete(file);
+        }
+    }
+
+    private static void gunzip(Path from, Path to) throws IOException {
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(from), 1 << 16)) {
+            Files.copy(in, to, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    // Written beside the target and moved over it, so a partial .gz is never left in its place
+    private static void gzip(Path from, Path to) throws IOException {
+        Path partial = Paths.get(to + ".part");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(partial), 1 << 16)) {
+            Files.copy(from, out);
+        }
+        Files.move(partial, to, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Command line: java ExpenseArchive [--before YEAR] [--vacuum] [--compress]
+    public static void main(String[] args) throws Exception {
+        int before = LocalDate.now().getYear() - KEEP_YEARS + 1;
+        boolean vacuum = false;
+        boolean compress = false;
+        for (int i = 0; i < args.length; i++) {
+            if ("--before".equals(args[i]) && i + 1 < args.length) {
+                before = Integer.parseInt(args[++i]);
+            } else if ("--vacuum".equals(args[i])) {
+                vacuum = true;
+            } else if ("--compress".equals(args[i])) {
+                compress = true;
+            } else {
+                System.err.println("Usage: java expensetracker.ExpenseArchive [--before YEAR] [--vacuum] [--compress]");
+                System.exit(2);
+            }
+        }
+        try (Database db = Database.open(ExpenseTracker.DB_URL)) {
+            try (PooledConnection conn = db.writer()) {
+                SchemaMigrations.migrate(conn.connection());
+            }
+            long moved = db.archive().archive(before, vacuum, compress);
+            System.out.println(moved + " expense(s) archived.");
+            try (PooledConnection conn = db.reader()) {
+                for (Partition partition : db.archive().partitions(conn)) {
+                    System.out.printf("%d  %,12d rows  %s%s%n", partition.getYear(), partition.getRowCount(), partition.getFile(),
+                            partition.isCompressed() ? ".gz" : "");
+                }
+            }
+        }
+    }
+}
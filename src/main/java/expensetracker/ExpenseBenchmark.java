@@ -0,0 +1,259 @@
+package expensetracker;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Benchmarks for the ExpenseTracker data paths.
+// Usage: java -cp target/classes:sqlite-jdbc.jar expensetracker.ExpenseBenchmark insert [rows] [singleRows] [batchSize]
+//        java -cp target/classes:sqlite-jdbc.jar expensetracker.ExpenseBenchmark mixed [seconds] [readerThreads]
+//        java -cp target/classes:sqlite-jdbc.jar expensetracker.ExpenseBenchmark transfers [threads] [transfersPerThread] [accounts]
+public class ExpenseBenchmark {
+    private static final String[] CATEGORIES = {"Food", "Transport", "Bills", "Entertainment"};
+    private static final int ACCOUNTS = 16;
+
+    public static void main(String[] args) throws IOException, SQLException, InterruptedException {
+        String mode = args.length > 0 ? args[0] : "insert";
+
+        Logger.getLogger(ExpenseTracker.class.getName()).setLevel(Level.WARNING);
+
+        File dbFile = File.createTempFile("expense-bench", ".db");
+        dbFile.deleteOnExit();
+        String url = "jdbc:sqlite:" + dbFile.getAbsolutePath();
+        ExpenseTracker.initDB(url);
+
+        if (!"transfers".equals(mode)) {
+            addAccounts(ExpenseTracker.database(), ACCOUNTS);
+        }
+        switch (mode) {
+            case "insert":
+                insert(args);
+                break;
+            case "mixed":
+                mixed(args);
+                break;
+            case "transfers":
+                transfers(args);
+                break;
+            default:
+                System.err.println("Unknown benchmark '" + mode + "', expected insert, mixed or transfers");
+                System.exit(2);
+        }
+    }
+
+    // Accounts 1..count, which synthetic expenses refer to (foreign keys are enforced)
+    static void addAccounts(Database db, int count) throws SQLException {
+        try (PooledConnection conn = db.writer()) {
+            PreparedStatement stmt = conn.prepare("INSERT OR IGNORE INTO accounts (id, name) VALUES (?, ?)");
+            for (int i = 1; i <= count; i++) {
+                stmt.setInt(1, i);
+                stmt.setString(2, "Account " + i);
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        }
+        db.accounts().invalidate();
+    }
+
+    // Rows/sec of one addExpense call per row against the batched bulk path
+    private static void insert(String[] args) {
+        int rows = args.length > 1 ? Integer.parseInt(args[1]) : 200_000;
+        int singleRows = args.length > 2 ? Integer.parseInt(args[2]) : 5_000;
+        int batchSize = args.length > 3 ? Integer.parseInt(args[3]) : ExpenseTracker.DEFAULT_BATCH_SIZE;
+
+        // One call per row: journaled, then group-committed by the write-behind queue
+        long start = System.nanoTime();
+        CompletableFuture<Long> last = CompletableFuture.completedFuture(0L);
+        for (int i = 0; i < singleRows; i++) {
+            last = ExpenseTracker.addExpense(1 + i % ACCOUNTS, "2024-12-14", "Single row " + i, Money.ofMinor(1_000 + i % 100 * 100));
+        }
+        last.join(); // Groups commit in order, so every row is in once the last one is
+        report("addExpense (journaled, group commit)", singleRows, System.nanoTime() - start);
+
+        // Bulk path: cached statement, addBatch/executeBatch, one commit per batch
+        List<Expense> expenses = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            expenses.add(syntheticExpense(i));
+        }
+        start = System.nanoTime();
+        BulkInsertResult result = ExpenseTracker.addExpenses(expenses, batchSize);
+        report("addExpenses (batch size " + batchSize + ")", result.getInsertedRows(), System.nanoTime() - start);
+    }
+
+    // One writer inserting single rows while reader threads fetch pages and totals,
+    // first with SQLite's default settings on one shared connection, then with the tuned layer
+    private static void mixed(String[] args) throws IOException, SQLException, InterruptedException {
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int readerThreads = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+        runMixed("untuned (DELETE journal, synchronous=FULL, shared connection)", Database.Config.untuned(), seconds, readerThreads);
+        runMixed("tuned (WAL, synchronous=NORMAL, reader pool, statement cache)", new Database.Config(), seconds, readerThreads);
+    }
+
+    private static void runMixed(String label, Database.Config config, int seconds, int readerThreads)
+            throws IOException, SQLException, InterruptedException {
+        File dbFile = File.createTempFile("expense-mixed", ".db");
+        dbFile.deleteOnExit();
+        try (Database db = Database.open("jdbc:sqlite:" + dbFile.getAbsolutePath(), config)) {
+            try (PooledConnection conn = db.writer()) {
+                SchemaMigrations.migrate(conn.connection());
+            }
+            addAccounts(db, ACCOUNTS);
+            try (PooledConnection conn = db.writer()) {
+                conn.connection().setAutoCommit(false);
+                PreparedStatement insert = conn.prepare(ExpenseTracker.INSERT_EXPENSE_SQL);
+                for (int i = 0; i < 100_000; i++) {
+                    ExpenseTracker.bindExpense(conn, insert, syntheticExpense(i));
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+                conn.connection().commit();
+                conn.connection().setAutoCommit(true);
+            }
+
+            long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+            LongAdder writes = new LongAdder();
+            LongAdder reads = new LongAdder();
+            List<Thread> threads = new ArrayList<>();
+            threads.add(new Thread(() -> {
+                for (int i = 0; System.nanoTime() < deadline; i++) {
+                    try (PooledConnection conn = db.writer()) {
+                        PreparedStatement insert = conn.prepare(ExpenseTracker.INSERT_EXPENSE_SQL);
+                        ExpenseTracker.bindExpense(conn, insert, syntheticExpense(i));
+                        insert.executeUpdate();
+                        writes.increment();
+                    } catch (SQLException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            }));
+            for (int r = 0; r < readerThreads; r++) {
+                int seed = r;
+                threads.add(new Thread(() -> {
+                    for (int i = seed; System.nanoTime() < deadline; i++) {
+                        try (PooledConnection conn = db.reader()) {
+                            int account = 1 + i % ACCOUNTS;
+                            PreparedStatement page = conn.prepare("SELECT id, date, description, amount, category_id FROM expenses WHERE account_id = ? AND id > ? ORDER BY id LIMIT 500");
+                            page.setInt(1, account);
+                            page.setLong(2, (i * 7919L) % 100_000);
+                            drain(page.executeQuery());
+                            ExpenseSummary.accountTotal(conn, account);
+                            reads.increment();
+                        } catch (SQLException e) {
+                            throw new IllegalStateException(e);
+                        }
+                    }
+                }));
+            }
+            for (Thread t : threads) {
+                t.start();
+            }
+            for (Thread t : threads) {
+                t.join();
+            }
+            System.out.printf("%-62s writes %,8.0f/s  reads %,8.0f/s%n", label, writes.sum() / (double) seconds, reads.sum() / (double) seconds);
+        }
+    }
+
+    // Stress test: many threads hammer the transfer engine; the sum of all balances must not move
+    // and no balance may go negative. Exits with status 1 when either invariant is broken.
+    private static void transfers(String[] args) throws SQLException, InterruptedException {
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 32;
+        int perThread = args.length > 2 ? Integer.parseInt(args[2]) : 2_000;
+        int accounts = args.length > 3 ? Integer.parseInt(args[3]) : 20;
+        Database db = ExpenseTracker.database();
+        try (PooledConnection conn = db.writer()) {
+            PreparedStatement stmt = conn.prepare("INSERT INTO accounts (id, name, balance) VALUES (?, ?, ?)");
+            for (int i = 1; i <= accounts; i++) {
+                stmt.setInt(1, i);
+                stmt.setString(2, "Stress " + i);
+                stmt.setLong(3, 10_000);
+                stmt.executeUpdate();
+            }
+        }
+        db.accounts().invalidate();
+
+        try (TransferEngine engine = new TransferEngine(db, 4, 512)) {
+            long before = engine.totalBalance();
+            LongAdder committed = new LongAdder();
+            LongAdder refused = new LongAdder();
+            LongAdder failed = new LongAdder();
+            List<Thread> workers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int seed = t;
+                workers.add(new Thread(() -> {
+                    Random random = new Random(seed);
+                    List<CompletableFuture<Boolean>> pending = new ArrayList<>();
+                    for (int i = 0; i < perThread; i++) {
+                        int from = 1 + random.nextInt(accounts);
+                        int to = 1 + random.nextInt(accounts);
+                        pending.add(engine.submit(from, to, 1 + random.nextInt(5_000)));
+                    }
+                    for (CompletableFuture<Boolean> result : pending) {
+                        try {
+                            if (result.join()) {
+                                committed.increment();
+                            } else {
+                                refused.increment();
+                            }
+                        } catch (RuntimeException e) {
+                            failed.increment();
+                        }
+                    }
+                }));
+            }
+            long start = System.nanoTime();
+            for (Thread t : workers) {
+                t.start();
+            }
+            for (Thread t : workers) {
+                t.join();
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            long after = engine.totalBalance();
+            long negative;
+            try (PooledConnection conn = db.reader(); ResultSet rs = conn.prepare("SELECT COUNT(*) FROM accounts WHERE balance < 0").executeQuery()) {
+                negative = rs.next() ? rs.getLong(1) : 0;
+            }
+            System.out.printf("%,d transfers from %d threads in %.2f s = %,.0f/s (committed %,d, refused %,d, failed %,d)%n",
+                    (long) threads * perThread, threads, seconds, threads * perThread / seconds, committed.sum(), refused.sum(), failed.sum());
+            System.out.printf("Total balance before %,d, after %,d; accounts below zero: %d%n", before, after, negative);
+            if (before != after || negative != 0) {
+                System.out.println("FAILED: balances are not conserved");
+                System.exit(1);
+            }
+            System.out.println("OK: balances conserved");
+        }
+    }
+
+    private static Expense syntheticExpense(int i) {
+        String date = String.format("%04d-%02d-%02d", 2020 + i % 5, 1 + i % 12, 1 + i % 28);
+        return new Expense(1 + i % ACCOUNTS, date, "Synthetic " + i, 100 + i % 10_000, CATEGORIES[i % CATEGORIES.length]);
+    }
+
+    // Reads each column of a page (id, date, description, amount, category_id) as its type
+    private static void drain(ResultSet rs) throws SQLException {
+        try (rs) {
+            while (rs.next()) {
+                rs.getLong(1);
+                rs.getString(2);
+                rs.getString(3);
+                rs.getLong(4);
+                rs.getInt(5);
+            }
+        }
+    }
+
+    private static void report(String label, int rows, long elapsedNanos) {
+        double seconds = elapsedNanos / 1_000_000_000.0;
+        System.out.printf("%-40s %,10d rows in %8.3f s  = %,12.0f rows/sec%n", label, rows, seconds, rows / seconds);
+    }
+}
@@ -0,0 +1,459 @@
+package expensetracker;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+// Streams bank exports (CSV or OFX) into the expenses table.
+// One parser thread -> bounded queue -> validation workers -> bounded queue -> one writer thread.
+// If a validator or the writer dies, the other stages are interrupted rather than left waiting on
+// a queue nobody empties, and the import fails with the cause.
+// CSV layout: account,date,description,amount[,category] with an optional header row.
+public class ExpenseImporter {
+    private static final Logger logger = Logger.getLogger(ExpenseImporter.class.getName());
+    private static final String[] END_OF_INPUT = new String[0];
+    private static final Expense END_OF_BATCHES = new Expense(0, "", "", 0);
+    private static final int MAX_REJECTION_SAMPLES = 20;
+
+    private final int workers;
+    private final int batchSize;
+    private final int queueCapacity;
+    private final Function<List<Expense>, BulkInsertResult> sink; // What the writer stage hands each batch to
+
+    public ExpenseImporter() {
+        this(Math.max(1, Runtime.getRuntime().availableProcessors() - 2), ExpenseTracker.DEFAULT_BATCH_SIZE, 8_192);
+    }
+
+    public ExpenseImporter(int workers, int batchSize, int queueCapacity) {
+        this(workers, batchSize, queueCapacity, batch -> ExpenseTracker.addExpenses(batch, batchSize));
+    }
+
+    ExpenseImporter(int workers, int batchSize, int queueCapacity, Function<List<Expense>, BulkInsertResult> sink) {
+        if (workers <= 0 || batchSize <= 0 || queueCapacity <= 0) {
+            throw new IllegalArgumentException("workers, batchSize and queueCapacity must be positive");
+        }
+        this.workers = workers;
+        this.batchSize = batchSize;
+        this.queueCapacity = queueCapacity;
+        this.sink = sink;
+    }
+
+    // Import a CSV file; rows name their account in the first column
+    public ImportReport importCsv(Path file) throws IOException, InterruptedException {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return run((queue, report) -> parseCsv(reader, queue));
+        }
+    }
+
+    // Import an OFX statement; every debit becomes an expense of the given account, credits are skipped
+    public ImportReport importOfx(Path file, String accountName) throws IOException, InterruptedException {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return run((queue, report) -> parseOfx(reader, accountName, queue, report));
+        }
+    }
+
+    private interface Parser {
+        void parse(BlockingQueue<String[]> queue, ImportReport report) throws IOException, InterruptedException;
+    }
+
+    private ImportReport run(Parser parser) throws IOException, InterruptedException {
+        // Resolve account names once; workers only read this map
+        Map<String, Integer> accountIds = Collections.unmodifiableMap(ExpenseTracker.loadAccountIds());
+        BlockingQueue<String[]> parsed = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<Expense> validated = new ArrayBlockingQueue<>(queueCapacity);
+        ImportReport report = new ImportReport();
+        long start = System.nanoTime();
+
+        // The first stage to die records why and interrupts the rest, the parser (this thread) included
+        Thread parserThread = Thread.currentThread();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> stages = new ArrayList<>(workers + 1);
+        Thread.UncaughtExceptionHandler abort = (dead, e) -> {
+            if (failure.compareAndSet(null, e)) {
+                for (Thread stage : stages) {
+                    if (stage != dead) {
+                        stage.interrupt();
+                    }
+                }
+                parserThread.interrupt();
+            }
+        };
+        List<Thread> validators = new ArrayList<>(workers);
+        for (int i = 0; i < workers; i++) {
+            validators.add(new Thread(() -> validate(parsed, validated, accountIds, report), "import-validator-" + i));
+        }
+        Thread writer = new Thread(() -> write(validated, report), "import-writer");
+        stages.addAll(validators);
+        stages.add(writer);
+        for (Thread t : stages) {
+            t.setDaemon(true);
+            t.setUncaughtExceptionHandler(abort);
+            t.start();
+        }
+
+        try {
+            try {
+                parser.parse(parsed, report);
+            } finally {
+                // After a failure the queues may stay full forever; the stages are already interrupted
+                if (failure.get() == null) {
+                    for (int i = 0; i < workers; i++) {
+                        parsed.put(END_OF_INPUT);
+                    }
+                    for (Thread t : validators) {
+                        t.join();
+                    }
+                    validated.put(END_OF_BATCHES);
+                    writer.join();
+                }
+            }
+        } catch (IOException | InterruptedException e) {
+            if (failure.get() == null) {
+                throw e;
+            }
+            // The abort's interrupt (or the file channel it closed), not the caller's
+        }
+        Throwable cause = failure.get();
+        if (cause != null) {
+            Thread.interrupted();
+            for (Thread t : stages) {
+                t.interrupt();
+                t.join();
+            }
+            logger.severe("Import failed after " + report.getInserted() + " inserted row(s): " + cause);
+            throw new IllegalStateException("Import failed: " + cause, cause);
+        }
+
+        report.finish(System.nanoTime() - start);
+        logger.info("Import finished: " + report);
+        return report;
+    }
+
+    // Worker stage: turn raw fields into Expense rows or rejections
+    private static void validate(BlockingQueue<String[]> in, BlockingQueue<Expense> out, Map<String, Integer> accountIds, ImportReport report) {
+        try {
+            while (true) {
+                String[] fields = in.take();
+                if (fields == END_OF_INPUT) {
+                    return;
+                }
+                report.rowRead();
+                // fields[0] carries the source line number
+                if (fields.length < 5) {
+                    report.reject(fields[0], "expected at least 4 columns");
+                    continue;
+                }
+                Integer accountId = accountIds.get(fields[1].trim());
+                if (accountId == null) {
+                    report.reject(fields[0], "unknown account '" + fields[1].trim() + "'");
+                    continue;
+                }
+                String date = fields[2].trim();
+                try {
+                    LocalDate.parse(date);
+                } catch (DateTimeParseException e) {
+                    report.reject(fields[0], "invalid date '" + date + "'");
+                    continue;
+                }
+                String description = fields[3].trim();
+                if (description.isEmpty()) {
+                    report.reject(fields[0], "missing description");
+                    continue;
+                }
+                long amount;
+                try {
+                    amount = Money.parseMinor(fields[4]);
+                } catch (NumberFormatException e) {
+                    report.reject(fields[0], "invalid amount '" + fields[4].trim() + "'");
+                    continue;
+                }
+                String category = fields.length > 5 && !fields[5].trim().isEmpty() ? fields[5].trim() : null;
+                out.put(new Expense(accountId, date, description, amount, category));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Writer stage: the only thread that touches the database
+    private void write(BlockingQueue<Expense> in, ImportReport report) {
+        List<Expense> batch = new ArrayList<>(batchSize);
+        try {
+            while (true) {
+                Expense expense = in.take();
+                if (expense == END_OF_BATCHES) {
+                    break;
+                }
+                batch.add(expense);
+                if (batch.size() >= batchSize) {
+                    report.written(sink.apply(batch));
+                    batch.clear();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return; // The import is being abandoned, and the partial batch with it
+        }
+        if (!batch.isEmpty()) {
+            report.written(sink.apply(batch));
+        }
+    }
+
+    // Parser stage for CSV: RFC-4180 quoting, quoted fields may span lines
+    static void parseCsv(BufferedReader reader, BlockingQueue<String[]> out) throws IOException, InterruptedException {
+        List<String> fields = new ArrayList<>(6);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        boolean headerChecked = false;
+        long line = 1;
+        long recordLine = 1;
+        int c;
+        while ((c = reader.read()) != -1) {
+            if (quoted) {
+                if (c == '"') {
+                    reader.mark(1);
+                    int next = reader.read();
+                    if (next == '"') {
+                        field.append('"');
+                    } else {
+                        quoted = false;
+                        if (next != -1) {
+                            reader.reset();
+                        }
+                    }
+                } else {
+                    if (c == '\n') {
+                        line++;
+                    }
+                    field.append((char) c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\n' || c == '\r') {
+                if (c == '\r') {
+                    reader.mark(1);
+                    if (reader.read() != '\n') {
+                        reader.reset();
+                    }
+                }
+                fields.add(field.toString());
+                field.setLength(0);
+                if (!headerChecked) {
+                    headerChecked = true;
+                    if (isHeader(fields)) {
+                        fields.clear();
+                    }
+                }
+                emit(fields, recordLine, out);
+                line++;
+                recordLine = line;
+            } else {
+                field.append((char) c);
+            }
+        }
+        if (field.length() > 0 || !fields.isEmpty()) {
+            fields.add(field.toString());
+            emit(fields, recordLine, out);
+        }
+    }
+
+    private static boolean isHeader(List<String> fields) {
+        return fields.size() >= 2 && "date".equalsIgnoreCase(fields.get(1).trim());
+    }
+
+    private static void emit(List<String> fields, long line, BlockingQueue<String[]> out) throws InterruptedException {
+        if (fields.isEmpty() || (fields.size() == 1 && fields.get(0).isEmpty())) {
+            fields.clear();
+            return;
+        }
+        String[] record = new String[fields.size() + 1];
+        record[0] = Long.toString(line);
+        for (int i = 0; i < fields.size(); i++) {
+            record[i + 1] = fields.get(i);
+        }
+        fields.clear();
+        out.put(record);
+    }
+
+    // Parser stage for OFX/SGML: scans <TAG>value pairs inside each <STMTTRN> block
+    static void parseOfx(BufferedReader reader, String accountName, BlockingQueue<String[]> out, ImportReport report)
+            throws IOException, InterruptedException {
+        StringBuilder tag = new StringBuilder();
+        StringBuilder value = new StringBuilder();
+        String datePosted = null, amount = null, name = null, memo = null;
+        boolean inTransaction = false;
+        long transaction = 0;
+        int c = reader.read();
+        while (c != -1) {
+            if (c != '<') {
+                c = reader.read();
+                continue;
+            }
+            tag.setLength(0);
+            while ((c = reader.read()) != -1 && c != '>') {
+                tag.append((char) c);
+            }
+            value.setLength(0);
+            while ((c = reader.read()) != -1 && c != '<') {
+                value.append((char) c);
+            }
+            String t = tag.toString().trim().toUpperCase();
+            String v = value.toString().trim();
+            switch (t) {
+                case "STMTTRN":
+                    inTransaction = true;
+                    datePosted = amount = name = memo = null;
+                    transaction++;
+                    break;
+                case "/STMTTRN":
+                    if (inTransaction) {
+                        emitOfx(transaction, accountName, datePosted, amount, name, memo, out, report);
+                    }
+                    inTransaction = false;
+                    break;
+                case "DTPOSTED":
+                    datePosted = v;
+                    break;
+                case "TRNAMT":
+                    amount = v;
+                    break;
+                case "NAME":
+                    name = v;
+                    break;
+                case "MEMO":
+                    memo = v;
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    private static void emitOfx(long transaction, String accountName, String datePosted, String amount, String name, String memo,
+                                BlockingQueue<String[]> out, ImportReport report) throws InterruptedException {
+        // Debits carry a negative TRNAMT; credits (deposits, refunds) are income, not expenses
+        if (amount != null && !amount.startsWith("-")) {
+            report.skip();
+            return;
+        }
+        // OFX dates are YYYYMMDD[HHMMSS...]
+        String date = datePosted != null && datePosted.length() >= 8
+                ? datePosted.substring(0, 4) + "-" + datePosted.substring(4, 6) + "-" + datePosted.substring(6, 8)
+                : String.valueOf(datePosted);
+        String expenseAmount = amount == null ? "" : amount.substring(1);
+        String description = name != null ? name : memo != null ? memo : "";
+        out.put(new String[]{"STMTTRN " + transaction, accountName, date, description, expenseAmount});
+    }
+
+    // Rows read, rejected, skipped and written during one import
+    public static class ImportReport {
+        private final AtomicLong rowsRead = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+        private final AtomicLong skipped = new AtomicLong(); // Valid input that isn't an expense, such as OFX credits
+        private final List<String> rejectionSamples = Collections.synchronizedList(new ArrayList<>());
+        private long inserted;
+        private long failedWrites;
+        private long elapsedNanos;
+
+        void rowRead() {
+            rowsRead.incrementAndGet();
+        }
+
+        void reject(String source, String reason) {
+            rejected.incrementAndGet();
+            if (rejectionSamples.size() < MAX_REJECTION_SAMPLES) {
+                rejectionSamples.add("line " + source + ": " + reason);
+            }
+        }
+
+        void skip() {
+            skipped.incrementAndGet();
+        }
+
+        void written(BulkInsertResult result) {
+            inserted += result.getInsertedRows();
+            failedWrites += result.getFailedRows();
+        }
+
+        void finish(long elapsedNanos) {
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public long getRowsRead() {
+            return rowsRead.get();
+        }
+
+        public long getRejected() {
+            return rejected.get();
+        }
+
+        public long getSkipped() {
+            return skipped.get();
+        }
+
+        public List<String> getRejectionSamples() {
+            return Collections.unmodifiableList(new ArrayList<>(rejectionSamples));
+        }
+
+        public long getInserted() {
+            return inserted;
+        }
+
+        public long getFailedWrites() {
+            return failedWrites;
+        }
+
+        public double getRowsPerSecond() {
+            return elapsedNanos == 0 ? 0 : rowsRead.get() / (elapsedNanos / 1_000_000_000.0);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("read=%d inserted=%d rejected=%d skipped=%d failedWrites=%d in %.3f s (%.0f rows/sec)",
+                    rowsRead.get(), inserted, rejected.get(), skipped.get(), failedWrites, elapsedNanos / 1_000_000_000.0, getRowsPerSecond());
+        }
+    }
+
+    // Command line: java ExpenseImporter <file.csv> | <file.ofx> <account name>
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: java expensetracker.ExpenseImporter <file.csv> | <file.ofx> <account name>");
+            System.exit(2);
+        }
+        ExpenseTracker.initDB();
+        Path file = Paths.get(args[0]);
+        ExpenseImporter importer = new ExpenseImporter();
+        ImportReport report;
+        if (args[0].toLowerCase().endsWith(".ofx")) {
+            if (args.length < 2) {
+                System.err.println("OFX import needs the target account name");
+                System.exit(2);
+            }
+            report = importer.importOfx(file, args[1]);
+        } else {
+            report = importer.importCsv(file);
+        }
+        System.out.println(report);
+        for (String sample : report.getRejectionSamples()) {
+            System.out.println("  rejected " + sample);
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package expensetracker;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+// Append-only file of expenses accepted by BatchingExpenseWriter but not yet known to be in the
+// database. Every submission is one record with a sequence number; a record is fsync'd before
+// the submission is acknowledged, and the database stores the highest sequence it has applied
+// (table write_journal) in the same transaction as the rows. At startup every record above that
+// sequence is replayed. The file is emptied whenever the database has caught up with it.
+//
+// Record: int payloadLength | payload | int crc32(payload)
+// Payload: long seq | int rows | rows x (int accountId, long amount, date, description, category)
+// A torn record at the end (crash mid-append) fails its length or CRC check and is discarded;
+// it was never acknowledged.
+public class ExpenseJournal implements AutoCloseable {
+    private final Path file;
+    private final FileChannel channel;
+    private final FileLock lock;
+    private final Object syncLock = new Object();
+    private final List<Entry> unapplied;
+    private long lastSeq;
+    private long syncedSeq;
+
+    // One journaled submission
+    public static final class Entry {
+        final long seq;
+        final List<Expense> expenses;
+
+        Entry(long seq, List<Expense> expenses) {
+            this.seq = seq;
+            this.expenses = expenses;
+        }
+    }
+
+    private ExpenseJournal(Path file, FileChannel channel, FileLock lock, List<Entry> unapplied, long lastSeq) {
+        this.file = file;
+        this.channel = channel;
+        this.lock = lock;
+        this.unapplied = unapplied;
+        this.lastSeq = lastSeq;
+        this.syncedSeq = lastSeq;
+    }
+
+    // Create the applied-sequence table
+    public static void install(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("CREATE TABLE IF NOT EXISTS write_journal (" +
+                    "id INTEGER PRIMARY KEY CHECK (id = 1), " +
+                    "applied_seq INTEGER NOT NULL);");
+            stmt.executeUpdate("INSERT OR IGNORE INTO write_journal (id, applied_seq) VALUES (1, 0);");
+        }
+    }
+
+    // Highest journal sequence whose rows are in the database
+    static long appliedSeq(PooledConnection conn) throws SQLException {
+        try (ResultSet rs = conn.prepare("SELECT applied_seq FROM write_journal WHERE id = 1").executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    // Record 'seq' as applied; call inside the transaction that wrote its rows
+    static void markApplied(PooledConnection conn, long seq) throws SQLException {
+        PreparedStatement stmt = conn.prepare("UPDATE write_journal SET applied_seq = ? WHERE id = 1 AND applied_seq < ?");
+        stmt.setLong(1, seq);
+        stmt.setLong(2, seq);
+        stmt.executeUpdate();
+    }
+
+    // Open (or create) the journal and read back whatever is newer than appliedSeq.
+    // Returns null if another process already holds it.
+    static ExpenseJournal open(Path file, long appliedSeq) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        FileLock lock;
+        try {
+            lock = channel.tryLock();
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        if (lock == null) {
+            channel.close();
+            return null;
+        }
+        List<Entry> unapplied = new ArrayList<>();
+        long lastSeq = appliedSeq;
+        ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(file));
+        int validLength = 0;
+        while (buf.remaining() >= 4) {
+            Entry entry = readRecord(buf);
+            if (entry == null) {
+                break;
+            }
+            validLength = buf.position();
+            lastSeq = Math.max(lastSeq, entry.seq);
+            if (entry.seq > appliedSeq) {
+                unapplied.add(entry);
+            }
+        }
+        // Drop a torn tail so new records follow the last complete one
+        channel.truncate(validLength);
+        channel.position(validLength);
+        return new ExpenseJournal(file, channel, lock, unapplied, lastSeq);
+    }
+
+    // Records found at open that the database has not applied, oldest first
+    List<Entry> unapplied() {
+        return unapplied;
+    }
+
+    Path getFile() {
+        return file;
+    }
+
+    // Write one record and return its sequence; not durable until sync() covers it
+    synchronized long append(List<Expense> expenses) throws IOException {
+        long seq = lastSeq + 1;
+        ByteBuffer record = encode(seq, expenses);
+        long start = channel.position();
+        try {
+            while (record.hasRemaining()) {
+                channel.write(record);
+            }
+        } catch (IOException e) {
+            // Don't leave half a record for later ones to be appended behind
+            channel.truncate(start);
+            channel.position(start);
+            throw e;
+        }
+        lastSeq = seq;
+        return seq;
+    }
+
+    // Make every record up to 'seq' durable. Concurrent callers share one fsync: whoever gets
+    // the lock syncs everything written so far, and those waiting behind usually find their
+    // record already covered.
+    void sync(long seq) throws IOException {
+        synchronized (syncLock) {
+            if (syncedSeq >= seq) {
+                return;
+            }
+            long target;
+            synchronized (this) {
+                target = lastSeq;
+            }
+            channel.force(false);
+            syncedSeq = target;
+        }
+    }
+
+    synchronized long size() throws IOException {
+        return channel.size();
+    }
+
+    // Empty the file if the database holds every record in it
+    synchronized boolean truncateIfApplied(long appliedSeq) throws IOException {
+        if (appliedSeq < lastSeq || channel.size() == 0) {
+            return false;
+        }
+        channel.truncate(0);
+        channel.position(0);
+        return true;
+    }
+
+    private static ByteBuffer encode(long seq, List<Expense> expenses) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + expenses.size() * 64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0); // Length, patched below
+        out.writeLong(seq);
+        out.writeInt(expenses.size());
+        for (Expense expense : expenses) {
+            out.writeInt(expense.getAccountId());
+            out.writeLong(expense.getAmount());
+            writeString(out, expense.getDate());
+            writeString(out, expense.getDescription());
+            writeString(out, expense.getCategory());
+        }
+        out.writeInt(0); // CRC, patched below
+        ByteBuffer record = ByteBuffer.wrap(bytes.toByteArray());
+        int payloadLength = record.capacity() - 8;
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 4, payloadLength);
+        record.putInt(0, payloadLength);
+        record.putInt(4 + payloadLength, (int) crc.getValue());
+        return record;
+    }
+
+    // Null-safe, and without writeUTF's 64 KB limit
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(utf8.length);
+        out.write(utf8);
+    }
+
+    // The next complete, intact record, or null at a torn or corrupt one
+    private static Entry readRecord(ByteBuffer buf) {
+        int start = buf.position();
+        int payloadLength = buf.getInt();
+        if (payloadLength < 12 || payloadLength > buf.remaining() - 4) {
+            return null;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buf.array(), start + 4, payloadLength);
+        if (buf.getInt(start + 4 + payloadLength) != (int) crc.getValue()) {
+            return null;
+        }
+        try {
+            long seq = buf.getLong();
+            int rows = buf.getInt();
+            List<Expense> expenses = new ArrayList<>(Math.min(rows, 1 << 16));
+            for (int i = 0; i < rows; i++) {
+                int accountId = buf.getInt();
+                long amount = buf.getLong();
+                String date = readString(buf);
+                String description = readString(buf);
+                String category = readString(buf);
+                expenses.add(new Expense(accountId, date, description, amount, category));
+            }
+            buf.position(start + 4 + payloadLength + 4);
+            return new Entry(seq, expenses);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static String readString(ByteBuffer buf) {
+        int length = buf.getInt();
+        if (length < 0) {
+            return null;
+        }
+        String value = new String(buf.array(), buf.position(), length, StandardCharsets.UTF_8);
+        buf.position(buf.position() + length);
+        return value;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            lock.release();
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package expensetracker;
+
+import java.io.File;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Load generator for ExpenseServer: 'threads' clients, each sending requests back to back for
+// 'seconds', 'writePercent' of them POST /expenses and the rest GET /accounts/{id}/expenses.
+// Prints requests/s and latency percentiles per request type.
+// Usage: java -cp target/classes:sqlite-jdbc.jar expensetracker.ExpenseLoadTest [threads] [seconds] [writePercent] [baseUrl]
+// Without a baseUrl an in-process server is started on a temporary database.
+public class ExpenseLoadTest {
+    static final int ACCOUNTS = 16;
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        int writePercent = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+        String baseUrl = args.length > 3 ? args[3] : null;
+
+        ExpenseServer server = null;
+        if (baseUrl == null) {
+            Logger.getLogger(ExpenseTracker.class.getName()).setLevel(Level.WARNING);
+            File dbFile = File.createTempFile("expense-load", ".db");
+            dbFile.deleteOnExit();
+            ExpenseTracker.initDB("jdbc:sqlite:" + dbFile.getAbsolutePath());
+            ExpenseBenchmark.addAccounts(ExpenseTracker.database(), ACCOUNTS);
+            for (int a = 1; a <= ACCOUNTS; a++) {
+                ExpenseTracker.addExpense(a, "2024-01-01", "Opening", Money.ofMinor(100));
+            }
+            server = new ExpenseServer(0);
+            server.start();
+            baseUrl = "http://127.0.0.1:" + server.getPort();
+        }
+
+        Result result = run(baseUrl, threads, seconds, writePercent);
+        report("GET page", result.reads, seconds);
+        report("POST expense", result.writes, seconds);
+        System.out.printf("errors %d%n", result.errors);
+        if (server != null) {
+            server.close();
+            ExpenseTracker.closeDB();
+        }
+    }
+
+    // What one run saw: sorted latencies of the successful requests, in nanoseconds, and the
+    // number that failed or came back with a status of 300 or more
+    static final class Result {
+        final long[] reads;
+        final long[] writes;
+        final long errors;
+
+        Result(long[] reads, long[] writes, long errors) {
+            this.reads = reads;
+            this.writes = writes;
+            this.errors = errors;
+        }
+    }
+
+    static Result run(String baseUrl, int threads, int seconds, int writePercent) throws InterruptedException {
+        HttpClient client = HttpClient.newBuilder()
+                .executor(ExpenseServer.requestExecutor())
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        long[][] reads = new long[threads][];
+        long[][] writes = new long[threads][];
+        LongAdder errors = new LongAdder();
+        Thread[] clients = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int slot = t;
+            clients[t] = new Thread(() -> {
+                long[] readLatencies = new long[4_096];
+                long[] writeLatencies = new long[4_096];
+                int readCount = 0;
+                int writeCount = 0;
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (System.nanoTime() < deadline) {
+                    int account = 1 + random.nextInt(ACCOUNTS);
+                    boolean write = random.nextInt(100) < writePercent;
+                    HttpRequest request = write
+                            ? HttpRequest.newBuilder(URI.create(baseUrl + "/expenses"))
+                                    .POST(HttpRequest.BodyPublishers.ofString("{\"accountId\":" + account
+                                            + ",\"date\":\"2024-06-15\",\"description\":\"Load test\",\"amount\":\""
+                                            + (1 + random.nextInt(100)) + ".25\",\"category\":\"Food\"}"))
+                                    .build()
+                            : HttpRequest.newBuilder(URI.create(baseUrl + "/accounts/" + account + "/expenses?limit=50")).GET().build();
+                    long start = System.nanoTime();
+                    try {
+                        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+                        if (response.statusCode() >= 300) {
+                            errors.increment();
+                            continue;
+                        }
+                    } catch (Exception e) {
+                        errors.increment();
+                        continue;
+                    }
+                    long elapsed = System.nanoTime() - start;
+                    if (write) {
+                        if (writeCount == writeLatencies.length) {
+                            writeLatencies = Arrays.copyOf(writeLatencies, writeCount * 2);
+                        }
+                        writeLatencies[writeCount++] = elapsed;
+                    } else {
+                        if (readCount == readLatencies.length) {
+                            readLatencies = Arrays.copyOf(readLatencies, readCount * 2);
+                        }
+                        readLatencies[readCount++] = elapsed;
+                    }
+                }
+                reads[slot] = Arrays.copyOf(readLatencies, readCount);
+                writes[slot] = Arrays.copyOf(writeLatencies, writeCount);
+            }, "load-client-" + t);
+            clients[t].start();
+        }
+        for (Thread c : clients) {
+            c.join();
+        }
+
+        return new Result(merge(reads), merge(writes), errors.sum());
+    }
+
+    private static long[] merge(long[][] perThread) {
+        long[] all = Arrays.stream(perThread).flatMapToLong(Arrays::stream).toArray();
+        Arrays.sort(all);
+        return all;
+    }
+
+    private static void report(String label, long[] sortedNanos, int seconds) {
+        System.out.printf("%-14s %,10d requests  %,10.1f req/s  p50 %,8.2f ms  p99 %,8.2f ms%n",
+                label, sortedNanos.length, sortedNanos.length / (double) seconds,
+                percentileMillis(sortedNanos, 50), percentileMillis(sortedNanos, 99));
+    }
+
+    private static double percentileMillis(long[] sortedNanos, double p) {
+        if (sortedNanos.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.min(sortedNanos.length - 1, Math.ceil(p / 100.0 * sortedNanos.length) - 1);
+        return sortedNanos[Math.max(0, index)] / 1_000_000.0;
+    }
+}
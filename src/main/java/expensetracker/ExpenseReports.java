@@ -0,0 +1,294 @@
+package expensetracker;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+
+// Time-series reports answered from pre-aggregated buckets, never from a scan of 'expenses'.
+// Month buckets per (account, category, month) are ExpenseSummary's expense_totals; this class
+// adds day buckets per (account, epoch_day) in expense_daily_totals, kept current by triggers.
+// A rolling window reads at most one row per day, a year-over-year comparison at most 24 rows
+// per category, however many years of expenses there are. Amounts are ledger minor units.
+public class ExpenseReports {
+    private static final Logger logger = Logger.getLogger(ExpenseReports.class.getName());
+
+    private static final String ADD_NEW =
+            "INSERT INTO expense_daily_totals (account_id, epoch_day, total, row_count) " +
+            "SELECT NEW.account_id, NEW.epoch_day, NEW.amount, 1 WHERE NEW.epoch_day IS NOT NULL " +
+            "ON CONFLICT (account_id, epoch_day) DO UPDATE SET total = total + excluded.total, row_count = row_count + 1;";
+
+    private static final String REMOVE_OLD =
+            "UPDATE expense_daily_totals SET total = total - OLD.amount, row_count = row_count - 1 " +
+            "WHERE account_id = OLD.account_id AND epoch_day = OLD.epoch_day; " +
+            "DELETE FROM expense_daily_totals WHERE row_count <= 0 AND account_id = OLD.account_id AND epoch_day = OLD.epoch_day;";
+
+    // One cell of the account x category x month cube
+    public static final class Bucket {
+        private final int accountId;
+        private final String category;
+        private final String month;
+        private final long total;
+        private final long rowCount;
+
+        Bucket(int accountId, String category, String month, long total, long rowCount) {
+            this.accountId = accountId;
+            this.category = category;
+            this.month = month;
+            this.total = total;
+            this.rowCount = rowCount;
+        }
+
+        public int getAccountId() {
+            return accountId;
+        }
+
+        // Null for expenses without a category
+        public String getCategory() {
+            return category;
+        }
+
+        // YYYY-MM
+        public String getMonth() {
+            return month;
+        }
+
+        public long getTotal() {
+            return total;
+        }
+
+        public long getRowCount() {
+            return rowCount;
+        }
+    }
+
+    // Monthly totals of one year next to the year before; index 0 is January
+    public static final class YearOverYear {
+        private final int year;
+        private final long[] thisYear;
+        private final long[] lastYear;
+
+        YearOverYear(int year, long[] thisYear, long[] lastYear) {
+            this.year = year;
+            this.thisYear = thisYear;
+            this.lastYear = lastYear;
+        }
+
+        public int getYear() {
+            return year;
+        }
+
+        public long thisYear(int monthIndex) {
+            return thisYear[monthIndex];
+        }
+
+        public long lastYear(int monthIndex) {
+            return lastYear[monthIndex];
+        }
+
+        public long thisYearTotal() {
+            return Money.sum(thisYear, 0, 12);
+        }
+
+        public long lastYearTotal() {
+            return Money.sum(lastYear, 0, 12);
+        }
+
+        // Relative change against the year before, e.g. 0.25 for +25%; NaN when there was nothing to compare with
+        public double change(int monthIndex) {
+            return lastYear[monthIndex] == 0 ? Double.NaN : (double) (thisYear[monthIndex] - lastYear[monthIndex]) / lastYear[monthIndex];
+        }
+    }
+
+    // Create the day buckets and their triggers, filling them if they are new
+    public static void install(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            boolean created;
+            try (ResultSet rs = stmt.executeQuery("SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = 'expense_daily_totals'")) {
+                created = !rs.next();
+            }
+            stmt.executeUpdate(
+                "CREATE TABLE IF NOT EXISTS expense_daily_totals (" +
+                "account_id INTEGER NOT NULL, " +
+                "epoch_day INTEGER NOT NULL, " +
+                "total INTEGER NOT NULL, " +
+                "row_count INTEGER NOT NULL, " +
+                "PRIMARY KEY (account_id, epoch_day)) WITHOUT ROWID;"
+            );
+            // Rows inserted without an epoch_day are counted once expenses_epoch_day_insert fills it in
+            stmt.executeUpdate("CREATE TRIGGER IF NOT EXISTS expense_daily_totals_insert AFTER INSERT ON expenses BEGIN " + ADD_NEW + " END;");
+            SchemaMigrations.createTriggerControl(stmt);
+            stmt.executeUpdate("CREATE TRIGGER IF NOT EXISTS expense_daily_totals_delete AFTER DELETE ON expenses " + SchemaMigrations.UNLESS_BYPASSED
+                    + " BEGIN " + REMOVE_OLD + " END;");
+            stmt.executeUpdate("CREATE TRIGGER IF NOT EXISTS expense_daily_totals_update AFTER UPDATE OF account_id, epoch_day, amount ON expenses BEGIN "
+                    + REMOVE_OLD + " " + ADD_NEW + " END;");
+            if (created) {
+                stmt.executeUpdate("INSERT INTO expense_daily_totals (account_id, epoch_day, total, row_count) " +
+                        "SELECT account_id, epoch_day, SUM(amount), COUNT(*) FROM expenses WHERE epoch_day IS NOT NULL GROUP BY 1, 2");
+                logger.info("Daily expense totals filled.");
+            }
+        }
+    }
+
+    // Count rows taken out of 'expenses' (firing the delete trigger) back into their day buckets;
+    // 'rows' is a table with the columns of 'expenses'
+    static void addTotals(Connection conn, String rows) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("INSERT INTO expense_daily_totals (account_id, epoch_day, total, row_count) " +
+                    "SELECT account_id, epoch_day, SUM(amount), COUNT(*) FROM " + rows + " WHERE epoch_day IS NOT NULL GROUP BY 1, 2 " +
+                    "ON CONFLICT (account_id, epoch_day) DO UPDATE SET total = total + excluded.total, row_count = row_count + excluded.row_count");
+        }
+    }
+
+    // Take deleted rows out of their day buckets at once, as the delete trigger would one by one;
+    // 'days' holds them grouped as for ExpenseSummary.removeTotals, with epoch_day
+    static void removeTotals(Connection conn, String days) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("INSERT INTO expense_daily_totals (account_id, epoch_day, total, row_count) " +
+                    "SELECT account_id, epoch_day, -SUM(amount), -SUM(row_count) FROM " + days + " WHERE epoch_day IS NOT NULL GROUP BY 1, 2 " +
+                    "ON CONFLICT (account_id, epoch_day) DO UPDATE SET total = total + excluded.total, row_count = row_count + excluded.row_count");
+            stmt.executeUpdate("DELETE FROM expense_daily_totals WHERE row_count <= 0 AND account_id IN (SELECT account_id FROM " + days + ")");
+        }
+    }
+
+    // Every (account, category, month) total for months in [fromMonth, toMonth] (YYYY-MM, inclusive)
+    public static List<Bucket> totalsByAccountCategoryMonth(PooledConnection conn, String fromMonth, String toMonth) throws SQLException {
+        NameDictionary categories = conn.database().categories();
+        List<Bucket> buckets = new ArrayList<>();
+        PreparedStatement stmt = conn.prepare(
+                "SELECT account_id, category_id, month, total, row_count FROM expense_totals " +
+                "WHERE month BETWEEN ? AND ? ORDER BY account_id, category_id, month");
+        stmt.setString(1, fromMonth);
+        stmt.setString(2, toMonth);
+        try (ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                buckets.add(new Bucket(rs.getInt(1), categories.nameOf(conn, rs.getInt(2)), rs.getString(3), rs.getLong(4), rs.getLong(5)));
+            }
+        }
+        return buckets;
+    }
+
+    // Category x month totals of one account for one year, by category name; index 0 of each
+    // array is January. Expenses without a category are reported under "".
+    public static Map<String, long[]> categoryMonthTotals(PooledConnection conn, int accountId, int year) throws SQLException {
+        NameDictionary categories = conn.database().categories();
+        Map<String, long[]> totals = new TreeMap<>();
+        PreparedStatement stmt = conn.prepare(
+                "SELECT category_id, month, total FROM expense_totals WHERE account_id = ? AND month BETWEEN ? AND ?");
+        stmt.setInt(1, accountId);
+        stmt.setString(2, month(year, 1));
+        stmt.setString(3, month(year, 12));
+        try (ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                String name = categories.nameOf(conn, rs.getInt(1));
+                long[] months = totals.computeIfAbsent(name == null ? "" : name, category -> new long[12]);
+                months[monthIndex(rs.getString(2))] += rs.getLong(3);
+            }
+        }
+        return totals;
+    }
+
+    // Spend of one account in the 'days' days ending with (and including) asOf
+    public static long rollingSpend(PooledConnection conn, int accountId, LocalDate asOf, int days) throws SQLException {
+        PreparedStatement stmt = conn.prepare(
+                "SELECT IFNULL(SUM(total), 0) FROM expense_daily_totals WHERE account_id = ? AND epoch_day BETWEEN ? AND ?");
+        stmt.setInt(1, accountId);
+        stmt.setLong(2, asOf.toEpochDay() - days + 1);
+        stmt.setLong(3, asOf.toEpochDay());
+        try (ResultSet rs = stmt.executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    // Rolling 'window'-day spend for every day from 'from' to 'to'; index 0 is 'from'.
+    // One pass over the day buckets, sliding the window instead of re-summing it per day.
+    public static long[] rollingSeries(PooledConnection conn, int accountId, LocalDate from, LocalDate to, int window) throws SQLException {
+        long first = from.toEpochDay() - window + 1;
+        long last = to.toEpochDay();
+        long[] daily = new long[(int) Math.max(0, last - first + 1)];
+        PreparedStatement stmt = conn.prepare(
+                "SELECT epoch_day, total FROM expense_daily_totals WHERE account_id = ? AND epoch_day BETWEEN ? AND ?");
+        stmt.setInt(1, accountId);
+        stmt.setLong(2, first);
+        stmt.setLong(3, last);
+        try (ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                daily[(int) (rs.getLong(1) - first)] = rs.getLong(2);
+            }
+        }
+        long[] series = new long[Math.max(0, daily.length - window + 1)];
+        long running = 0;
+        for (int i = 0; i < daily.length; i++) {
+            running = Math.addExact(running, daily[i]);
+            if (i >= window) {
+                running -= daily[i - window];
+            }
+            if (i >= window - 1) {
+                series[i - window + 1] = running;
+            }
+        }
+        return series;
+    }
+
+    // Monthly totals of one account for 'year' and the year before
+    public static YearOverYear yearOverYear(PooledConnection conn, int accountId, int year) throws SQLException {
+        long[] thisYear = new long[12];
+        long[] lastYear = new long[12];
+        PreparedStatement stmt = conn.prepare(
+                "SELECT month, SUM(total) FROM expense_totals WHERE account_id = ? AND month BETWEEN ? AND ? GROUP BY month");
+        stmt.setInt(1, accountId);
+        stmt.setString(2, month(year - 1, 1));
+        stmt.setString(3, month(year, 12));
+        try (ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                String month = rs.getString(1);
+                long[] target = month.startsWith(Integer.toString(year)) ? thisYear : lastYear;
+                target[monthIndex(month)] = rs.getLong(2);
+            }
+        }
+        return new YearOverYear(year, thisYear, lastYear);
+    }
+
+    private static String month(int year, int month) {
+        return String.format("%04d-%02d", year, month);
+    }
+
+    // 0-11 from "YYYY-MM"
+    private static int monthIndex(String month) {
+        return Integer.parseInt(month.substring(5, 7)) - 1;
+    }
+
+    // Command line: java ExpenseReports <account id> [year]
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: java expensetracker.ExpenseReports <account id> [year]");
+            System.exit(2);
+        }
+        int accountId = Integer.parseInt(args[0]);
+        int year = args.length > 1 ? Integer.parseInt(args[1]) : LocalDate.now().getYear();
+        try (Database db = Database.open(ExpenseTracker.DB_URL)) {
+            try (PooledConnection conn = db.writer()) {
+                SchemaMigrations.migrate(conn.connection());
+            }
+            try (PooledConnection conn = db.reader()) {
+                System.out.println("Last 30 days: " + Money.format(rollingSpend(conn, accountId, LocalDate.now(), 30)));
+                YearOverYear yoy = yearOverYear(conn, accountId, year);
+                for (int m = 0; m < 12; m++) {
+                    System.out.printf("%s  %14s  %14s%n", month(year, m + 1), Money.format(yoy.thisYear(m)), Money.format(yoy.lastYear(m)));
+                }
+                System.out.printf("Total    %14s  %14s%n", Money.format(yoy.thisYearTotal()), Money.format(yoy.lastYearTotal()));
+                for (Map.Entry<String, long[]> category : categoryMonthTotals(conn, accountId, year).entrySet()) {
+                    System.out.printf("%-15s %14s%n", category.getKey().isEmpty() ? "(none)" : category.getKey(),
+                            Money.format(Money.sum(category.getValue(), 0, 12)));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package expensetracker;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+// Token and prefix search over expense descriptions, backed by an FTS5 index.
+// expenses_fts is an external-content table over 'expenses' (no second copy of the text),
+// kept in step by triggers. Each word typed is matched as a prefix ("ub rid" finds
+// "Uber ride"); account, category and date-range filters narrow the hits, and results
+// are paged by id so deep pages cost the same as the first. Archive partitions have an index
+// of their own, searched alongside the main one when the date range reaches them (in batches
+// merged by id when it reaches more than can be attached at once).
+public class ExpenseSearch {
+    // prefix='2 3' keeps extra indexes for short prefixes, the common case while typing
+    static final String FTS_COLUMNS =
+            "description, content='expenses', content_rowid='id', tokenize='unicode61 remove_diacritics 2', prefix='2 3'";
+
+    // What to look for; any part may be null (or blank) to leave it out
+    public static final class Filter {
+        final String text;
+        final Integer accountId;
+        final String category;
+        final String fromDate;
+        final String toDate;
+
+        public Filter(String text, Integer accountId, String category, String fromDate, String toDate) {
+            this.text = text;
+            this.accountId = accountId;
+            this.category = blankToNull(category);
+            this.fromDate = blankToNull(fromDate);
+            this.toDate = blankToNull(toDate);
+        }
+
+        private static String blankToNull(String value) {
+            return value == null || value.trim().isEmpty() ? null : value.trim();
+        }
+
+        // True when the filter narrows nothing beyond the account
+        public boolean isEmpty() {
+            return matchQuery(text) == null && category == null && fromDate == null && toDate == null;
+        }
+    }
+
+    // Create the index and its triggers, indexing existing rows if it is new
+    public static void install(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            boolean created;
+            try (ResultSet rs = stmt.executeQuery("SELECT 1 FROM sqlite_master WHERE name = 'expenses_fts'")) {
+                created = !rs.next();
+            }
+            stmt.executeUpdate("CREATE VIRTUAL TABLE IF NOT EXISTS expenses_fts USING fts5(" + FTS_COLUMNS + ")");
+            stmt.executeUpdate(
+                "CREATE TRIGGER IF NOT EXISTS expenses_fts_insert AFTER INSERT ON expenses BEGIN " +
+                "INSERT INTO expenses_fts (rowid, description) VALUES (NEW.id, NEW.description); END;"
+            );
+            SchemaMigrations.createTriggerControl(stmt);
+            stmt.executeUpdate(
+                "CREATE TRIGGER IF NOT EXISTS expenses_fts_delete AFTER DELETE ON expenses " + SchemaMigrations.UNLESS_BYPASSED + " BEGIN " +
+                "INSERT INTO expenses_fts (expenses_fts, rowid, description) VALUES ('delete', OLD.id, OLD.description); END;"
+            );
+            stmt.executeUpdate(
+                "CREATE TRIGGER IF NOT EXISTS expenses_fts_update AFTER UPDATE OF description ON expenses BEGIN " +
+                "INSERT INTO expenses_fts (expenses_fts, rowid, description) VALUES ('delete', OLD.id, OLD.description); " +
+                "INSERT INTO expenses_fts (rowid, description) VALUES (NEW.id, NEW.description); END;"
+            );
+            if (created) {
+                stmt.executeUpdate("INSERT INTO expenses_fts (expenses_fts) VALUES ('rebuild')");
+            }
+        }
+    }
+
+    // Unindex rows about to be deleted in one statement, as the delete trigger would one by one;
+    // 'rows' is a table with the columns of 'expenses' (external content needs the old text).
+    // Automatic merging is paused meanwhile: the delete markers land as a few new segments that
+    // later writes merge a little at a time, rather than this statement re-merging as it goes.
+    static void removeFromIndex(Connection conn, String rows) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            int automerge = 4; // FTS5's default
+            try (ResultSet rs = stmt.executeQuery("SELECT v FROM expenses_fts_config WHERE k = 'automerge'")) {
+                if (rs.next()) {
+                    automerge = rs.getInt(1);
+                }
+            }
+            stmt.executeUpdate("INSERT INTO expenses_fts (expenses_fts, rank) VALUES ('automerge', 0)");
+            stmt.executeUpdate("INSERT INTO expenses_fts (expenses_fts, rowid, description) SELECT 'delete', id, description FROM " + rows);
+            stmt.executeUpdate("INSERT INTO expenses_fts (expenses_fts, rank) VALUES ('automerge', " + automerge + ")");
+        }
+    }
+
+    // Turn what the user typed into an FTS5 query: every word becomes a quoted prefix term,
+    // all of which must match. Null when nothing searchable was typed.
+    static String matchQuery(String text) {
+        if (text == null) {
+            return null;
+        }
+        StringBuilder query = new StringBuilder();
+        int i = 0;
+        while (i < text.length()) {
+            while (i < text.length() && !Character.isLetterOrDigit(text.charAt(i))) {
+                i++;
+            }
+            int start = i;
+            while (i < text.length() && Character.isLetterOrDigit(text.charAt(i))) {
+                i++;
+            }
+            if (i > start) {
+                if (query.length() > 0) {
+                    query.append(' ');
+                }
+                query.append('"').append(text, start, i).append("\"*");
+            }
+        }
+        return query.length() == 0 ? null : query.toString();
+    }
+
+    // Number of matching expenses
+    public static int count(PooledConnection conn, Filter filter) throws SQLException {
+        int[] count = {0};
+        conn.database().archive().forEachBatch(conn, epochDay(filter.fromDate), epochDay(filter.toDate), schemas -> {
+            List<Object> params = new ArrayList<>();
+            String sql = "SELECT COUNT(*) " + from(conn, filter, schemas, params);
+            try (ResultSet rs = bind(conn.prepare(sql), params).executeQuery()) {
+                count[0] += rs.next() ? rs.getInt(1) : 0;
+            }
+        });
+        return count[0];
+    }
+
+    // Up to 'limit' matches with an id above afterId, in id order
+    public static List<Expense> search(PooledConnection conn, Filter filter, long afterId, int limit) throws SQLException {
+        NameDictionary categories = conn.database().categories();
+        return select(conn, filter, "e.id, e.account_id, e.date, e.description, e.amount, e.category_id", afterId, 0, limit,
+                rs -> new Expense(rs.getLong(1), rs.getInt(2), rs.getString(3), rs.getString(4), rs.getLong(5), categories.nameOf(conn, rs.getInt(6))));
+    }
+
+    // Id of the match 'skip' places past afterId (1 = the next one), or -1 if there are fewer
+    public static long idAfter(PooledConnection conn, Filter filter, long afterId, int skip) throws SQLException {
+        List<Long> ids = select(conn, filter, "e.id", afterId, skip - 1, 1, rs -> rs.getLong(1));
+        return ids.isEmpty() ? -1 : ids.get(0);
+    }
+
+    // Matches with an id above afterId in id order, 'limit' of them after the first 'offset';
+    // 'columns' starts with e.id
+    private static <T> List<T> select(PooledConnection conn, Filter filter, String columns, long afterId, int offset, int limit,
+                                      ExpenseArchive.RowReader<T> row) throws SQLException {
+        return conn.database().archive().select(conn, epochDay(filter.fromDate), epochDay(filter.toDate), 1, (schemas, skip, rows) -> {
+            List<Object> params = new ArrayList<>();
+            String sql = "SELECT " + columns + " " + from(conn, filter, schemas, params) + " AND e.id > ? ORDER BY e.id LIMIT ? OFFSET ?";
+            params.add(afterId);
+            params.add(rows);
+            params.add(skip);
+            return bind(conn.prepare(sql), params);
+        }, offset, limit, row);
+    }
+
+    private static Long epochDay(String date) {
+        return date == null ? null : LocalDate.parse(date).toEpochDay();
+    }
+
+    // FROM/WHERE for a filter over 'schemas', the main file and partitions its date range
+    // reaches (or one batch of them). FTS5 drives the query when there is text, otherwise the
+    // account index; with partitions, each schema is one branch of a UNION ALL and SQLite pushes
+    // the conditions into all of them (the id condition included, so FTS5 still seeks to the
+    // keyset boundary itself).
+    private static String from(PooledConnection conn, Filter filter, List<String> schemas, List<Object> params) throws SQLException {
+        StringBuilder sql = new StringBuilder("FROM ");
+        String match = matchQuery(filter.text);
+        Long fromDay = epochDay(filter.fromDate);
+        Long toDay = epochDay(filter.toDate);
+        if (match != null) {
+            sql.append('(');
+            for (String schema : schemas) {
+                if (sql.length() > "FROM (".length()) {
+                    sql.append(" UNION ALL ");
+                }
+                sql.append("SELECT f.rowid AS id, e.account_id, e.date, e.description, e.amount, e.category_id, e.epoch_day FROM ")
+                        .append(schema).append(".expenses_fts f JOIN ").append(schema).append(".expenses e ON e.id = f.rowid ")
+                        .append("WHERE f.expenses_fts MATCH ?");
+                params.add(match);
+            }
+            sql.append(") e");
+        } else {
+            sql.append(ExpenseArchive.expenses(schemas)).append(" e");
+        }
+        sql.append(" WHERE 1 = 1");
+        if (filter.accountId != null) {
+            sql.append(" AND e.account_id = ?");
+            params.add(filter.accountId);
+        }
+        if (filter.category != null) {
+            sql.append(" AND e.category_id = ?");
+            params.add(conn.database().categories().idOf(conn, filter.category)); // -1, matching nothing, if unknown
+        }
+        if (fromDay != null) {
+            sql.append(" AND e.epoch_day >= ?");
+            params.add(fromDay);
+        }
+        if (toDay != null) {
+            sql.append(" AND e.epoch_day <= ?");
+            params.add(toDay);
+        }
+        return sql.toString();
+    }
+
+    private static PreparedStatement bind(PreparedStatement stmt, List<Object> params) throws SQLException {
+        for (int i = 0; i < params.size(); i++) {
+            stmt.setObject(i + 1, params.get(i));
+        }
+        return stmt;
+    }
+
+    // Command line: java ExpenseSearch <words> [account id]
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: java expensetracker.ExpenseSearch <words> [account id]");
+            System.exit(2);
+        }
+        Filter filter = new Filter(args[0], args.length > 1 ? Integer.valueOf(args[1]) : null, null, null, null);
+        try (Database db = Database.open(ExpenseTracker.DB_URL)) {
+            try (PooledConnection conn = db.writer()) {
+                SchemaMigrations.migrate(conn.connection());
+            }
+            try (PooledConnection conn = db.reader()) {
+                long start = System.nanoTime();
+                int total = count(conn, filter);
+                List<Expense> first = search(conn, filter, 0, 20);
+                long micros = (System.nanoTime() - start) / 1_000;
+                for (Expense expense : first) {
+                    System.out.println(expense);
+                }
+                System.out.println(total + " match(es), first page in " + micros + " us.");
+            }
+        }
+    }
+}
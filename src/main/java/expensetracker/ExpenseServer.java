@@ -0,0 +1,346 @@
+package expensetracker;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Headless HTTP/JSON API over ExpenseTracker, on the JDK's built-in HttpServer.
+// Each request runs on its own virtual thread when the JVM has them (Java 21+), otherwise on a
+// pool sized for blocking JDBC calls. Reads use the reader pool; every insert goes through
+// ExpenseTracker's write-behind BatchingExpenseWriter, and transfers through the TransferEngine. Amounts are decimal
+// strings ("12.50") in the ledger currency; JSON numbers are accepted on input.
+//
+//   POST /expenses                      {"accountId":1,"date":"2024-12-14","description":"Lunch","amount":"20.50","category":"Food"}
+//   POST /expenses/bulk                 [{...}, {...}]
+//   GET  /accounts/{id}/expenses        ?afterId=0&limit=100
+//   GET  /accounts/{id}/report          ?year=2024
+//   GET  /reports/totals
+//   POST /transfers                     {"from":1,"to":2,"amount":"100.00"}
+public class ExpenseServer implements AutoCloseable {
+    private static final Logger logger = Logger.getLogger(ExpenseServer.class.getName());
+    private static final int MAX_PAGE = 1_000;
+    private static final int MAX_BULK_ROWS = 100_000;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    public ExpenseServer(int port) throws IOException {
+        this.executor = requestExecutor();
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 1_024);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+    }
+
+    public void start() {
+        server.start();
+        logger.info("Expense API listening on http://127.0.0.1:" + getPort());
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    // A virtual thread per request when available, else a fixed pool of platform threads
+    static ExecutorService requestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            int threads = Integer.getInteger("expensetracker.http.threads", 4 * Runtime.getRuntime().availableProcessors());
+            AtomicInteger counter = new AtomicInteger();
+            logger.info("Virtual threads not available, serving requests on " + threads + " threads");
+            return Executors.newFixedThreadPool(threads, r -> {
+                Thread t = new Thread(r, "expense-http-" + counter.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String method = exchange.getRequestMethod();
+            String[] path = exchange.getRequestURI().getPath().replaceAll("^/+|/+$", "").split("/");
+            Map<String, String> query = queryParameters(exchange.getRequestURI());
+            if (path.length == 1 && path[0].equals("expenses")) {
+                requireMethod(method, "POST");
+                send(exchange, 201, addExpense(readBody(exchange)));
+            } else if (path.length == 2 && path[0].equals("expenses") && path[1].equals("bulk")) {
+                requireMethod(method, "POST");
+                send(exchange, 201, addExpenses(readBody(exchange)));
+            } else if (path.length == 3 && path[0].equals("accounts") && path[2].equals("expenses")) {
+                requireMethod(method, "GET");
+                send(exchange, 200, fetchPage(parseInt(path[1], "account id"), query));
+            } else if (path.length == 3 && path[0].equals("accounts") && path[2].equals("report")) {
+                requireMethod(method, "GET");
+                send(exchange, 200, accountReport(parseInt(path[1], "account id"), query));
+            } else if (path.length == 2 && path[0].equals("reports") && path[1].equals("totals")) {
+                requireMethod(method, "GET");
+                send(exchange, 200, totals());
+            } else if (path.length == 1 && path[0].equals("transfers")) {
+                requireMethod(method, "POST");
+                send(exchange, 200, transfer(readBody(exchange)));
+            } else {
+                sendError(exchange, 404, "No such resource");
+            }
+        } catch (MethodNotAllowedException e) {
+            sendError(exchange, 405, e.getMessage());
+        } catch (IllegalArgumentException | DateTimeException e) {
+            sendError(exchange, 400, e.getMessage());
+        } catch (SQLException | CompletionException e) {
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            logger.log(Level.WARNING, "Request " + exchange.getRequestURI() + " failed", cause);
+            sendError(exchange, 500, String.valueOf(cause.getMessage()));
+        } catch (RuntimeException e) {
+            logger.log(Level.SEVERE, "Request " + exchange.getRequestURI() + " failed", e);
+            sendError(exchange, 500, "Internal error");
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private String addExpense(String body) throws SQLException {
+        Expense expense = toExpense(Json.asObject(Json.parse(body)));
+        requireAccounts(List.of(expense));
+        long id = ExpenseTracker.writer().submit(expense).join();
+        return "{\"id\":" + id + "}";
+    }
+
+    private String addExpenses(String body) throws SQLException {
+        List<Object> items = Json.asArray(Json.parse(body));
+        if (items.size() > MAX_BULK_ROWS) {
+            throw new IllegalArgumentException("At most " + MAX_BULK_ROWS + " expenses per request");
+        }
+        List<Expense> expenses = new ArrayList<>(items.size());
+        for (Object item : items) {
+            expenses.add(toExpense(Json.asObject(item)));
+        }
+        requireAccounts(expenses);
+        long firstId = ExpenseTracker.writer().submitAll(expenses).join();
+        return "{\"inserted\":" + expenses.size() + ",\"firstId\":" + firstId + "}";
+    }
+
+    private static Expense toExpense(Map<String, Object> json) {
+        String date = Json.getString(json, "date", true);
+        LocalDate.parse(date); // Reject bad dates up front (400), not in the writer
+        String description = Json.getString(json, "description", true);
+        if (description.trim().isEmpty()) {
+            throw new IllegalArgumentException("'description' must not be empty");
+        }
+        return new Expense(Json.getInt(json, "accountId"), date, description, Json.getAmount(json, "amount"),
+                Json.getString(json, "category", false));
+    }
+
+    // An unknown account is the client's mistake (400), not a foreign key failure deep in the writer (500)
+    private static void requireAccounts(List<Expense> expenses) throws SQLException {
+        try (PooledConnection conn = ExpenseTracker.database().reader()) {
+            NameDictionary accounts = conn.database().accounts();
+            for (Expense expense : expenses) {
+                if (accounts.nameOf(conn, expense.getAccountId()) == null) {
+                    throw new IllegalArgumentException("No account with id " + expense.getAccountId());
+                }
+            }
+        }
+    }
+
+    private static String fetchPage(int accountId, Map<String, String> query) throws SQLException {
+        long afterId = query.containsKey("afterId") ? parseLong(query.get("afterId"), "afterId") : 0;
+        int limit = query.containsKey("limit") ? parseInt(query.get("limit"), "limit") : 100;
+        if (limit < 1 || limit > MAX_PAGE) {
+            throw new IllegalArgumentException("limit must be between 1 and " + MAX_PAGE);
+        }
+        StringBuilder out = new StringBuilder(128 + limit * 96).append("{\"expenses\":[");
+        long lastId = afterId;
+        int rows = 0;
+        try (PooledConnection conn = ExpenseTracker.database().reader()) {
+            NameDictionary categories = conn.database().categories();
+            List<Expense> expenses = conn.database().archive().accountExpenses(conn, "e.date, e.description, e.amount, e.category_id", accountId, afterId, 0, limit,
+                    rs -> new Expense(rs.getLong(1), accountId, rs.getString(2), rs.getString(3), rs.getLong(4), categories.nameOf(conn, rs.getInt(5))));
+            for (Expense expense : expenses) {
+                if (rows++ > 0) {
+                    out.append(',');
+                }
+                lastId = expense.getId();
+                out.append("{\"id\":").append(lastId).append(",\"date\":");
+                Json.quote(out, expense.getDate()).append(",\"description\":");
+                Json.quote(out, expense.getDescription()).append(",\"amount\":\"");
+                Money.appendMinor(out, expense.getAmount(), Money.LEDGER_SCALE).append("\",\"category\":");
+                Json.quote(out, expense.getCategory()).append('}');
+            }
+        }
+        out.append("],\"nextAfterId\":");
+        if (rows == limit) {
+            out.append(lastId);
+        } else {
+            out.append("null");
+        }
+        return out.append('}').toString();
+    }
+
+    private static String accountReport(int accountId, Map<String, String> query) throws SQLException {
+        int year = query.containsKey("year") ? parseInt(query.get("year"), "year") : LocalDate.now().getYear();
+        StringBuilder out = new StringBuilder(1_024);
+        try (PooledConnection conn = ExpenseTracker.database().reader()) {
+            out.append("{\"accountId\":").append(accountId)
+                    .append(",\"total\":\"").append(Money.format(ExpenseSummary.accountTotal(conn, accountId)))
+                    .append("\",\"last30Days\":\"").append(Money.format(ExpenseReports.rollingSpend(conn, accountId, LocalDate.now(), 30)))
+                    .append("\",\"year\":").append(year).append(",\"byCategory\":{");
+            int i = 0;
+            for (Map.Entry<String, long[]> category : ExpenseReports.categoryMonthTotals(conn, accountId, year).entrySet()) {
+                if (i++ > 0) {
+                    out.append(',');
+                }
+                Json.quote(out, category.getKey()).append(':');
+                appendMonths(out, category.getValue());
+            }
+            ExpenseReports.YearOverYear yoy = ExpenseReports.yearOverYear(conn, accountId, year);
+            long[] thisYear = new long[12];
+            long[] lastYear = new long[12];
+            for (int m = 0; m < 12; m++) {
+                thisYear[m] = yoy.thisYear(m);
+                lastYear[m] = yoy.lastYear(m);
+            }
+            out.append("},\"thisYear\":");
+            appendMonths(out, thisYear);
+            out.append(",\"lastYear\":");
+            appendMonths(out, lastYear);
+        }
+        return out.append('}').toString();
+    }
+
+    private static void appendMonths(StringBuilder out, long[] months) {
+        out.append('[');
+        for (int m = 0; m < months.length; m++) {
+            if (m > 0) {
+                out.append(',');
+            }
+            out.append('"');
+            Money.appendMinor(out, months[m], Money.LEDGER_SCALE).append('"');
+        }
+        out.append(']');
+    }
+
+    private static String totals() throws SQLException {
+        StringBuilder out = new StringBuilder(256).append("{\"totals\":[");
+        try (PooledConnection conn = ExpenseTracker.database().reader()) {
+            int i = 0;
+            for (Map.Entry<Integer, Long> total : ExpenseSummary.totalsByAccount(conn).entrySet()) {
+                if (i++ > 0) {
+                    out.append(',');
+                }
+                out.append("{\"accountId\":").append(total.getKey()).append(",\"total\":\"");
+                Money.appendMinor(out, total.getValue(), Money.LEDGER_SCALE).append("\"}");
+            }
+        }
+        return out.append("]}").toString();
+    }
+
+    private static String transfer(String body) throws SQLException {
+        Map<String, Object> json = Json.asObject(Json.parse(body));
+        long amount = Json.getAmount(json, "amount");
+        if (amount <= 0) {
+            throw new IllegalArgumentException("'amount' must be positive");
+        }
+        boolean done = ExpenseTracker.transferEngine().transfer(Json.getInt(json, "from"), Json.getInt(json, "to"), amount);
+        return "{\"transferred\":" + done + "}";
+    }
+
+    private static final class MethodNotAllowedException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        MethodNotAllowedException(String message) {
+            super(message);
+        }
+    }
+
+    private static void requireMethod(String method, String expected) throws MethodNotAllowedException {
+        if (!expected.equals(method)) {
+            throw new MethodNotAllowedException("Use " + expected);
+        }
+    }
+
+    private static String readBody(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static Map<String, String> queryParameters(URI uri) {
+        Map<String, String> parameters = new HashMap<>();
+        String query = uri.getQuery();
+        if (query != null) {
+            for (String pair : query.split("&")) {
+                int eq = pair.indexOf('=');
+                if (eq > 0) {
+                    parameters.put(pair.substring(0, eq), pair.substring(eq + 1));
+                }
+            }
+        }
+        return parameters;
+    }
+
+    private static int parseInt(String value, String name) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + " must be a whole number");
+        }
+    }
+
+    private static long parseLong(String value, String name) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + " must be a whole number");
+        }
+    }
+
+    private static void send(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        send(exchange, status, Json.quote(new StringBuilder("{\"error\":"), message).append('}').toString());
+    }
+
+    // Stop accepting requests and release the threads; queued inserts are ExpenseTracker.closeDB()'s
+    @Override
+    public void close() {
+        server.stop(1);
+        executor.shutdown();
+    }
+
+    // Command line: java ExpenseServer [port]   (default 8080, or -Dexpensetracker.http.port)
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : Integer.getInteger("expensetracker.http.port", 8080);
+        ExpenseTracker.initDB();
+        ExpenseServer server = new ExpenseServer(port);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.close();
+            ExpenseTracker.closeDB();
+        }));
+        server.start();
+    }
+}
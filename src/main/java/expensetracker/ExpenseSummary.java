@@ -0,0 +1,297 @@
+package expensetracker;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.logging.Logger;
+
+// Pre-aggregated totals per (account, category, month), kept current by triggers on 'expenses'.
+// Every insert, update and delete adjusts its bucket inside the same transaction, so reads of
+// totals never rescan the expenses table. Buckets are keyed on the category id; expenses
+// without a category are stored under 0. Archived expenses stay counted (see ExpenseArchive).
+public class ExpenseSummary {
+    private static final Logger logger = Logger.getLogger(ExpenseSummary.class.getName());
+
+    // Bucket key of the category column of 'expenses', and what stands for no category. Before
+    // schema version 12 the name itself was stored (and '' for none); steps 6 and 9 of
+    // SchemaMigrations still install that form on old databases.
+    private static final class Key {
+        final String column;
+        final String type;
+        final String none;
+
+        Key(String column, String type, String none) {
+            this.column = column;
+            this.type = type;
+            this.none = none;
+        }
+    }
+
+    private static final Key CATEGORY_ID = new Key("category_id", "INTEGER", "0");
+    private static final Key CATEGORY_NAME = new Key("category", "TEXT", "''");
+
+    // A bucket of expense_totals, ordered as its primary key
+    private static final class Bucket implements Comparable<Bucket> {
+        final int accountId;
+        final long categoryId;
+        final String month;
+
+        Bucket(int accountId, long categoryId, String month) {
+            this.accountId = accountId;
+            this.categoryId = categoryId;
+            this.month = month;
+        }
+
+        @Override
+        public int compareTo(Bucket other) {
+            int order = Integer.compare(accountId, other.accountId);
+            if (order == 0) {
+                order = Long.compare(categoryId, other.categoryId);
+            }
+            return order != 0 ? order : month.compareTo(other.month);
+        }
+    }
+
+    // Writes the buckets afresh, within the transaction rebuild() runs it in
+    private interface Refill {
+        void run(Connection conn) throws SQLException;
+    }
+
+    private static String addNew(Key key) {
+        return "INSERT INTO expense_totals (account_id, " + key.column + ", month, total, row_count) " +
+                "VALUES (NEW.account_id, IFNULL(NEW." + key.column + ", " + key.none + "), substr(NEW.date, 1, 7), NEW.amount, 1) " +
+                "ON CONFLICT (account_id, " + key.column + ", month) DO UPDATE SET " +
+                "total = total + excluded.total, row_count = row_count + 1;";
+    }
+
+    private static String removeOld(Key key) {
+        String bucket = "account_id = OLD.account_id AND " + key.column + " = IFNULL(OLD." + key.column + ", " + key.none + ") " +
+                "AND month = substr(OLD.date, 1, 7)";
+        return "UPDATE expense_totals SET total = total - OLD.amount, row_count = row_count - 1 WHERE " + bucket + "; " +
+                "DELETE FROM expense_totals WHERE row_count <= 0 AND " + bucket + ";";
+    }
+
+    // Buckets of the rows of 'source', a table or a parenthesized query with the columns of 'expenses'
+    private static String aggregateExpenses(Key key, String source) {
+        return "SELECT account_id, IFNULL(" + key.column + ", " + key.none + ") AS " + key.column + ", substr(date, 1, 7) AS month, " +
+                "SUM(amount) AS total, COUNT(*) AS row_count FROM " + source + " WHERE 1 GROUP BY 1, 2, 3";
+    }
+
+    // Create the summary table and its triggers, filling it if it is new
+    public static void install(Connection conn) throws SQLException {
+        boolean created;
+        Key key;
+        try (Statement stmt = conn.createStatement()) {
+            key = SchemaMigrations.hasColumn(stmt, "expenses", "category_id") ? CATEGORY_ID : CATEGORY_NAME;
+            try (ResultSet rs = stmt.executeQuery("SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = 'expense_totals'")) {
+                created = !rs.next();
+            }
+            stmt.executeUpdate(
+                "CREATE TABLE IF NOT EXISTS expense_totals (" +
+                "account_id INTEGER NOT NULL, " +
+                key.column + " " + key.type + " NOT NULL, " +
+                "month TEXT NOT NULL, " +
+                "total INTEGER NOT NULL, " +
+                "row_count INTEGER NOT NULL, " +
+                "PRIMARY KEY (account_id, " + key.column + ", month)) WITHOUT ROWID;"
+            );
+            stmt.executeUpdate("CREATE TRIGGER IF NOT EXISTS expense_totals_insert AFTER INSERT ON expenses BEGIN " + addNew(key) + " END;");
+            SchemaMigrations.createTriggerControl(stmt);
+            stmt.executeUpdate("CREATE TRIGGER IF NOT EXISTS expense_totals_delete AFTER DELETE ON expenses " + SchemaMigrations.UNLESS_BYPASSED
+                    + " BEGIN " + removeOld(key) + " END;");
+            stmt.executeUpdate("CREATE TRIGGER IF NOT EXISTS expense_totals_update AFTER UPDATE OF account_id, date, amount, " + key.column
+                    + " ON expenses BEGIN " + removeOld(key) + " " + addNew(key) + " END;");
+        }
+        if (created) {
+            rebuild(conn, c -> refill(c, key, "expenses")); // Nothing is archived before the registry exists
+        }
+    }
+
+    // Recompute every bucket from the expenses, archived ones included
+    public static void rebuild(PooledConnection conn) throws SQLException {
+        Map<Bucket, long[]> fresh = freshTotals(conn); // Attaching partitions can't be done in the transaction
+        rebuild(conn.connection(), c -> refill(c, fresh));
+    }
+
+    // Every bucket computed from the expenses, archived ones included: total and row count. Each
+    // batch of archived years is aggregated by SQLite, and the batches are added up here.
+    private static Map<Bucket, long[]> freshTotals(PooledConnection conn) throws SQLException {
+        Map<Bucket, long[]> fresh = new TreeMap<>();
+        conn.database().archive().forEachBatch(conn, null, null, schemas -> {
+            try (Statement stmt = conn.connection().createStatement();
+                 ResultSet rs = stmt.executeQuery(aggregateExpenses(CATEGORY_ID, ExpenseArchive.expenses(schemas)))) {
+                while (rs.next()) {
+                    long[] bucket = fresh.computeIfAbsent(new Bucket(rs.getInt(1), rs.getLong(2), rs.getString(3)), b -> new long[2]);
+                    bucket[0] += rs.getLong(4);
+                    bucket[1] += rs.getLong(5);
+                }
+            }
+        });
+        return fresh;
+    }
+
+    // Count rows taken out of 'expenses' (firing the delete trigger) back into their buckets;
+    // 'rows' is a table with the columns of 'expenses'
+    static void addTotals(Connection conn, String rows) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("INSERT INTO expense_totals (account_id, category_id, month, total, row_count) " + aggregateExpenses(CATEGORY_ID, rows) +
+                    " ON CONFLICT (account_id, category_id, month) DO UPDATE SET " +
+                    "total = total + excluded.total, row_count = row_count + excluded.row_count");
+        }
+    }
+
+    // Take deleted rows out of their buckets at once, as the delete trigger would one by one,
+    // dropping buckets left empty. 'days' holds the rows already grouped by account, category and
+    // date: account_id, category_id, date, amount (their sum) and row_count.
+    static void removeTotals(Connection conn, String days) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("INSERT INTO expense_totals (account_id, category_id, month, total, row_count) " +
+                    "SELECT account_id, IFNULL(category_id, 0), substr(date, 1, 7), -SUM(amount), -SUM(row_count) FROM " + days + " WHERE 1 GROUP BY 1, 2, 3 " +
+                    "ON CONFLICT (account_id, category_id, month) DO UPDATE SET total = total + excluded.total, row_count = row_count + excluded.row_count");
+            stmt.executeUpdate("DELETE FROM expense_totals WHERE row_count <= 0 AND account_id IN (SELECT account_id FROM " + days + ")");
+        }
+    }
+
+    private static void rebuild(Connection conn, Refill refill) throws SQLException {
+        boolean autoCommit = conn.getAutoCommit();
+        if (!autoCommit) {
+            refill.run(conn); // Part of the caller's transaction
+            return;
+        }
+        conn.setAutoCommit(false);
+        try {
+            refill.run(conn);
+            conn.commit();
+            logger.info("Expense totals rebuilt.");
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+
+    private static void refill(Connection conn, Key key, String source) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("DELETE FROM expense_totals");
+            stmt.executeUpdate("INSERT INTO expense_totals (account_id, " + key.column + ", month, total, row_count) " + aggregateExpenses(key, source));
+        }
+    }
+
+    private static void refill(Connection conn, Map<Bucket, long[]> fresh) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             PreparedStatement insert = conn.prepareStatement("INSERT INTO expense_totals (account_id, category_id, month, total, row_count) VALUES (?, ?, ?, ?, ?)")) {
+            stmt.executeUpdate("DELETE FROM expense_totals");
+            for (Map.Entry<Bucket, long[]> bucket : fresh.entrySet()) {
+                insert.setInt(1, bucket.getKey().accountId);
+                insert.setLong(2, bucket.getKey().categoryId);
+                insert.setString(3, bucket.getKey().month);
+                insert.setLong(4, bucket.getValue()[0]);
+                insert.setLong(5, bucket.getValue()[1]);
+                insert.addBatch();
+            }
+            insert.executeBatch();
+        }
+    }
+
+    // Total of one account, in minor units
+    public static long accountTotal(PooledConnection conn, int accountId) throws SQLException {
+        PreparedStatement stmt = conn.prepare("SELECT IFNULL(SUM(total), 0) FROM expense_totals WHERE account_id = ?");
+        stmt.setInt(1, accountId);
+        try (ResultSet rs = stmt.executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    // Total per account id, in minor units
+    public static Map<Integer, Long> totalsByAccount(PooledConnection conn) throws SQLException {
+        Map<Integer, Long> totals = new LinkedHashMap<>();
+        try (ResultSet rs = conn.prepare("SELECT account_id, SUM(total) FROM expense_totals GROUP BY account_id ORDER BY account_id").executeQuery()) {
+            while (rs.next()) {
+                totals.put(rs.getInt(1), rs.getLong(2));
+            }
+        }
+        return totals;
+    }
+
+    // Total per category name of one account; expenses without a category are under ""
+    public static Map<String, Long> totalsByCategory(PooledConnection conn, int accountId) throws SQLException {
+        NameDictionary categories = conn.database().categories();
+        Map<String, Long> totals = new TreeMap<>();
+        for (Map.Entry<String, Long> total : totalsBy(conn, "category_id", accountId).entrySet()) {
+            String name = categories.nameOf(conn, Integer.parseInt(total.getKey()));
+            totals.merge(name == null ? "" : name, total.getValue(), Long::sum);
+        }
+        return totals;
+    }
+
+    // Total per month (YYYY-MM) of one account
+    public static Map<String, Long> totalsByMonth(PooledConnection conn, int accountId) throws SQLException {
+        return totalsBy(conn, "month", accountId);
+    }
+
+    private static Map<String, Long> totalsBy(PooledConnection conn, String column, int accountId) throws SQLException {
+        Map<String, Long> totals = new LinkedHashMap<>();
+        PreparedStatement stmt = conn.prepare(
+                "SELECT " + column + ", SUM(total) FROM expense_totals WHERE account_id = ? GROUP BY " + column + " ORDER BY " + column);
+        stmt.setInt(1, accountId);
+        try (ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                totals.put(rs.getString(1), rs.getLong(2));
+            }
+        }
+        return totals;
+    }
+
+    // Rebuild the aggregates from scratch and list every bucket that differs from the stored one
+    public static List<String> checkConsistency(PooledConnection conn) throws SQLException {
+        Map<Bucket, long[]> fresh = freshTotals(conn);
+        Map<Bucket, long[]> stored = new TreeMap<>();
+        try (Statement stmt = conn.connection().createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT account_id, category_id, month, total, row_count FROM expense_totals")) {
+            while (rs.next()) {
+                stored.put(new Bucket(rs.getInt(1), rs.getLong(2), rs.getString(3)), new long[]{rs.getLong(4), rs.getLong(5)});
+            }
+        }
+        Set<Bucket> keys = new TreeSet<>(fresh.keySet());
+        keys.addAll(stored.keySet());
+        List<String> mismatches = new ArrayList<>();
+        for (Bucket bucket : keys) {
+            long[] expected = fresh.get(bucket);
+            long[] actual = stored.get(bucket);
+            if (expected == null || actual == null || expected[0] != actual[0] || expected[1] != actual[1]) {
+                mismatches.add(String.format("account %d, category %d, month %s: expected %s (%s rows), stored %s (%s rows)",
+                        bucket.accountId, bucket.categoryId, bucket.month,
+                        expected == null ? null : expected[0], expected == null ? null : expected[1],
+                        actual == null ? null : actual[0], actual == null ? null : actual[1]));
+            }
+        }
+        return mismatches;
+    }
+
+    // Command line consistency check: java ExpenseSummary [--repair]
+    public static void main(String[] args) throws Exception {
+        try (Database db = Database.open(ExpenseTracker.DB_URL); PooledConnection conn = db.writer()) {
+            SchemaMigrations.migrate(conn.connection());
+            List<String> mismatches = checkConsistency(conn);
+            for (String mismatch : mismatches) {
+                System.out.println(mismatch);
+            }
+            System.out.println(mismatches.size() + " mismatching bucket(s).");
+            if (!mismatches.isEmpty() && args.length > 0 && "--repair".equals(args[0])) {
+                rebuild(conn);
+                System.out.println("Totals rebuilt.");
+            }
+            System.exit(mismatches.isEmpty() ? 0 : 1);
+        }
+    }
+}
@@ -0,0 +1,453 @@
+package expensetracker;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import javax.swing.SwingUtilities;
+import javax.swing.table.AbstractTableModel;
+
+// Paged, read-only view of one account's expenses, archived ones included, optionally narrowed
+// by a search. The row count comes from the account's totals (or a COUNT(*) of the matches);
+// rows are fetched a page at a time with keyset
+// pagination (id > last id of the previous page) when the table asks for them, and only
+// the most recently used pages are kept. Expenses accepted by the write-behind queue but not
+// committed yet are shown after the stored rows until they are. All state is touched on the
+// EDT; queries run on the supplied executor on reader connections.
+public class ExpenseTableModel extends AbstractTableModel {
+    private static final long serialVersionUID = 1L;
+    static final String[] COLUMNS = {"Date", "Description", "Amount", "Category"};
+    private static final long UNKNOWN = -1;
+    private static final Metrics.Timer COUNT_ROWS = Metrics.timer("gui.countRows");
+    private static final Metrics.Timer FETCH_PAGE = Metrics.timer("gui.fetchPage");
+
+    private final Database db;
+    private final Executor executor;
+    private final Consumer<Exception> errorHandler;
+    private final int pageSize;
+    private final Map<Integer, Page> pages;
+    private final Set<Integer> loading = new HashSet<>();
+    private final List<Expense> pending = new ArrayList<>(); // Queued, not yet in the database
+
+    private String accountName;
+    private String searchText;
+    private String categoryFilter;
+    private int accountId = -1;
+    private ExpenseSearch.Filter filter; // Null unless a search narrows the account's rows
+    private int rowCount;
+    private long[] lastIdOfPage = new long[0]; // Keyset boundary of every page seen so far
+    private int generation; // Bumped on every reload so late pages of an old account are dropped
+
+    public ExpenseTableModel(Database db, Executor executor, int pageSize, int maxPages, Consumer<Exception> errorHandler) {
+        this.db = db;
+        this.executor = executor;
+        this.pageSize = pageSize;
+        this.errorHandler = errorHandler;
+        this.pages = new LinkedHashMap<Integer, Page>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Page> eldest) {
+                return size() > maxPages;
+            }
+        };
+    }
+
+    // Switch to another account (or reload the current one)
+    public void setAccount(String accountName) {
+        this.accountName = accountName;
+        reload();
+    }
+
+    public String getAccount() {
+        return accountName;
+    }
+
+    // Only show rows whose description matches the words typed and/or of one category
+    public void setFilter(String searchText, String category) {
+        this.searchText = searchText;
+        this.categoryFilter = category;
+        reload();
+    }
+
+    // Drop every cached page and re-count the rows
+    public void reload() {
+        int gen = ++generation;
+        pages.clear();
+        loading.clear();
+        rowCount = 0;
+        lastIdOfPage = new long[0];
+        fireTableDataChanged();
+
+        String name = accountName;
+        String text = searchText;
+        String category = categoryFilter;
+        if (name == null) {
+            return;
+        }
+        executor.execute(() -> {
+            Metrics.Sample sample = COUNT_ROWS.start();
+            try (PooledConnection conn = db.reader()) {
+                int id = db.accounts().idOf(conn, name);
+                int count = 0;
+                ExpenseSearch.Filter search = null;
+                if (id != -1) {
+                    search = new ExpenseSearch.Filter(text, id, category, null, null);
+                    if (search.isEmpty()) {
+                        search = null;
+                    }
+                }
+                if (search != null) {
+                    count = ExpenseSearch.count(conn, search);
+                } else if (id != -1) {
+                    PreparedStatement stmt = conn.prepare("SELECT IFNULL(SUM(row_count), 0) FROM expense_totals WHERE account_id = ?");
+                    stmt.setInt(1, id);
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        count = rs.next() ? rs.getInt(1) : 0;
+                    }
+                }
+                sample.stop(count);
+                int resolvedId = id;
+                int resolvedCount = count;
+                ExpenseSearch.Filter resolvedFilter = search;
+                SwingUtilities.invokeLater(() -> {
+                    if (gen != generation) {
+                        return;
+                    }
+                    accountId = resolvedId;
+                    filter = resolvedFilter;
+                    rowCount = resolvedCount;
+                    pending.removeIf(expense -> expense.getAccountId() != resolvedId || resolvedFilter != null);
+                    lastIdOfPage = new long[(resolvedCount + pageSize - 1) / pageSize];
+                    Arrays.fill(lastIdOfPage, UNKNOWN);
+                    fireTableDataChanged();
+                });
+            } catch (SQLException e) {
+                sample.fail(e);
+                SwingUtilities.invokeLater(() -> errorHandler.accept(e));
+            }
+        });
+    }
+
+    // Show an expense that is queued for the database; ignored unless it belongs in the current, unfiltered view
+    public void addPending(Expense expense) {
+        if (expense.getAccountId() != accountId || filter != null) {
+            return;
+        }
+        pending.add(expense);
+        int row = rowCount + pending.size() - 1;
+        fireTableRowsInserted(row, row);
+    }
+
+    // Forget queued expenses once they are committed (or refused); a reload then shows the stored rows
+    public void removePending(Collection<Expense> expenses) {
+        if (pending.removeAll(expenses)) {
+            fireTableDataChanged();
+        }
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount + pending.size();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMNS.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMNS[column];
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        return String.class;
+    }
+
+    // Returns null for rows whose page is still being fetched
+    @Override
+    public Object getValueAt(int row, int column) {
+        if (row >= rowCount) {
+            Expense expense = pending.get(row - rowCount);
+            switch (column) {
+                case 0:
+                    return expense.getDate();
+                case 1:
+                    return expense.getDescription();
+                case 2:
+                    return Money.format(expense.getAmount());
+                default:
+                    return expense.getCategory();
+            }
+        }
+        int pageIndex = row / pageSize;
+        Page page = pages.get(pageIndex);
+        if (page == null) {
+            requestPage(pageIndex);
+            return null;
+        }
+        int offset = row - pageIndex * pageSize;
+        if (offset >= page.size) {
+            return null;
+        }
+        switch (column) {
+            case 0:
+                return page.dates[offset];
+            case 1:
+                return page.descriptions[offset];
+            case 2:
+                return Money.format(page.amounts[offset]);
+            default:
+                return page.categories[offset];
+        }
+    }
+
+    private void requestPage(int pageIndex) {
+        if (accountId == -1 || !loading.add(pageIndex)) {
+            return;
+        }
+        // Start from the closest page whose last id is known and skip forward from there
+        int known = pageIndex - 1;
+        while (known >= 0 && lastIdOfPage[known] == UNKNOWN) {
+            known--;
+        }
+        long afterId = known >= 0 ? lastIdOfPage[known] : 0;
+        int skip = (pageIndex - known - 1) * pageSize;
+        int gen = generation;
+        int id = accountId;
+        ExpenseSearch.Filter search = filter;
+
+        executor.execute(() -> {
+            try {
+                Page page = fetchPage(id, search, afterId, skip);
+                SwingUtilities.invokeLater(() -> {
+                    if (gen != generation) {
+                        return;
+                    }
+                    loading.remove(pageIndex);
+                    pages.put(pageIndex, page);
+                    if (page.size > 0 && pageIndex < lastIdOfPage.length) {
+                        lastIdOfPage[pageIndex] = page.ids[page.size - 1];
+                    }
+                    int first = pageIndex * pageSize;
+                    int last = Math.min(rowCount, first + pageSize) - 1;
+                    if (last >= first) {
+                        fireTableRowsUpdated(first, last);
+                    }
+                });
+            } catch (SQLException e) {
+                SwingUtilities.invokeLater(() -> {
+                    loading.remove(pageIndex);
+                    errorHandler.accept(e);
+                });
+            }
+        });
+    }
+
+    private Page fetchPage(int accountId, ExpenseSearch.Filter search, long afterId, int skip) throws SQLException {
+        Metrics.Sample sample = FETCH_PAGE.start();
+        try (PooledConnection conn = db.reader()) {
+            Page page = search != null ? fetchSearchPage(conn, search, afterId, skip) : fetchPage(conn, accountId, afterId, skip);
+            sample.stop(page.size);
+            return page;
+        } catch (SQLException e) {
+            sample.fail(e);
+            throw e;
+        }
+    }
+
+    private Page fetchSearchPage(PooledConnection conn, ExpenseSearch.Filter search, long afterId, int skip) throws SQLException {
+        long fromId = afterId;
+        if (skip > 0) {
+            fromId = ExpenseSearch.idAfter(conn, search, afterId, skip);
+            if (fromId == -1) {
+                return new Page(0);
+            }
+        }
+        List<Expense> expenses = ExpenseSearch.search(conn, search, fromId, pageSize);
+        Page page = new Page(pageSize);
+        for (Expense expense : expenses) {
+            int i = page.size++;
+            page.ids[i] = expense.getId();
+            page.dates[i] = expense.getDate();
+            page.descriptions[i] = expense.getDescription();
+            page.amounts[i] = expense.getAmount();
+            page.categories[i] = expense.getCategory();
+        }
+        return page;
+    }
+
+    private Page fetchPage(PooledConnection conn, int accountId, long afterId, int skip) throws SQLException {
+        long fromId = afterId;
+        if (skip > 0) {
+            // Jumped past pages never loaded: find the id just before the wanted page
+            fromId = idAfter(conn, accountId, afterId, skip);
+            if (fromId == -1) {
+                return new Page(0);
+            }
+        }
+        NameDictionary categories = db.categories();
+        List<Expense> expenses = conn.database().archive().accountExpenses(conn, "e.date, e.description, e.amount, e.category_id", accountId, fromId, 0, pageSize,
+                rs -> new Expense(rs.getLong(1), accountId, rs.getString(2), rs.getString(3), rs.getLong(4), categories.nameOf(conn, rs.getInt(5))));
+        Page page = new Page(pageSize);
+        for (Expense expense : expenses) {
+            int i = page.size++;
+            page.ids[i] = expense.getId();
+            page.dates[i] = expense.getDate();
+            page.descriptions[i] = expense.getDescription();
+            page.amounts[i] = expense.getAmount();
+            page.categories[i] = expense.getCategory();
+        }
+        return page;
+    }
+
+    // Id of the account's row 'skip' places past afterId (1 = the next one), -1 if there is none
+    private static long idAfter(PooledConnection conn, int accountId, long afterId, int skip) throws SQLException {
+        List<Long> ids = conn.database().archive().accountExpenses(conn, null, accountId, afterId, skip - 1, 1, rs -> rs.getLong(1));
+        return ids.isEmpty() ? -1 : ids.get(0);
+    }
+
+    // Stored rows picked in the table (queued ones can't be), as blocks of consecutive rows that
+    // each start at a known keyset boundary: enough to find their ids without the pages, and to
+    // take them out of the view once deleted
+    public final class Selection {
+        private final int gen = generation;
+        private final int selectedAccountId = accountId;
+        private final ExpenseSearch.Filter selectedFilter = filter;
+        private final List<Block> blocks = new ArrayList<>();
+        private int size;
+
+        public int getAccountId() {
+            return selectedAccountId;
+        }
+
+        // Number of stored rows selected
+        public int size() {
+            return size;
+        }
+    }
+
+    private static final class Block {
+        final int firstRow;
+        final int rows;
+        final long afterId; // The first row is 'skip' + 1 places past this id
+        final int skip;
+
+        Block(int firstRow, int rows, long afterId, int skip) {
+            this.firstRow = firstRow;
+            this.rows = rows;
+            this.afterId = afterId;
+            this.skip = skip;
+        }
+    }
+
+    // Selection of the given rows (ascending, as JTable.getSelectedRows() returns them)
+    public Selection select(int[] rows) {
+        Selection selection = new Selection();
+        if (accountId == -1) {
+            return selection;
+        }
+        for (int i = 0; i < rows.length && rows[i] < rowCount; ) {
+            int first = rows[i];
+            int count = 1;
+            while (i + count < rows.length && rows[i + count] == first + count && first + count < rowCount) {
+                count++;
+            }
+            i += count;
+            int pageIndex = first / pageSize;
+            int offset = first - pageIndex * pageSize;
+            Page page = pages.get(pageIndex);
+            if (page != null && offset > 0 && offset <= page.size) {
+                selection.blocks.add(new Block(first, count, page.ids[offset - 1], 0));
+            } else {
+                int known = pageIndex - 1;
+                while (known >= 0 && lastIdOfPage[known] == UNKNOWN) {
+                    known--;
+                }
+                selection.blocks.add(new Block(first, count, known >= 0 ? lastIdOfPage[known] : 0, first - (known + 1) * pageSize));
+            }
+            selection.size += count;
+        }
+        return selection;
+    }
+
+    // Ids of the selected rows as inclusive ranges: a block of an unfiltered view is one range of
+    // the account's ids, in a search every match is a range of its own. Blocks no longer found
+    // (the rows changed since) are left out. Runs off the EDT.
+    public List<long[]> idRanges(PooledConnection conn, Selection selection) throws SQLException {
+        List<long[]> ranges = new ArrayList<>();
+        for (Block block : selection.blocks) {
+            if (selection.selectedFilter != null) {
+                long fromId = block.afterId;
+                if (block.skip > 0) {
+                    fromId = ExpenseSearch.idAfter(conn, selection.selectedFilter, block.afterId, block.skip);
+                    if (fromId == -1) {
+                        continue;
+                    }
+                }
+                for (Expense expense : ExpenseSearch.search(conn, selection.selectedFilter, fromId, block.rows)) {
+                    ranges.add(new long[]{expense.getId(), expense.getId()});
+                }
+            } else {
+                long firstId = idAfter(conn, selection.selectedAccountId, block.afterId, block.skip + 1);
+                long lastId = firstId == -1 ? -1 : idAfter(conn, selection.selectedAccountId, firstId - 1, block.rows);
+                if (lastId != -1) {
+                    ranges.add(new long[]{firstId, lastId});
+                }
+            }
+        }
+        return ranges;
+    }
+
+    // Take deleted rows out of the view: pages before the first of them stay as they are, later
+    // ones are fetched again when shown. Reloads instead if the view changed since the selection
+    // was made or not every selected row was deleted.
+    public void removeRows(Selection selection, int deleted) {
+        if (selection.gen != generation) {
+            return; // Already reloaded
+        }
+        if (deleted != selection.size || selection.blocks.isEmpty()) {
+            reload();
+            return;
+        }
+        generation++; // Pages in flight were fetched for the old row positions
+        int firstPage = selection.blocks.get(0).firstRow / pageSize;
+        pages.keySet().removeIf(index -> index >= firstPage);
+        loading.clear();
+        rowCount -= deleted;
+        long[] boundaries = Arrays.copyOf(lastIdOfPage, (rowCount + pageSize - 1) / pageSize);
+        Arrays.fill(boundaries, Math.min(firstPage, boundaries.length), boundaries.length, UNKNOWN);
+        lastIdOfPage = boundaries;
+        for (int i = selection.blocks.size() - 1; i >= 0; i--) {
+            Block block = selection.blocks.get(i);
+            fireTableRowsDeleted(block.firstRow, block.firstRow + block.rows - 1);
+        }
+    }
+
+    // One page of rows held column-wise, so amounts stay primitive until displayed
+    private static final class Page {
+        final long[] ids;
+        final String[] dates;
+        final String[] descriptions;
+        final long[] amounts;
+        final String[] categories;
+        int size;
+
+        Page(int capacity) {
+            ids = new long[capacity];
+            dates = new String[capacity];
+            descriptions = new String[capacity];
+            amounts = new long[capacity];
+            categories = new String[capacity];
+        }
+    }
+}
@@ -0,0 +1,435 @@
+package expensetracker;
+
+import java.io.IOException;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+public class ExpenseTracker {
+    private static final Logger logger = Logger.getLogger(ExpenseTracker.class.getName());
+    static final String DB_URL = "jdbc:sqlite:ExpensesDB.db";
+    static final int DEFAULT_BATCH_SIZE = 10_000;
+    // Every JDBC path below is timed; see Metrics
+    private static final Metrics.Timer LOAD_ACCOUNTS = Metrics.timer("db.loadAccountIds");
+    private static final Metrics.Timer INSERT_BATCH = Metrics.timer("db.insertBatch");
+    private static final Metrics.Timer INSERT_ROWS = Metrics.timer("db.insertRows");
+    private static final Metrics.Timer DELETE_EXPENSES = Metrics.timer("db.deleteExpenses");
+    private static final Metrics.Timer FIND_BY_ACCOUNT = Metrics.timer("db.findExpensesByAccount");
+    private static final Metrics.Timer TOTALS_BY_ACCOUNT = Metrics.timer("db.totalsByAccount");
+    private static final Metrics.Timer TRANSFER = Metrics.timer("db.transfer");
+    // Deletes of at least this many rows adjust totals and the search index per set, not per row
+    static final int BULK_DELETE_ROWS = Integer.getInteger("expensetracker.delete.bulk_rows", 1_000);
+    static final String INSERT_EXPENSE_SQL = "INSERT INTO expenses (account_id, date, description, amount, category_id, epoch_day) VALUES (?, ?, ?, ?, ?, ?)";
+
+    private static Database db;
+    private static TransferEngine transferEngine;
+    private static BatchingExpenseWriter writer;
+
+    // Initialize Database
+    public static void initDB() {
+        initDB(DB_URL);
+    }
+
+    // Initialize Database at the given JDBC url
+    public static void initDB(String url) {
+        try {
+            closeDB();
+
+            // Connect to the SQLite database (creates it if it doesn't exist)
+            db = Database.open(url);
+            logger.info("Database connected successfully.");
+
+            try (PooledConnection conn = db.writer()) {
+                // Create or bring forward the shared schema
+                SchemaMigrations.migrate(conn.connection());
+                // Optional in-memory mirror used for aggregates, enabled with -Dexpensetracker.columnar=true
+                db.loadColumnar(conn);
+            }
+            // Replays whatever the last run acknowledged but never committed
+            writer = BatchingExpenseWriter.open(db, null);
+            transferEngine = new TransferEngine(db);
+        } catch (SQLException | IOException e) {
+            logger.log(Level.SEVERE, "Database connection or table creation failed", e);
+        }
+    }
+
+    // Commit queued expenses and release the database
+    public static void closeDB() {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+        if (transferEngine != null) {
+            transferEngine.close();
+            transferEngine = null;
+        }
+        if (db != null) {
+            try {
+                db.close();
+            } catch (SQLException e) {
+                logger.warning("Error closing database: " + e.getMessage());
+            }
+            db = null;
+        }
+    }
+
+    // The connection layer behind the static API, for components that share it
+    static Database database() {
+        return db;
+    }
+
+    static TransferEngine transferEngine() {
+        return transferEngine;
+    }
+
+    static BatchingExpenseWriter writer() {
+        return writer;
+    }
+
+    // Map every account name to its id, for callers that resolve names in bulk
+    public static Map<String, Integer> loadAccountIds() {
+        Map<String, Integer> ids = new HashMap<>();
+        Metrics.Sample sample = LOAD_ACCOUNTS.start();
+        try (PooledConnection conn = db.reader()) {
+            ids.putAll(db.accounts().ids(conn)); // Read from the database only the first time
+            sample.stop(ids.size());
+        } catch (SQLException e) {
+            sample.fail(e);
+            logger.severe("Error loading accounts: " + e.getMessage());
+        }
+        return ids;
+    }
+
+    // Queue a new expense; the amount must be in the ledger currency. It is journaled when this
+    // returns and committed with the next group; the future completes with its id.
+    public static CompletableFuture<Long> addExpense(int accountId, String date, String description, Money amount) {
+        Expense expense = new Expense(accountId, date, description, amount.minorUnitsIn(Money.LEDGER_CURRENCY));
+        return writer.submit(expense).whenComplete((id, e) -> {
+            if (e != null) {
+                logger.severe("Failed to add expense: " + e.getMessage());
+            } else if (logger.isLoggable(Level.FINE)) {
+                logger.fine("Expense added successfully!");
+            }
+        });
+    }
+
+    // Insert many expenses, committing every DEFAULT_BATCH_SIZE rows
+    public static BulkInsertResult addExpenses(Iterable<Expense> expenses) {
+        return addExpenses(expenses, DEFAULT_BATCH_SIZE);
+    }
+
+    // Insert a stream of expenses, committing every DEFAULT_BATCH_SIZE rows
+    public static BulkInsertResult addExpenses(Stream<Expense> expenses) {
+        return addExpenses(expenses::iterator, DEFAULT_BATCH_SIZE);
+    }
+
+    // Insert many expenses through one cached statement, one transaction per batch.
+    // A failing batch is rolled back and recorded in the result; later batches still run.
+    public static BulkInsertResult addExpenses(Iterable<Expense> expenses, int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize must be positive: " + batchSize);
+        }
+        BulkInsertResult result = new BulkInsertResult();
+        try (PooledConnection lease = db.writer()) {
+            Connection conn = lease.connection();
+            PreparedStatement bulkInsertStmt = lease.prepare(INSERT_EXPENSE_SQL);
+            conn.setAutoCommit(false);
+            try {
+                Iterator<Expense> it = expenses.iterator();
+                List<Expense> batch = new ArrayList<>(Math.min(batchSize, DEFAULT_BATCH_SIZE));
+                int batchIndex = 0;
+                while (it.hasNext()) {
+                    batch.clear();
+                    Metrics.Sample sample = INSERT_BATCH.start();
+                    try {
+                        while (batch.size() < batchSize && it.hasNext()) {
+                            Expense expense = it.next();
+                            bindExpense(lease, bulkInsertStmt, expense);
+                            bulkInsertStmt.addBatch();
+                            batch.add(expense);
+                        }
+                        bulkInsertStmt.executeBatch();
+                        long lastId = lastInsertId(lease);
+                        conn.commit();
+                        sample.stop(batch.size());
+                        result.batchCommitted(batch.size());
+                        ColumnarExpenseStore columnar = db.columnar();
+                        if (columnar != null) {
+                            columnar.addAll(batch, lastId - batch.size() + 1);
+                        }
+                    } catch (SQLException e) {
+                        sample.fail(e);
+                        bulkInsertStmt.clearBatch();
+                        conn.rollback();
+                        db.categories().invalidate(); // May hold categories the rollback took back
+                        result.batchFailed(batchIndex, batch.size(), e.getMessage());
+                        logger.severe("Bulk insert batch " + batchIndex + " rolled back: " + e.getMessage());
+                    }
+                    batchIndex++;
+                }
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            logger.severe("Bulk insert aborted: " + e.getMessage());
+        }
+        logger.info("Bulk insert finished: " + result);
+        return result;
+    }
+
+    // Insert rows on the writer connection inside the caller's transaction and return the id of
+    // the first; the others follow consecutively (single writer connection). A caller that rolls
+    // back must invalidate the category dictionary (see bindExpense).
+    static long insertRows(PooledConnection lease, List<Expense> rows) throws SQLException {
+        if (rows.isEmpty()) {
+            return 0;
+        }
+        Metrics.Sample sample = INSERT_ROWS.start();
+        PreparedStatement stmt = lease.prepare(INSERT_EXPENSE_SQL);
+        try {
+            for (Expense expense : rows) {
+                bindExpense(lease, stmt, expense);
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+            long firstId = lastInsertId(lease) - rows.size() + 1;
+            sample.stop(rows.size());
+            return firstId;
+        } catch (SQLException e) {
+            sample.fail(e);
+            stmt.clearBatch();
+            throw e;
+        }
+    }
+
+    // Bind an expense to INSERT_EXPENSE_SQL on the writer; a category seen for the first time is
+    // added to the categories table in the same transaction
+    static void bindExpense(PooledConnection lease, PreparedStatement stmt, Expense expense) throws SQLException {
+        stmt.setInt(1, expense.getAccountId());
+        stmt.setString(2, expense.getDate());
+        stmt.setString(3, expense.getDescription());
+        stmt.setLong(4, expense.getAmount());
+        if (expense.getCategory() == null) {
+            stmt.setNull(5, Types.INTEGER);
+        } else {
+            stmt.setInt(5, lease.database().categories().intern(lease, expense.getCategory()));
+        }
+        SchemaMigrations.bindEpochDay(stmt, 6, expense.getDate());
+    }
+
+    // Delete an account's expenses by ranges of ids (both ends included) in one transaction on the
+    // writer; archived expenses are left alone. Returns the number of rows deleted.
+    // The ranges go into a temp table in one statement and the rows they select are copied out in
+    // one join, each once however the ranges overlap. A few rows are then deleted through the triggers. For more, the per-row delete
+    // triggers (about 10µs a row, most of it FTS) are dropped inside the transaction: the search
+    // index and both kinds of total bucket are adjusted once for the whole set, the rows deleted,
+    // and the triggers recreated before the commit, so no other connection ever sees them missing.
+    static int deleteExpenses(PooledConnection lease, int accountId, List<long[]> idRanges) throws SQLException {
+        Connection conn = lease.connection();
+        Metrics.Sample sample = DELETE_EXPENSES.start();
+        conn.setAutoCommit(false);
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("CREATE TEMP TABLE IF NOT EXISTS delete_ranges (first INTEGER NOT NULL, last INTEGER NOT NULL)");
+            stmt.executeUpdate("CREATE TEMP TABLE IF NOT EXISTS deleted_expenses (id INTEGER PRIMARY KEY, account_id INTEGER, date TEXT, "
+                    + "description TEXT, amount INTEGER, category_id INTEGER, epoch_day INTEGER)");
+            // All the ranges go over as one JSON array of [first, last] pairs, not a statement each
+            StringBuilder json = new StringBuilder("[");
+            for (long[] ids : idRanges) {
+                json.append(json.length() == 1 ? "[" : ",[").append(ids[0]).append(',').append(ids[1]).append(']');
+            }
+            PreparedStatement ranges = lease.prepare("INSERT INTO temp.delete_ranges (first, last) SELECT value ->> 0, value ->> 1 FROM json_each(?)");
+            ranges.setString(1, json.append(']').toString());
+            ranges.executeUpdate();
+            // Each range is a rowid seek; the account check only filters what the range found, and
+            // a row in overlapping ranges is only taken once
+            PreparedStatement select = lease.prepare("INSERT OR IGNORE INTO temp.deleted_expenses "
+                    + "SELECT e.id, e.account_id, e.date, e.description, e.amount, e.category_id, e.epoch_day "
+                    + "FROM temp.delete_ranges r CROSS JOIN main.expenses e ON e.id BETWEEN r.first AND r.last WHERE +e.account_id = ?");
+            select.setInt(1, accountId);
+            select.executeUpdate();
+            // Counted here: the driver's update count takes in what the triggers touched
+            int deleted = (int) count(stmt, "temp.deleted_expenses");
+            ColumnarExpenseStore columnar = lease.database().columnar();
+            long[] deletedIds = new long[columnar == null ? 0 : deleted];
+            if (columnar != null) {
+                // Only what leaves main.expenses: archived rows inside the ranges stay
+                try (ResultSet rs = stmt.executeQuery("SELECT id FROM temp.deleted_expenses")) {
+                    for (int i = 0; rs.next(); i++) {
+                        deletedIds[i] = rs.getLong(1);
+                    }
+                }
+            }
+            if (deleted < BULK_DELETE_ROWS) {
+                stmt.executeUpdate("DELETE FROM main.expenses WHERE id IN (SELECT id FROM temp.deleted_expenses)");
+            } else {
+                // The delete triggers stand aside for this statement; the same work is done per set
+                stmt.executeUpdate("UPDATE expense_trigger_control SET bypass = 1");
+                ExpenseSearch.removeFromIndex(conn, "temp.deleted_expenses");
+                // One sort feeds both kinds of bucket
+                stmt.executeUpdate("CREATE TEMP TABLE deleted_days AS SELECT account_id, category_id, date, epoch_day, "
+                        + "SUM(amount) AS amount, COUNT(*) AS row_count FROM temp.deleted_expenses GROUP BY 1, 2, 3, 4");
+                ExpenseSummary.removeTotals(conn, "temp.deleted_days");
+                ExpenseReports.removeTotals(conn, "temp.deleted_days");
+                stmt.executeUpdate("DROP TABLE temp.deleted_days");
+                stmt.executeUpdate("DELETE FROM main.expenses WHERE id IN (SELECT id FROM temp.deleted_expenses)");
+                stmt.executeUpdate("UPDATE expense_trigger_control SET bypass = 0");
+            }
+            stmt.executeUpdate("DELETE FROM temp.deleted_expenses");
+            stmt.executeUpdate("DELETE FROM temp.delete_ranges");
+            conn.commit();
+            for (long id : deletedIds) {
+                columnar.deleteRange(accountId, id, id);
+            }
+            sample.stop(deleted);
+            return deleted;
+        } catch (SQLException e) {
+            sample.fail(e);
+            conn.rollback(); // Takes the temp tables' contents and the bypass flag back with it
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    // Delete an account with its expenses, archived ones included; returns 1, or 0 if there was no such account.
+    // The partitions go first, each on its own; then one transaction takes the account, its expenses
+    // (ON DELETE CASCADE, and through their triggers their search entries) and every bucket counting it.
+    static int deleteAccount(PooledConnection lease, int accountId) throws SQLException, IOException {
+        lease.database().archive().deleteAccount(lease, accountId);
+        Connection conn = lease.connection();
+        conn.setAutoCommit(false);
+        int rows;
+        try {
+            PreparedStatement stmt = lease.prepare("DELETE FROM accounts WHERE id = ?");
+            stmt.setInt(1, accountId);
+            rows = stmt.executeUpdate();
+            stmt = lease.prepare("DELETE FROM expense_totals WHERE account_id = ?");
+            stmt.setInt(1, accountId);
+            stmt.executeUpdate();
+            stmt = lease.prepare("DELETE FROM expense_daily_totals WHERE account_id = ?");
+            stmt.setInt(1, accountId);
+            stmt.executeUpdate();
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+        ColumnarExpenseStore columnar = lease.database().columnar();
+        if (columnar != null) {
+            columnar.deleteAccount(accountId);
+        }
+        return rows;
+    }
+
+    private static long count(Statement stmt, String table) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM " + table)) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    private static long lastInsertId(PooledConnection conn) throws SQLException {
+        try (ResultSet rs = conn.prepare("SELECT last_insert_rowid()").executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    // Fetch expenses for a given account
+    public static void fetchExpensesByAccount(int accountId) {
+        for (Expense expense : findExpensesByAccount(accountId)) {
+            System.out.println("Expense ID: " + expense.getId() + ", Date: " + expense.getDate() + ", Description: " + expense.getDescription() + ", Amount: " + Money.format(expense.getAmount()));
+        }
+    }
+
+    // Load every expense of an account, archived ones included, in id order
+    public static List<Expense> findExpensesByAccount(int accountId) {
+        List<Expense> expenses = new ArrayList<>();
+        Metrics.Sample sample = FIND_BY_ACCOUNT.start();
+        try (PooledConnection conn = db.reader()) {
+            expenses = db.archive().accountExpenses(conn, "e.date, e.description, e.amount, e.category_id", accountId, Long.MIN_VALUE, 0, -1,
+                    rs -> new Expense(rs.getLong("id"), accountId, rs.getString("date"), rs.getString("description"),
+                            rs.getLong("amount"), db.categories().nameOf(conn, rs.getInt("category_id"))));
+            sample.stop(expenses.size());
+        } catch (SQLException e) {
+            sample.fail(e);
+            logger.severe("Error fetching expenses: " + e.getMessage());
+        }
+        return expenses;
+    }
+
+    // Fetch total expenses per account
+    public static void generateExpenseReport() {
+        ColumnarExpenseStore columnar = db.columnar();
+        if (columnar != null) {
+            long[] totals = columnar.totalsByAccountCents();
+            for (int accountId = 0; accountId < totals.length; accountId++) {
+                if (totals[accountId] != 0) {
+                    System.out.println("Account ID: " + accountId + " | Total Expense: " + Money.format(totals[accountId]));
+                }
+            }
+            return;
+        }
+        Map<Integer, Long> totals;
+        Metrics.Sample sample = TOTALS_BY_ACCOUNT.start();
+        try (PooledConnection conn = db.reader()) {
+            totals = ExpenseSummary.totalsByAccount(conn);
+            sample.stop(totals.size());
+        } catch (SQLException e) {
+            sample.fail(e);
+            logger.severe("Error generating report: " + e.getMessage());
+            return;
+        }
+        for (Map.Entry<Integer, Long> total : totals.entrySet()) {
+            System.out.println("Account ID: " + total.getKey() + " | Total Expense: " + Money.format(total.getValue()));
+        }
+    }
+
+    // Method to perform database transaction
+    public static void transferFunds(int fromAccountId, int toAccountId, Money amount) throws SQLException {
+        // Runs on the transfer engine's own connections, never on the shared writer
+        Metrics.Sample sample = TRANSFER.start();
+        boolean done;
+        try {
+            done = transferEngine.transfer(fromAccountId, toAccountId, amount.minorUnitsIn(Money.LEDGER_CURRENCY));
+            sample.stop(done ? 1 : 0);
+        } catch (SQLException e) {
+            sample.fail(e);
+            throw e;
+        }
+        if (done) {
+            logger.fine("Funds transferred successfully!");
+        } else {
+            logger.warning("Transaction failed: insufficient funds or unknown account. Nothing was changed.");
+        }
+    }
+
+    // Main method to start the tracker
+    public static void main(String[] args) {
+        logger.info("Starting Expense Tracker...");
+        initDB();  // Ensure the database and tables are created
+
+        // Example usage
+        addExpense(1, "2024-12-14", "Lunch at Restaurant", Money.parse("20.50"));
+        addExpense(1, "2024-12-14", "Groceries", Money.parse("45.75"))
+                .exceptionally(e -> null).join(); // Committed in order, so the first is in as well
+        fetchExpensesByAccount(1);
+
+        // Generate expense report
+        generateExpenseReport();
+
+        // Example transaction: transfer funds between two accounts
+        try {
+            transferFunds(1, 2, Money.parse("100.00"));
+        } catch (SQLException e) {
+            logger.severe("Transaction failed: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,792 @@
+package expensetracker;
+
+import java.awt.*;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.*;
+import java.sql.*;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Consumer;
+import javax.swing.*;
+import javax.swing.border.TitledBorder;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.table.DefaultTableCellRenderer;
+import javax.swing.table.DefaultTableModel;
+import javax.swing.table.TableModel;
+
+public class ExpenseTrackerGUI {
+    private JFrame frame;
+    private JTextField nameField, dateField, descField, amountField;
+    private JComboBox<String> accountBox, categoryBox, categoryFilterBox;
+    private JTextField searchField;
+    private JTable expenseTable;
+    private JLabel totalLabel;
+    private final List<JComponent> databaseControls = new ArrayList<>(); // Enabled once the database is open
+    private boolean updatingAccounts; // Refilling accountBox; its selection events are not the user's
+    private Database db;
+    private BatchingExpenseWriter expenseWriter; // Write-behind queue for new expenses
+
+    // All JDBC work runs on these, never on the EDT: one thread for the writer connection,
+    // a couple for the reader pool so table pages and totals don't queue behind a write
+    private final ExecutorService writeExecutor = Executors.newSingleThreadExecutor(daemonThreads("expense-db-write"));
+    private final ExecutorService readExecutor = Executors.newFixedThreadPool(2, daemonThreads("expense-db-read"));
+    private static final int TABLE_PAGE_SIZE = 500;
+    private static final int TABLE_MAX_PAGES = 20;
+    private static final int SEARCH_DELAY_MILLIS = 250; // Query once typing pauses, not on every keystroke
+    private static final int REFRESH_DELAY_MILLIS = 200; // Group commits landing closer together share one requery
+    private final Timer refreshTimer = new Timer(REFRESH_DELAY_MILLIS, e -> showCommitted());
+    private final List<Expense> committed = new ArrayList<>(); // Pending rows stored since the last requery; EDT only
+    private ExpenseTableModel tableModel; // Null until the database is open
+    private SwingWorker<Long, Void> totalWorker;
+    private long shownTotal; // Last total shown, plus expenses still queued for the database
+
+    // Reports tab, filled from the pre-aggregated buckets in ExpenseReports
+    private static final String[] MONTHS = {"Jan", "Feb", "Mar", "Apr", "May", "Jun", "Jul", "Aug", "Sep", "Oct", "Nov", "Dec"};
+    private static final int ROLLING_DAYS = 30;
+    private JTabbedPane tabs;
+    private JPanel reportPanel;
+    private JSpinner reportYearSpinner;
+    private JLabel rollingSpendLabel;
+    private DefaultTableModel categoryReportModel, yearOverYearModel;
+    private SwingWorker<AccountReport, Void> reportWorker;
+
+    // Everything the Reports tab shows for one account and year
+    private static final class AccountReport {
+        long rollingSpend;
+        Map<String, long[]> byCategory;
+        ExpenseReports.YearOverYear yearOverYear;
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        return r -> {
+            Thread t = new Thread(r, name);
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    // Builds and shows the frame straight away, with what the last session showed if there is a
+    // snapshot of it; the database is opened, migrated and warmed up in the background and the
+    // live data then replaces the snapshot
+    public ExpenseTrackerGUI(StartupSnapshot snapshot) {
+        // Create main frame
+        frame = new JFrame("Expense Tracker");
+        frame.setSize(1000, 700);
+        frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        frame.setLayout(new BorderLayout(10, 10));
+        frame.getContentPane().setBackground(new Color(245, 245, 245)); // Light gray background
+        frame.setResizable(true);
+
+        Font headerFont = new Font("Arial", Font.BOLD, 16);
+        Font labelFont = new Font("Arial", Font.PLAIN, 14);
+
+        // Section 1: Left Panel for Add Expense and Add Account
+        JPanel leftPanel = new JPanel(new GridBagLayout());
+        leftPanel.setPreferredSize(new Dimension(400, 700));
+        leftPanel.setBorder(BorderFactory.createTitledBorder(BorderFactory.createLineBorder(Color.GRAY), "Add Expense", TitledBorder.LEFT, TitledBorder.TOP, headerFont, Color.BLUE));
+
+        GridBagConstraints gbc = new GridBagConstraints();
+        gbc.insets = new Insets(10, 10, 10, 10);
+        gbc.anchor = GridBagConstraints.WEST;
+
+        // Account Field
+        JLabel accountLabel = new JLabel("Account:");
+        accountLabel.setFont(labelFont);
+        gbc.gridy = 0;
+        gbc.gridx = 0;
+        leftPanel.add(accountLabel, gbc);
+
+        accountBox = new JComboBox<>();
+        gbc.gridx = 1;
+        leftPanel.add(accountBox, gbc);
+
+        JButton addAccountButton = new JButton("Add Account");
+        addAccountButton.setBackground(new Color(30, 144, 255));
+        addAccountButton.setForeground(Color.WHITE);
+        addAccountButton.setPreferredSize(new Dimension(180, 40));
+        gbc.gridy = 1;
+        gbc.gridx = 1;
+        leftPanel.add(addAccountButton, gbc);
+
+        // Delete Account Button
+        JButton deleteAccountButton = new JButton("Delete Account");
+        deleteAccountButton.setBackground(new Color(255, 69, 0));
+        deleteAccountButton.setForeground(Color.WHITE);
+        deleteAccountButton.setPreferredSize(new Dimension(180, 40));
+        gbc.gridy = 2;
+        gbc.gridx = 1;
+        leftPanel.add(deleteAccountButton, gbc);
+
+        // Date Field
+        JLabel dateLabel = new JLabel("Date (YYYY-MM-DD):");
+        dateLabel.setFont(labelFont);
+        gbc.gridy = 3;
+        gbc.gridx = 0;
+        leftPanel.add(dateLabel, gbc);
+
+        dateField = new JTextField(LocalDate.now().toString(), 15);
+        gbc.gridx = 1;
+        leftPanel.add(dateField, gbc);
+
+        // Description Field
+        JLabel descLabel = new JLabel("Description:");
+        descLabel.setFont(labelFont);
+        gbc.gridy = 4;
+        gbc.gridx = 0;
+        leftPanel.add(descLabel, gbc);
+
+        descField = new JTextField(20);
+        gbc.gridx = 1;
+        leftPanel.add(descField, gbc);
+
+        // Amount Field
+        JLabel amountLabel = new JLabel("Amount:");
+        amountLabel.setFont(labelFont);
+        gbc.gridy = 5;
+        gbc.gridx = 0;
+        leftPanel.add(amountLabel, gbc);
+
+        amountField = new JTextField(15);
+        gbc.gridx = 1;
+        leftPanel.add(amountField, gbc);
+
+        // Category Field
+        JLabel categoryLabel = new JLabel("Category:");
+        categoryLabel.setFont(labelFont);
+        gbc.gridy = 6;
+        gbc.gridx = 0;
+        leftPanel.add(categoryLabel, gbc);
+
+        categoryBox = new JComboBox<>(new String[]{"Food", "Transport", "Bills", "Entertainment"});
+        gbc.gridx = 1;
+        leftPanel.add(categoryBox, gbc);
+
+        // Add Expense Button
+        JButton addExpenseButton = new JButton("Add Expense");
+        addExpenseButton.setPreferredSize(new Dimension(180, 40));
+        addExpenseButton.setBackground(new Color(60, 179, 113));
+        addExpenseButton.setForeground(Color.WHITE);
+        gbc.gridy = 7;
+        gbc.gridx = 1;
+        leftPanel.add(addExpenseButton, gbc);
+
+        // Reset Form Button
+        JButton resetFormButton = new JButton("Reset Form");
+        resetFormButton.setPreferredSize(new Dimension(180, 40));
+        resetFormButton.setBackground(new Color(255, 69, 0));
+        resetFormButton.setForeground(Color.WHITE);
+        gbc.gridy = 8;
+        gbc.gridx = 1;
+        leftPanel.add(resetFormButton, gbc);
+
+        // Section 2: Right Panel for Table and Summary
+        JPanel tablePanel = new JPanel(new BorderLayout(10, 10));
+
+        // Table for displaying expenses; the snapshot's rows until the paged model takes over
+        expenseTable = new JTable();
+        showTableModel(readOnlyModel(ExpenseTableModel.COLUMNS));
+        JScrollPane scrollPane = new JScrollPane(expenseTable);
+        tablePanel.add(scrollPane, BorderLayout.CENTER);
+
+        // Search panel: description words (prefix match) and category, within the selected account
+        JPanel searchPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        JLabel searchLabel = new JLabel("Search:");
+        searchLabel.setFont(labelFont);
+        searchPanel.add(searchLabel);
+
+        searchField = new JTextField(20);
+        searchPanel.add(searchField);
+
+        categoryFilterBox = new JComboBox<>(new String[]{"All categories", "Food", "Transport", "Bills", "Entertainment"});
+        searchPanel.add(categoryFilterBox);
+
+        tablePanel.add(searchPanel, BorderLayout.NORTH);
+
+        // Summary panel
+        JPanel summaryPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        JLabel totalTextLabel = new JLabel("Total Expense:");
+        totalTextLabel.setFont(labelFont);
+        summaryPanel.add(totalTextLabel);
+
+        totalLabel = new JLabel("0.00");
+        totalLabel.setFont(new Font("Arial", Font.BOLD, 14));
+        summaryPanel.add(totalLabel);
+
+        JButton exportButton = new JButton("Export to CSV");
+        exportButton.setBackground(new Color(70, 130, 180));
+        exportButton.setForeground(Color.WHITE);
+        summaryPanel.add(exportButton);
+
+        JButton deleteExpenseButton = new JButton("Delete Expense");
+        deleteExpenseButton.setBackground(new Color(255, 69, 0));
+        deleteExpenseButton.setForeground(Color.WHITE);
+        summaryPanel.add(deleteExpenseButton);
+
+        tablePanel.add(summaryPanel, BorderLayout.SOUTH);
+
+        JSplitPane splitPane = new JSplitPane(JSplitPane.HORIZONTAL_SPLIT, leftPanel, tablePanel);
+        splitPane.setDividerLocation(400);
+
+        // Section 3: Reports tab for the selected account
+        reportPanel = new JPanel(new BorderLayout(10, 10));
+        JPanel reportControls = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        JLabel yearLabel = new JLabel("Year:");
+        yearLabel.setFont(labelFont);
+        reportControls.add(yearLabel);
+
+        reportYearSpinner = new JSpinner(new SpinnerNumberModel(LocalDate.now().getYear(), 1970, 9999, 1));
+        reportYearSpinner.setEditor(new JSpinner.NumberEditor(reportYearSpinner, "#"));
+        reportControls.add(reportYearSpinner);
+
+        JLabel rollingTextLabel = new JLabel("Last " + ROLLING_DAYS + " days:");
+        rollingTextLabel.setFont(labelFont);
+        reportControls.add(rollingTextLabel);
+
+        rollingSpendLabel = new JLabel("0.00");
+        rollingSpendLabel.setFont(new Font("Arial", Font.BOLD, 14));
+        reportControls.add(rollingSpendLabel);
+        reportPanel.add(reportControls, BorderLayout.NORTH);
+
+        String[] categoryColumns = new String[MONTHS.length + 2];
+        categoryColumns[0] = "Category";
+        System.arraycopy(MONTHS, 0, categoryColumns, 1, MONTHS.length);
+        categoryColumns[categoryColumns.length - 1] = "Total";
+        categoryReportModel = readOnlyModel(categoryColumns);
+        yearOverYearModel = readOnlyModel(new String[]{"Month", "This year", "Last year", "Change"});
+
+        JPanel reportTables = new JPanel(new GridLayout(2, 1, 10, 10));
+        JScrollPane categoryScroll = new JScrollPane(new JTable(categoryReportModel));
+        categoryScroll.setBorder(BorderFactory.createTitledBorder("Spend by category and month"));
+        reportTables.add(categoryScroll);
+        JScrollPane yearOverYearScroll = new JScrollPane(new JTable(yearOverYearModel));
+        yearOverYearScroll.setBorder(BorderFactory.createTitledBorder("Year over year"));
+        reportTables.add(yearOverYearScroll);
+        reportPanel.add(reportTables, BorderLayout.CENTER);
+
+        tabs = new JTabbedPane();
+        tabs.addTab("Expenses", splitPane);
+        tabs.addTab("Reports", reportPanel);
+        frame.add(tabs, BorderLayout.CENTER);
+
+        Collections.addAll(databaseControls, accountBox, addAccountButton, deleteAccountButton, addExpenseButton,
+                searchField, categoryFilterBox, exportButton, deleteExpenseButton, reportYearSpinner);
+        for (JComponent control : databaseControls) {
+            control.setEnabled(false);
+        }
+        showSnapshot(snapshot);
+        frame.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                saveSnapshot();
+            }
+        });
+        frame.setVisible(true);
+
+        // Add listeners
+        addExpenseButton.addActionListener(e -> addExpense());
+        resetFormButton.addActionListener(e -> resetForm());
+        exportButton.addActionListener(e -> exportToCSV());
+        deleteExpenseButton.addActionListener(e -> deleteExpense());
+        addAccountButton.addActionListener(e -> addAccount());
+        deleteAccountButton.addActionListener(e -> deleteAccount());
+        accountBox.addActionListener(e -> {
+            if (!updatingAccounts) {
+                updateTable();
+            }
+        });
+        tabs.addChangeListener(e -> updateReport());
+        reportYearSpinner.addChangeListener(e -> updateReport());
+
+        refreshTimer.setRepeats(false);
+        Timer searchTimer = new Timer(SEARCH_DELAY_MILLIS, e -> applySearch());
+        searchTimer.setRepeats(false);
+        searchField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                searchTimer.restart();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                searchTimer.restart();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                searchTimer.restart();
+            }
+        });
+        categoryFilterBox.addActionListener(e -> applySearch());
+
+        // On the write thread, so anything written meanwhile queues up behind it
+        frame.setTitle("Expense Tracker (opening database...)");
+        write("gui.startup", this::initDB, this::databaseReady, "Error initializing database: ");
+    }
+
+    // Open and migrate the database and warm up the reader connections. Returns the account names.
+    private List<String> initDB() throws Exception {
+        Database opened = Database.open(ExpenseTracker.DB_URL);
+        try (PooledConnection conn = opened.writer()) {
+            SchemaMigrations.migrate(conn.connection()); // Same schema as ExpenseTracker
+            opened.loadColumnar(conn); // Optional aggregate mirror, -Dexpensetracker.columnar=true
+        }
+        // Replays expenses a previous session acknowledged but never committed
+        expenseWriter = BatchingExpenseWriter.open(opened, this::expensesCommitted);
+        Runtime.getRuntime().addShutdownHook(new Thread(expenseWriter::close, "expense-writer-shutdown")); // Commit what is still queued
+        // The first screen's queries, planned now rather than while the user waits on them
+        opened.warmUp(SchemaMigrations.HOT_QUERIES);
+        db = opened;
+        try (PooledConnection conn = opened.reader()) {
+            return opened.accounts().names(conn);
+        }
+    }
+
+    // The database is open: swap the snapshot for live data, staying on the snapshot's account if it still exists
+    private void databaseReady(List<String> accountNames) {
+        tableModel = new ExpenseTableModel(db, readExecutor, TABLE_PAGE_SIZE, TABLE_MAX_PAGES,
+                e -> JOptionPane.showMessageDialog(frame, "Error fetching expenses: " + e.getMessage()));
+        showTableModel(tableModel);
+        for (JComponent control : databaseControls) {
+            control.setEnabled(true);
+        }
+        frame.setTitle("Expense Tracker");
+        setAccounts(accountNames);
+    }
+
+    // Paint what the last session showed, until the database is open
+    private void showSnapshot(StartupSnapshot snapshot) {
+        if (snapshot == null) {
+            return;
+        }
+        updatingAccounts = true;
+        for (String name : snapshot.getAccounts()) {
+            accountBox.addItem(name);
+        }
+        accountBox.setSelectedItem(snapshot.getAccount());
+        updatingAccounts = false;
+        DefaultTableModel rows = (DefaultTableModel) expenseTable.getModel();
+        for (String[] row : snapshot.getRows()) {
+            rows.addRow(row);
+        }
+        shownTotal = snapshot.getTotal();
+        totalLabel.setText(Money.format(shownTotal));
+    }
+
+    // Remember the selected account, its total and first rows for the next launch
+    private void saveSnapshot() {
+        if (tableModel == null) {
+            return; // Never got past the last snapshot, which is still as good
+        }
+        List<String> accounts = new ArrayList<>();
+        for (int i = 0; i < accountBox.getItemCount(); i++) {
+            accounts.add(accountBox.getItemAt(i));
+        }
+        // A search narrows the rows; the next launch starts unfiltered
+        List<String[]> rows = new ArrayList<>();
+        boolean filtered = !searchField.getText().trim().isEmpty() || categoryFilterBox.getSelectedIndex() > 0;
+        for (int r = 0; !filtered && r < Math.min(tableModel.getRowCount(), StartupSnapshot.MAX_ROWS); r++) {
+            if (tableModel.getValueAt(r, 0) == null) {
+                break; // Not fetched
+            }
+            String[] row = new String[ExpenseTableModel.COLUMNS.length];
+            for (int c = 0; c < row.length; c++) {
+                row[c] = (String) tableModel.getValueAt(r, c);
+            }
+            rows.add(row);
+        }
+        try {
+            new StartupSnapshot(accounts, (String) accountBox.getSelectedItem(), shownTotal, rows).save(ExpenseTracker.DB_URL);
+        } catch (IOException e) {
+            // Only a head start for the next launch; it opens without one
+        }
+    }
+
+    private void showTableModel(TableModel model) {
+        expenseTable.setModel(model);
+        DefaultTableCellRenderer amountRenderer = new DefaultTableCellRenderer();
+        amountRenderer.setHorizontalAlignment(SwingConstants.RIGHT);
+        expenseTable.getColumnModel().getColumn(2).setCellRenderer(amountRenderer);
+    }
+
+    // Called on the writer thread after each group commit (the columnar mirror already has the rows):
+    // the views are requeried REFRESH_DELAY_MILLIS after the first commit not yet shown, once for
+    // every commit landing meanwhile. Later commits don't restart the timer, so a steady stream
+    // of them still shows.
+    private void expensesCommitted(List<Expense> rows, long firstId) {
+        SwingUtilities.invokeLater(() -> {
+            if (tableModel != null) {
+                committed.addAll(rows);
+                if (!refreshTimer.isRunning()) {
+                    refreshTimer.start();
+                }
+            }
+        });
+    }
+
+    // Swap the rows committed since the last requery from pending to stored
+    private void showCommitted() {
+        tableModel.removePending(committed);
+        committed.clear();
+        updateTable();
+    }
+
+    // Run a query on a reader connection; the result is handed back on the EDT
+    private <T> SwingWorker<T, Void> read(String operation, Callable<T> task, Consumer<T> onSuccess, String errorMessage) {
+        return runInBackground(readExecutor, operation, task, onSuccess, errorMessage);
+    }
+
+    // Run a change on the writer connection; the result is handed back on the EDT
+    private <T> SwingWorker<T, Void> write(String operation, Callable<T> task, Consumer<T> onSuccess, String errorMessage) {
+        return runInBackground(writeExecutor, operation, task, onSuccess, errorMessage);
+    }
+
+    // The task is timed under 'operation' and tagged with the UI action that started it (see Metrics)
+    private <T> SwingWorker<T, Void> runInBackground(ExecutorService executor, String operation, Callable<T> task, Consumer<T> onSuccess,
+            String errorMessage) {
+        String action = Metrics.uiAction();
+        SwingWorker<T, Void> worker = new SwingWorker<T, Void>() {
+            @Override
+            protected T doInBackground() throws Exception {
+                Metrics.setUiAction(action);
+                Metrics.Sample sample = Metrics.start(operation);
+                try {
+                    T result = task.call();
+                    sample.stop(Metrics.rowsOf(result));
+                    return result;
+                } catch (Exception e) {
+                    sample.fail(e);
+                    throw e;
+                } finally {
+                    Metrics.setUiAction(null);
+                }
+            }
+
+            @Override
+            protected void done() {
+                if (isCancelled()) {
+                    return;
+                }
+                try {
+                    onSuccess.accept(get());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    JOptionPane.showMessageDialog(frame, errorMessage + e.getCause().getMessage());
+                }
+            }
+        };
+        executor.execute(worker);
+        return worker;
+    }
+
+    // Add account logic
+    private void addAccount() {
+        String accountName = JOptionPane.showInputDialog(frame, "Enter new account name:");
+        if (accountName != null && !accountName.trim().isEmpty()) {
+            write("gui.addAccount", () -> {
+                try (PooledConnection conn = db.writer()) {
+                    PreparedStatement stmt = conn.prepareReturningKeys("INSERT INTO accounts (name) VALUES (?)");
+                    stmt.setString(1, accountName.trim());
+                    int rows = stmt.executeUpdate();
+                    try (ResultSet keys = stmt.getGeneratedKeys()) {
+                        if (keys.next()) {
+                            db.accounts().put(keys.getInt(1), accountName.trim());
+                        } else {
+                            db.accounts().invalidate();
+                        }
+                    }
+                    return rows;
+                }
+            }, rows -> updateAccountBox(), "Error adding account: ");
+        }
+    }
+
+    // Update account combo box; names come from the account dictionary, read from disk only once
+    private void updateAccountBox() {
+        read("gui.loadAccounts", () -> {
+            try (PooledConnection conn = db.reader()) {
+                return db.accounts().names(conn);
+            }
+        }, this::setAccounts, "Error loading accounts: ");
+    }
+
+    // Refill the account list, keeping the selection if the account is still there, and show the
+    // selected account once rather than once per item added
+    private void setAccounts(List<String> names) {
+        Object selected = accountBox.getSelectedItem();
+        updatingAccounts = true;
+        accountBox.removeAllItems();
+        for (String name : names) {
+            accountBox.addItem(name);
+        }
+        if (selected != null && names.contains(selected)) {
+            accountBox.setSelectedItem(selected);
+        }
+        updatingAccounts = false;
+        updateTable();
+    }
+
+    // Resolve an account name to its id, -1 if unknown
+    private int lookupAccountId(PooledConnection conn, String accountName) throws SQLException {
+        return db.accounts().idOf(conn, accountName);
+    }
+
+    // Add expense logic
+    private void addExpense() {
+        String date = dateField.getText().trim();
+        String desc = descField.getText().trim();
+        String category = categoryBox.getSelectedItem().toString();
+        String accountName = (String) accountBox.getSelectedItem();
+        long amount;
+        try {
+            amount = Money.parseMinor(amountField.getText());
+        } catch (NumberFormatException e) {
+            JOptionPane.showMessageDialog(frame, "Invalid amount: " + e.getMessage());
+            return;
+        }
+
+        // Shown as pending on the EDT before it is submitted, so the removePending of its commit
+        // or failure always comes after the row it removes; pending rows are this very Expense
+        // object, so an identical expense added twice is still two rows. Journaled off the EDT;
+        // the table and total are requeried once the writer has committed it.
+        write("gui.addExpense", () -> {
+            try (PooledConnection conn = db.reader()) {
+                return lookupAccountId(conn, accountName);
+            }
+        }, accountId -> {
+            if (accountId == -1) {
+                JOptionPane.showMessageDialog(frame, "Error adding expense: Unknown account " + accountName);
+                return;
+            }
+            Expense expense = new Expense(accountId, date, desc, amount, category);
+            if (accountName.equals(accountBox.getSelectedItem())) {
+                tableModel.addPending(expense);
+                shownTotal += amount;
+                totalLabel.setText(Money.format(shownTotal));
+            }
+            resetForm();
+            write("gui.addExpense", () -> {
+                CompletableFuture<Long> committed;
+                try {
+                    committed = expenseWriter.submit(expense);
+                } catch (RuntimeException e) {
+                    SwingUtilities.invokeLater(() -> dropPending(expense));
+                    throw e;
+                }
+                committed.whenComplete((id, e) -> {
+                    if (e != null) {
+                        SwingUtilities.invokeLater(() -> {
+                            dropPending(expense);
+                            JOptionPane.showMessageDialog(frame, "Error adding expense: " + e.getMessage());
+                        });
+                    }
+                });
+                return committed;
+            }, committed -> { }, "Error adding expense: ");
+        }, "Error adding expense: ");
+    }
+
+    // A pending row whose submission failed; the requeried total drops its amount again
+    private void dropPending(Expense expense) {
+        tableModel.removePending(Collections.singletonList(expense));
+        updateTotal();
+    }
+
+    // Point the paged table model at the selected account; pages load as they are scrolled into view
+    private void updateTable() {
+        tableModel.setAccount((String) accountBox.getSelectedItem());
+        updateTotal();
+        updateReport();
+    }
+
+    // Narrow the table to the search words and category filter; the total stays the account's
+    private void applySearch() {
+        if (tableModel == null) {
+            return;
+        }
+        String category = categoryFilterBox.getSelectedIndex() > 0 ? (String) categoryFilterBox.getSelectedItem() : null;
+        tableModel.setFilter(searchField.getText(), category);
+    }
+
+    // Refresh the Reports tab for the selected account, if it is showing
+    private void updateReport() {
+        String selectedAccount = (String) accountBox.getSelectedItem();
+        if (tableModel == null || tabs.getSelectedComponent() != reportPanel || selectedAccount == null) {
+            return;
+        }
+        int year = (Integer) reportYearSpinner.getValue();
+        if (reportWorker != null) {
+            reportWorker.cancel(true);
+        }
+        reportWorker = read("gui.accountReport", () -> {
+            try (PooledConnection conn = db.reader()) {
+                int accountId = lookupAccountId(conn, selectedAccount);
+                AccountReport report = new AccountReport();
+                report.rollingSpend = ExpenseReports.rollingSpend(conn, accountId, LocalDate.now(), ROLLING_DAYS);
+                report.byCategory = ExpenseReports.categoryMonthTotals(conn, accountId, year);
+                report.yearOverYear = ExpenseReports.yearOverYear(conn, accountId, year);
+                return report;
+            }
+        }, this::showReport, "Error building report: ");
+    }
+
+    private void showReport(AccountReport report) {
+        rollingSpendLabel.setText(Money.format(report.rollingSpend));
+
+        categoryReportModel.setRowCount(0);
+        for (Map.Entry<String, long[]> category : report.byCategory.entrySet()) {
+            Object[] row = new Object[MONTHS.length + 2];
+            row[0] = category.getKey().isEmpty() ? "(none)" : category.getKey();
+            for (int m = 0; m < MONTHS.length; m++) {
+                row[m + 1] = Money.format(category.getValue()[m]);
+            }
+            row[row.length - 1] = Money.format(Money.sum(category.getValue(), 0, MONTHS.length));
+            categoryReportModel.addRow(row);
+        }
+
+        ExpenseReports.YearOverYear yoy = report.yearOverYear;
+        yearOverYearModel.setColumnIdentifiers(new Object[]{"Month", yoy.getYear(), yoy.getYear() - 1, "Change"});
+        yearOverYearModel.setRowCount(0);
+        for (int m = 0; m < MONTHS.length; m++) {
+            double change = yoy.change(m);
+            yearOverYearModel.addRow(new Object[]{MONTHS[m], Money.format(yoy.thisYear(m)), Money.format(yoy.lastYear(m)),
+                    Double.isNaN(change) ? "-" : String.format("%+.1f%%", change * 100)});
+        }
+        long thisYear = yoy.thisYearTotal();
+        long lastYear = yoy.lastYearTotal();
+        yearOverYearModel.addRow(new Object[]{"Total", Money.format(thisYear), Money.format(lastYear),
+                lastYear == 0 ? "-" : String.format("%+.1f%%", (thisYear - lastYear) * 100.0 / lastYear)});
+    }
+
+    private static DefaultTableModel readOnlyModel(String[] columns) {
+        return new DefaultTableModel(columns, 0) {
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+        };
+    }
+
+    // Update the total expense
+    private void updateTotal() {
+        String selectedAccount = (String) accountBox.getSelectedItem();
+
+        if (totalWorker != null) {
+            totalWorker.cancel(true);
+        }
+        totalWorker = read("gui.accountTotal", () -> {
+            try (PooledConnection conn = db.reader()) {
+                ColumnarExpenseStore columnar = db.columnar();
+                if (columnar != null) {
+                    return columnar.totalCents(lookupAccountId(conn, selectedAccount));
+                }
+                // Pre-aggregated buckets; no scan of the expenses table
+                return ExpenseSummary.accountTotal(conn, lookupAccountId(conn, selectedAccount));
+            }
+        }, total -> {
+            shownTotal = total;
+            totalLabel.setText(Money.format(total));
+        }, "Error calculating total: ");
+    }
+
+    // Reset form fields
+    private void resetForm() {
+        dateField.setText(LocalDate.now().toString());
+        descField.setText("");
+        amountField.setText("");
+    }
+
+    // Delete the selected expenses by id, all in one transaction, and take them out of the view
+    // without reloading it
+    private void deleteExpense() {
+        int[] rows = expenseTable.getSelectedRows();
+        if (rows.length == 0) {
+            JOptionPane.showMessageDialog(frame, "Please select an expense to delete.");
+            return;
+        }
+        ExpenseTableModel model = tableModel;
+        ExpenseTableModel.Selection selection = model.select(rows);
+        if (selection.size() == 0) {
+            JOptionPane.showMessageDialog(frame, "Expenses still being saved can be deleted once they are.");
+            return;
+        }
+
+        write("gui.deleteExpense", () -> {
+            List<long[]> idRanges;
+            try (PooledConnection conn = db.reader()) {
+                idRanges = model.idRanges(conn, selection);
+            }
+            try (PooledConnection conn = db.writer()) {
+                return ExpenseTracker.deleteExpenses(conn, selection.getAccountId(), idRanges); // Mirrored there too
+            }
+        }, deleted -> {
+            model.removeRows(selection, deleted);
+            updateTotal();
+            updateReport();
+            if (deleted < selection.size()) {
+                JOptionPane.showMessageDialog(frame, (selection.size() - deleted) + " of the selected expenses were not deleted: archived expenses are read-only.");
+            }
+        }, "Error deleting expenses: ");
+    }
+
+    // Delete an account and its expenses
+    private void deleteAccount() {
+        String accountName = (String) accountBox.getSelectedItem();
+        if (accountName == null) {
+            JOptionPane.showMessageDialog(frame, "Please select an account to delete.");
+            return;
+        }
+
+        // Confirm deletion
+        int confirm = JOptionPane.showConfirmDialog(frame, "Are you sure you want to delete the account '" + accountName + "'? All associated expenses will be deleted.", "Confirm Deletion", JOptionPane.YES_NO_OPTION);
+        if (confirm != JOptionPane.YES_OPTION) {
+            return;
+        }
+
+        write("gui.deleteAccount", () -> {
+            // Expenses of this account still queued would otherwise fail their foreign key once it is
+            // gone. New ones can't slip in: GUI submissions run on this same write executor.
+            expenseWriter.flush();
+            try (PooledConnection conn = db.writer()) {
+                int rows = ExpenseTracker.deleteAccount(conn, lookupAccountId(conn, accountName));
+                db.accounts().remove(accountName);
+                return rows;
+            }
+        }, rows -> {
+            // Update the account list in the combo box
+            updateAccountBox();
+            JOptionPane.showMessageDialog(frame, "Account deleted successfully.");
+        }, "Error deleting account: ");
+    }
+
+    // Export the selected account's expenses to a CSV file, streaming rows straight from the database
+    private void exportToCSV() {
+        String accountName = tableModel.getAccount();
+        JFileChooser fileChooser = new JFileChooser();
+        int result = fileChooser.showSaveDialog(frame);
+        if (result == JFileChooser.APPROVE_OPTION) {
+            File file = fileChooser.getSelectedFile();
+            CsvExporter exporter = new CsvExporter(db, file.getName().endsWith(".gz"));
+            read("gui.exportCsv", () -> exporter.export(file.toPath(), accountName, null, null),
+                    count -> JOptionPane.showMessageDialog(frame, "Exported " + count + " expenses."), "Error exporting data: ");
+        }
+    }
+
+    // Main method to launch the application
+    public static void main(String[] args) {
+        EdtStallDetector.install();
+        StartupSnapshot snapshot = StartupSnapshot.load(ExpenseTracker.DB_URL); // Read while the EDT starts up
+        SwingUtilities.invokeLater(() -> new ExpenseTrackerGUI(snapshot));
+    }
+}
@@ -0,0 +1,274 @@
+package expensetracker;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Just enough JSON for the HTTP API, without a library.
+// parse() gives Map (objects, key order kept), List, String, BigDecimal, Boolean or null;
+// malformed input is an IllegalArgumentException. Output is written by hand with quote().
+public final class Json {
+    private final String text;
+    private int pos;
+
+    private Json(String text) {
+        this.text = text;
+    }
+
+    public static Object parse(String text) {
+        Json parser = new Json(text);
+        Object value = parser.value();
+        parser.skipWhitespace();
+        if (parser.pos != text.length()) {
+            throw parser.error("Unexpected trailing characters");
+        }
+        return value;
+    }
+
+    // Append a JSON string literal
+    public static StringBuilder quote(StringBuilder out, String value) {
+        if (value == null) {
+            return out.append("null");
+        }
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"': out.append("\\\""); break;
+                case '\\': out.append("\\\\"); break;
+                case '\n': out.append("\\n"); break;
+                case '\r': out.append("\\r"); break;
+                case '\t': out.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        return out.append('"');
+    }
+
+    // Typed access to a parsed object's members
+    @SuppressWarnings("unchecked")
+    public static Map<String, Object> asObject(Object value) {
+        if (!(value instanceof Map)) {
+            throw new IllegalArgumentException("Expected a JSON object");
+        }
+        return (Map<String, Object>) value;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static List<Object> asArray(Object value) {
+        if (!(value instanceof List)) {
+            throw new IllegalArgumentException("Expected a JSON array");
+        }
+        return (List<Object>) value;
+    }
+
+    public static String getString(Map<String, Object> object, String name, boolean required) {
+        Object value = object.get(name);
+        if (value == null) {
+            if (required) {
+                throw new IllegalArgumentException("Missing '" + name + "'");
+            }
+            return null;
+        }
+        if (!(value instanceof String)) {
+            throw new IllegalArgumentException("'" + name + "' must be a string");
+        }
+        return (String) value;
+    }
+
+    public static int getInt(Map<String, Object> object, String name) {
+        Object value = object.get(name);
+        if (!(value instanceof BigDecimal)) {
+            throw new IllegalArgumentException("'" + name + "' must be a number");
+        }
+        try {
+            return ((BigDecimal) value).intValueExact();
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("'" + name + "' must be a whole number");
+        }
+    }
+
+    // Amount given either as a JSON number (12.5) or a string ("12.50"), in ledger minor units.
+    // A number's digits and exponent are checked before anything is scaled: 1e999999999 would
+    // otherwise expand to a billion digits.
+    public static long getAmount(Map<String, Object> object, String name) {
+        Object value = object.get(name);
+        if (value instanceof BigDecimal) {
+            BigDecimal amount = ((BigDecimal) value).stripTrailingZeros();
+            if (amount.scale() > Money.LEDGER_SCALE) {
+                throw new IllegalArgumentException("'" + name + "' has more than " + Money.LEDGER_SCALE + " decimal places");
+            }
+            if (amount.precision() - amount.scale() > 19 - Money.LEDGER_SCALE) {
+                throw new IllegalArgumentException("'" + name + "' is out of range");
+            }
+            try {
+                return amount.setScale(Money.LEDGER_SCALE).unscaledValue().longValueExact();
+            } catch (ArithmeticException e) {
+                throw new IllegalArgumentException("'" + name + "' is out of range");
+            }
+        }
+        if (value instanceof String) {
+            return Money.parseMinor((String) value);
+        }
+        throw new IllegalArgumentException("'" + name + "' must be an amount");
+    }
+
+    private Object value() {
+        skipWhitespace();
+        if (pos >= text.length()) {
+            throw error("Unexpected end of input");
+        }
+        char c = text.charAt(pos);
+        switch (c) {
+            case '{': return object();
+            case '[': return array();
+            case '"': return string();
+            case 't': return literal("true", Boolean.TRUE);
+            case 'f': return literal("false", Boolean.FALSE);
+            case 'n': return literal("null", null);
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    return number();
+                }
+                throw error("Unexpected character '" + c + "'");
+        }
+    }
+
+    private Map<String, Object> object() {
+        Map<String, Object> object = new LinkedHashMap<>();
+        pos++; // {
+        skipWhitespace();
+        if (peek() == '}') {
+            pos++;
+            return object;
+        }
+        while (true) {
+            skipWhitespace();
+            if (peek() != '"') {
+                throw error("Expected a member name");
+            }
+            String name = string();
+            skipWhitespace();
+            expect(':');
+            object.put(name, value());
+            skipWhitespace();
+            if (peek() == ',') {
+                pos++;
+            } else {
+                expect('}');
+                return object;
+            }
+        }
+    }
+
+    private List<Object> array() {
+        List<Object> array = new ArrayList<>();
+        pos++; // [
+        skipWhitespace();
+        if (peek() == ']') {
+            pos++;
+            return array;
+        }
+        while (true) {
+            array.add(value());
+            skipWhitespace();
+            if (peek() == ',') {
+                pos++;
+            } else {
+                expect(']');
+                return array;
+            }
+        }
+    }
+
+    private String string() {
+        pos++; // Opening quote
+        StringBuilder out = new StringBuilder();
+        while (true) {
+            if (pos >= text.length()) {
+                throw error("Unterminated string");
+            }
+            char c = text.charAt(pos++);
+            if (c == '"') {
+                return out.toString();
+            }
+            if (c != '\\') {
+                out.append(c);
+                continue;
+            }
+            if (pos >= text.length()) {
+                throw error("Unterminated escape");
+            }
+            char escape = text.charAt(pos++);
+            switch (escape) {
+                case '"': case '\\': case '/': out.append(escape); break;
+                case 'b': out.append('\b'); break;
+                case 'f': out.append('\f'); break;
+                case 'n': out.append('\n'); break;
+                case 'r': out.append('\r'); break;
+                case 't': out.append('\t'); break;
+                case 'u':
+                    if (pos + 4 > text.length()) {
+                        throw error("Bad unicode escape");
+                    }
+                    try {
+                        out.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+                    } catch (NumberFormatException e) {
+                        throw error("Bad unicode escape");
+                    }
+                    pos += 4;
+                    break;
+                default:
+                    throw error("Bad escape '\\" + escape + "'");
+            }
+        }
+    }
+
+    private BigDecimal number() {
+        int start = pos;
+        while (pos < text.length() && "+-0123456789.eE".indexOf(text.charAt(pos)) >= 0) {
+            pos++;
+        }
+        try {
+            return new BigDecimal(text.substring(start, pos));
+        } catch (NumberFormatException e) {
+            throw error("Bad number");
+        }
+    }
+
+    private Object literal(String word, Object value) {
+        if (!text.startsWith(word, pos)) {
+            throw error("Unexpected token");
+        }
+        pos += word.length();
+        return value;
+    }
+
+    private void expect(char c) {
+        if (peek() != c) {
+            throw error("Expected '" + c + "'");
+        }
+        pos++;
+    }
+
+    private char peek() {
+        return pos < text.length() ? text.charAt(pos) : '\0';
+    }
+
+    private void skipWhitespace() {
+        while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+            pos++;
+        }
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(message + " at position " + pos);
+    }
+}
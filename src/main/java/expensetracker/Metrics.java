@@ -0,0 +1,571 @@
+package expensetracker;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.FlightRecorderListener;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+// Latency histograms, row counts and counters for database work and UI actions.
+// Off by default: with -Dexpensetracker.metrics unset, Timer.start() is one static-final
+// branch returning a shared no-op Sample. Turned on, every timer is an MXBean under
+// "expensetracker:type=Timer", and -Dexpensetracker.metrics.dumpSeconds=N writes all of them
+// every N seconds to the log, or to -Dexpensetracker.metrics.file (JSON if it ends in .json).
+// Independently of that, while a JFR recording runs every sample is also a JFR event
+// (expensetracker.DatabaseOperation / expensetracker.UiAction); database events carry the UI
+// action they were started for, so a slow click can be lined up with the queries behind it.
+public final class Metrics {
+    private static final Logger logger = Logger.getLogger(Metrics.class.getName());
+
+    static final boolean ENABLED = Boolean.getBoolean("expensetracker.metrics");
+
+    private static final Map<String, Timer> timers = new ConcurrentHashMap<>();
+    private static final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private static final ThreadLocal<String> uiAction = new ThreadLocal<>();
+    private static final Set<Recording> runningRecordings = ConcurrentHashMap.newKeySet();
+    private static volatile boolean recording; // Some JFR recording is running
+
+    static {
+        // Registering with JFR takes tens of milliseconds, so not on whichever thread got here first
+        Thread jfr = new Thread(Metrics::watchRecordings, "metrics-jfr");
+        jfr.setDaemon(true);
+        jfr.start();
+        if (ENABLED) {
+            register("expensetracker:type=Metrics", new MetricsBean());
+            long dumpSeconds = Long.getLong("expensetracker.metrics.dumpSeconds", 0);
+            if (dumpSeconds > 0) {
+                String file = System.getProperty("expensetracker.metrics.file");
+                ScheduledExecutorService dumper = Executors.newSingleThreadScheduledExecutor(r -> {
+                    Thread t = new Thread(r, "metrics-dump");
+                    t.setDaemon(true);
+                    return t;
+                });
+                dumper.scheduleAtFixedRate(() -> dump(file == null ? null : Paths.get(file)), dumpSeconds, dumpSeconds, TimeUnit.SECONDS);
+            }
+        }
+    }
+
+    private Metrics() {
+    }
+
+    // Keep 'recording' in step with JFR, including recordings started before this ran
+    private static void watchRecordings() {
+        FlightRecorder.addListener(new FlightRecorderListener() {
+            @Override
+            public void recorderInitialized(FlightRecorder recorder) {
+                for (Recording r : recorder.getRecordings()) {
+                    recordingStateChanged(r);
+                }
+            }
+
+            @Override
+            public void recordingStateChanged(Recording r) {
+                if (r.getState() == RecordingState.RUNNING) {
+                    runningRecordings.add(r);
+                } else {
+                    runningRecordings.remove(r);
+                }
+                recording = !runningRecordings.isEmpty();
+            }
+        });
+    }
+
+    public interface TimerMXBean {
+        long getCount();
+        long getFailures();
+        long getRows();
+        double getMeanMillis();
+        double getP50Millis();
+        double getP99Millis();
+        double getMaxMillis();
+        long getRowsP50();
+        long getRowsMax();
+        void reset();
+    }
+
+    public interface CounterMXBean {
+        long getCount();
+        void reset();
+    }
+
+    public interface MetricsMXBean {
+        String getText();
+        String getJson();
+        void reset();
+    }
+
+    // The named timer, created on first use; keep it in a static final field on hot paths
+    public static Timer timer(String name) {
+        return timers.computeIfAbsent(name, Timer::new);
+    }
+
+    public static Counter counter(String name) {
+        return counters.computeIfAbsent(name, Counter::new);
+    }
+
+    // Start timing 'name', skipping even the lookup when nothing would be recorded
+    public static Sample start(String name) {
+        return ENABLED || recording ? timer(name).start() : Sample.NONE;
+    }
+
+    // Label background work on this thread with the UI action that asked for it (null to clear)
+    public static void setUiAction(String action) {
+        if (ENABLED || recording) {
+            uiAction.set(action);
+        }
+    }
+
+    public static String uiAction() {
+        return uiAction.get();
+    }
+
+    // Time one dispatch on the EDT; 'action' is built lazily because most events are uninteresting
+    public static Sample startUiAction(Supplier<String> action) {
+        if (!ENABLED && !recording) {
+            return Sample.NONE;
+        }
+        String name = action.get();
+        uiAction.set(name);
+        return timer("edt." + name).startUi(name);
+    }
+
+    // Log-linear buckets in the style of HdrHistogram: values below 128 are exact, above that
+    // each power of two is split into 64 buckets, so a reported value is within 1.6% of the real one.
+    static final class Histogram {
+        private static final int SUB_BUCKET_BITS = 6;
+        private static final int LINEAR = 2 << SUB_BUCKET_BITS; // 128
+        private static final int BUCKETS = LINEAR + (63 - SUB_BUCKET_BITS - 1) * (1 << SUB_BUCKET_BITS);
+
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        void record(long value) {
+            long v = Math.max(0, value);
+            counts.incrementAndGet(index(v));
+            count.increment();
+            sum.add(v);
+            max.accumulate(v);
+        }
+
+        long count() {
+            return count.sum();
+        }
+
+        long sum() {
+            return sum.sum();
+        }
+
+        long max() {
+            return max.get();
+        }
+
+        double mean() {
+            long n = count.sum();
+            return n == 0 ? 0 : (double) sum.sum() / n;
+        }
+
+        // Value at or below which p percent of the recorded values fall
+        long percentile(double p) {
+            long n = count.sum();
+            if (n == 0) {
+                return 0;
+            }
+            long target = Math.max(1, (long) Math.ceil(p / 100.0 * n));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts.get(i);
+                if (seen >= target) {
+                    return Math.min(max.get(), middle(i));
+                }
+            }
+            return max.get();
+        }
+
+        void reset() {
+            for (int i = 0; i < BUCKETS; i++) {
+                counts.set(i, 0);
+            }
+            count.reset();
+            sum.reset();
+            max.reset();
+        }
+
+        static int index(long v) {
+            if (v < LINEAR) {
+                return (int) v;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(v);
+            int shift = exponent - SUB_BUCKET_BITS;
+            return LINEAR + (exponent - SUB_BUCKET_BITS - 1) * (1 << SUB_BUCKET_BITS) + (int) ((v >>> shift) - (1 << SUB_BUCKET_BITS));
+        }
+
+        static long middle(int index) {
+            if (index < LINEAR) {
+                return index;
+            }
+            int exponent = (index - LINEAR) / (1 << SUB_BUCKET_BITS) + SUB_BUCKET_BITS + 1;
+            long subBucket = (index - LINEAR) % (1 << SUB_BUCKET_BITS) + (1 << SUB_BUCKET_BITS);
+            int shift = exponent - SUB_BUCKET_BITS;
+            return (subBucket << shift) + (1L << shift) / 2;
+        }
+    }
+
+    // Latency and row-count distribution of one kind of operation
+    public static final class Timer implements TimerMXBean {
+        private final String name;
+        private final Histogram nanos;
+        private final Histogram rows;
+        private final LongAdder failures;
+
+        private Timer(String name) {
+            this.name = name;
+            // Histograms cost ~30 KB each, so only when something will read them
+            this.nanos = ENABLED ? new Histogram() : null;
+            this.rows = ENABLED ? new Histogram() : null;
+            this.failures = ENABLED ? new LongAdder() : null;
+            if (ENABLED) {
+                register("expensetracker:type=Timer,name=" + ObjectName.quote(name), this);
+            }
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Sample start() {
+            if (!ENABLED && !recording) {
+                return Sample.NONE;
+            }
+            return new Sample(this, recording ? new DatabaseEvent(name) : null, null);
+        }
+
+        Sample startUi(String action) {
+            return new Sample(this, null, recording ? new UiActionEvent(action) : null);
+        }
+
+        void record(long elapsedNanos, long rowCount, boolean failed) {
+            if (!ENABLED) {
+                return;
+            }
+            nanos.record(elapsedNanos);
+            rows.record(rowCount);
+            if (failed) {
+                failures.increment();
+            }
+        }
+
+        @Override
+        public long getCount() {
+            return ENABLED ? nanos.count() : 0;
+        }
+
+        @Override
+        public long getFailures() {
+            return ENABLED ? failures.sum() : 0;
+        }
+
+        @Override
+        public long getRows() {
+            return ENABLED ? rows.sum() : 0;
+        }
+
+        @Override
+        public double getMeanMillis() {
+            return ENABLED ? nanos.mean() / 1e6 : 0;
+        }
+
+        @Override
+        public double getP50Millis() {
+            return ENABLED ? nanos.percentile(50) / 1e6 : 0;
+        }
+
+        @Override
+        public double getP99Millis() {
+            return ENABLED ? nanos.percentile(99) / 1e6 : 0;
+        }
+
+        @Override
+        public double getMaxMillis() {
+            return ENABLED ? nanos.max() / 1e6 : 0;
+        }
+
+        @Override
+        public long getRowsP50() {
+            return ENABLED ? rows.percentile(50) : 0;
+        }
+
+        @Override
+        public long getRowsMax() {
+            return ENABLED ? rows.max() : 0;
+        }
+
+        @Override
+        public void reset() {
+            if (ENABLED) {
+                nanos.reset();
+                rows.reset();
+                failures.reset();
+            }
+        }
+    }
+
+    // A running timing; stop() or fail() it exactly once
+    public static final class Sample {
+        static final Sample NONE = new Sample(null, null, null);
+
+        private final Timer timer;
+        private final long start;
+        private final DatabaseEvent event;
+        private final UiActionEvent uiEvent;
+
+        private Sample(Timer timer, DatabaseEvent event, UiActionEvent uiEvent) {
+            this.timer = timer;
+            this.event = event;
+            this.uiEvent = uiEvent;
+            if (event != null) {
+                event.uiAction = uiAction.get();
+                event.begin();
+            }
+            if (uiEvent != null) {
+                uiEvent.begin();
+            }
+            this.start = timer != null ? System.nanoTime() : 0;
+        }
+
+        public void stop(long rows) {
+            end(rows, false);
+        }
+
+        // The operation threw; SQLITE_BUSY failures are counted separately as lock contention
+        public void fail(Throwable e) {
+            if (timer == null) {
+                return;
+            }
+            if (e instanceof SQLException && Database.isBusy((SQLException) e)) {
+                counter("db.busy").increment();
+            }
+            end(0, true);
+        }
+
+        private void end(long rows, boolean failed) {
+            if (timer == null) {
+                return;
+            }
+            timer.record(System.nanoTime() - start, rows, failed);
+            if (event != null) {
+                event.end();
+                if (event.shouldCommit()) {
+                    event.rows = rows;
+                    event.failed = failed;
+                    event.commit();
+                }
+            }
+            if (uiEvent != null) {
+                uiEvent.end();
+                if (uiEvent.shouldCommit()) {
+                    uiEvent.commit();
+                }
+            }
+        }
+    }
+
+    public static final class Counter implements CounterMXBean {
+        private final LongAdder count = new LongAdder();
+
+        private Counter(String name) {
+            if (ENABLED) {
+                register("expensetracker:type=Counter,name=" + ObjectName.quote(name), this);
+            }
+        }
+
+        public void increment() {
+            if (ENABLED) {
+                count.increment();
+            }
+        }
+
+        public void add(long n) {
+            if (ENABLED) {
+                count.add(n);
+            }
+        }
+
+        @Override
+        public long getCount() {
+            return count.sum();
+        }
+
+        @Override
+        public void reset() {
+            count.reset();
+        }
+    }
+
+    @Name("expensetracker.DatabaseOperation")
+    @Label("Database Operation")
+    @Category("Expense Tracker")
+    @StackTrace(false)
+    static final class DatabaseEvent extends Event {
+        @Label("Operation")
+        String operation;
+
+        @Label("UI Action")
+        String uiAction;
+
+        @Label("Rows")
+        long rows;
+
+        @Label("Failed")
+        boolean failed;
+
+        DatabaseEvent(String operation) {
+            this.operation = operation;
+        }
+    }
+
+    @Name("expensetracker.UiAction")
+    @Label("UI Action")
+    @Category("Expense Tracker")
+    @StackTrace(false)
+    @Threshold("10 ms")
+    static final class UiActionEvent extends Event {
+        @Label("Action")
+        String action;
+
+        UiActionEvent(String action) {
+            this.action = action;
+        }
+    }
+
+    private static final class MetricsBean implements MetricsMXBean {
+        @Override
+        public String getText() {
+            return text();
+        }
+
+        @Override
+        public String getJson() {
+            return json();
+        }
+
+        @Override
+        public void reset() {
+            Metrics.reset();
+        }
+    }
+
+    public static void reset() {
+        timers.values().forEach(Timer::reset);
+        counters.values().forEach(Counter::reset);
+    }
+
+    // One line per timer and counter, sorted by name
+    public static String text() {
+        StringBuilder out = new StringBuilder();
+        for (Timer t : sorted(timers).values()) {
+            if (t.getCount() == 0) {
+                continue;
+            }
+            out.append(String.format("%-40s %,10d ops  %,12d rows  p50 %9.3f ms  p99 %9.3f ms  max %9.3f ms  failed %d%n",
+                    t.name, t.getCount(), t.getRows(), t.getP50Millis(), t.getP99Millis(), t.getMaxMillis(), t.getFailures()));
+        }
+        for (Map.Entry<String, Counter> c : sorted(counters).entrySet()) {
+            out.append(String.format("%-40s %,10d%n", c.getKey(), c.getValue().getCount()));
+        }
+        return out.toString();
+    }
+
+    public static String json() {
+        StringBuilder out = new StringBuilder("{\"timers\":{");
+        String separator = "";
+        for (Timer t : sorted(timers).values()) {
+            out.append(separator);
+            Json.quote(out, t.name).append(String.format(Locale.ROOT,
+                    ":{\"count\":%d,\"failures\":%d,\"rows\":%d,\"meanMillis\":%.4f,\"p50Millis\":%.4f,\"p99Millis\":%.4f,\"maxMillis\":%.4f,\"rowsP50\":%d,\"rowsMax\":%d}",
+                    t.getCount(), t.getFailures(), t.getRows(), t.getMeanMillis(), t.getP50Millis(), t.getP99Millis(), t.getMaxMillis(),
+                    t.getRowsP50(), t.getRowsMax()));
+            separator = ",";
+        }
+        out.append("},\"counters\":{");
+        separator = "";
+        for (Map.Entry<String, Counter> c : sorted(counters).entrySet()) {
+            out.append(separator);
+            Json.quote(out, c.getKey()).append(':').append(c.getValue().getCount());
+            separator = ",";
+        }
+        return out.append("}}").toString();
+    }
+
+    private static <T> Map<String, T> sorted(Map<String, T> map) {
+        return new TreeMap<>(map);
+    }
+
+    // Write every metric to 'file' (replaced atomically) or, without one, to the log
+    static void dump(Path file) {
+        if (file == null) {
+            logger.info("Metrics:\n" + text());
+            return;
+        }
+        try {
+            String content = file.toString().endsWith(".json") ? json() : text();
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.write(tmp, content.getBytes(StandardCharsets.UTF_8));
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warning("Could not write metrics to " + file + ": " + e.getMessage());
+        }
+    }
+
+    // Rows in a task's result, for timers around code that returns a count or a list
+    static long rowsOf(Object result) {
+        if (result instanceof Number) {
+            return ((Number) result).longValue();
+        }
+        if (result instanceof Collection) {
+            return ((Collection<?>) result).size();
+        }
+        if (result instanceof Map) {
+            return ((Map<?, ?>) result).size();
+        }
+        return 0;
+    }
+
+    private static void register(String name, Object bean) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(bean, new ObjectName(name));
+        } catch (JMException e) {
+            logger.warning("Could not register " + name + " with JMX: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package expensetracker;
+
+import java.math.BigDecimal;
+import java.util.Currency;
+
+// Exact amount of money: a long count of minor units (cents for USD) plus an ISO-4217 code.
+// The database stores amounts as INTEGER minor units of the ledger currency, so sums are exact
+// at any row count. The static helpers parse, format and add raw minor units without creating
+// objects, for hot loops that never need a Money instance.
+public final class Money implements Comparable<Money> {
+    // Currency every stored amount is in; -Dexpensetracker.currency=EUR for another ledger
+    public static final String LEDGER_CURRENCY = System.getProperty("expensetracker.currency", "USD");
+    public static final int LEDGER_SCALE = scale(LEDGER_CURRENCY);
+
+    private static final long[] POWERS_OF_TEN = {1, 10, 100, 1_000, 10_000, 100_000, 1_000_000};
+
+    private final long minorUnits;
+    private final String currency;
+
+    private Money(long minorUnits, String currency) {
+        this.minorUnits = minorUnits;
+        this.currency = currency;
+    }
+
+    public static Money of(long minorUnits, String currency) {
+        Currency.getInstance(currency); // Rejects unknown codes
+        return new Money(minorUnits, currency);
+    }
+
+    // An amount in the ledger currency
+    public static Money ofMinor(long minorUnits) {
+        return new Money(minorUnits, LEDGER_CURRENCY);
+    }
+
+    // "12.5" -> 12.50 in the ledger currency
+    public static Money parse(CharSequence text) {
+        return new Money(parseMinor(text, 0, text.length(), LEDGER_SCALE), LEDGER_CURRENCY);
+    }
+
+    public static Money parse(CharSequence text, String currency) {
+        return of(parseMinor(text, 0, text.length(), scale(currency)), currency);
+    }
+
+    public long getMinorUnits() {
+        return minorUnits;
+    }
+
+    public String getCurrency() {
+        return currency;
+    }
+
+    // Minor units, provided the amount is in the given currency
+    public long minorUnitsIn(String currency) {
+        if (!this.currency.equals(currency)) {
+            throw new IllegalArgumentException("Expected an amount in " + currency + ", got " + this);
+        }
+        return minorUnits;
+    }
+
+    public Money plus(Money other) {
+        return new Money(Math.addExact(minorUnits, other.minorUnitsIn(currency)), currency);
+    }
+
+    public Money negate() {
+        return new Money(Math.negateExact(minorUnits), currency);
+    }
+
+    public boolean isPositive() {
+        return minorUnits > 0;
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        return Long.compare(minorUnits, other.minorUnitsIn(currency));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Money && ((Money) o).minorUnits == minorUnits && ((Money) o).currency.equals(currency);
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(minorUnits) * 31 + currency.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return appendMinor(new StringBuilder(24), minorUnits, scale(currency)).append(' ').append(currency).toString();
+    }
+
+    // Digits after the decimal point for a currency (2 for USD, 0 for JPY)
+    public static int scale(String currency) {
+        return Math.max(0, Currency.getInstance(currency).getDefaultFractionDigits());
+    }
+
+    // Parse a plain decimal ("-1234.5") into ledger minor units
+    public static long parseMinor(CharSequence text) {
+        return parseMinor(text, 0, text.length(), LEDGER_SCALE);
+    }
+
+    // Parse text[start, end) as an optionally signed decimal with at most 'scale' fraction digits.
+    // Surrounding whitespace is ignored. More fraction digits than the currency has, or a value
+    // outside the long range, is an error rather than a silent rounding.
+    public static long parseMinor(CharSequence text, int start, int end, int scale) {
+        while (start < end && Character.isWhitespace(text.charAt(start))) {
+            start++;
+        }
+        while (end > start && Character.isWhitespace(text.charAt(end - 1))) {
+            end--;
+        }
+        int i = start;
+        boolean negative = false;
+        if (i < end && (text.charAt(i) == '-' || text.charAt(i) == '+')) {
+            negative = text.charAt(i) == '-';
+            i++;
+        }
+        long value = 0;
+        int digits = 0;
+        int fractionDigits = -1; // -1 until the decimal point
+        try {
+            for (; i < end; i++) {
+                char c = text.charAt(i);
+                if (c == '.' && fractionDigits < 0) {
+                    fractionDigits = 0;
+                } else if (c >= '0' && c <= '9') {
+                    if (fractionDigits >= 0 && ++fractionDigits > scale) {
+                        throw new NumberFormatException("More than " + scale + " decimal places: " + text.subSequence(start, end));
+                    }
+                    value = Math.addExact(Math.multiplyExact(value, 10), c - '0');
+                    digits++;
+                } else {
+                    throw new NumberFormatException("Not an amount: " + text.subSequence(start, end));
+                }
+            }
+            if (digits == 0) {
+                throw new NumberFormatException("Not an amount: " + text.subSequence(start, end));
+            }
+            value = Math.multiplyExact(value, POWERS_OF_TEN[scale - Math.max(0, fractionDigits)]);
+        } catch (ArithmeticException e) {
+            throw new NumberFormatException("Amount out of range: " + text.subSequence(start, end));
+        }
+        return negative ? -value : value;
+    }
+
+    // Ledger minor units as a plain decimal ("-12.50")
+    public static String format(long minorUnits) {
+        return appendMinor(new StringBuilder(24), minorUnits, LEDGER_SCALE).toString();
+    }
+
+    // Append minor units as a plain decimal with exactly 'scale' fraction digits
+    public static StringBuilder appendMinor(StringBuilder out, long minorUnits, int scale) {
+        if (scale == 0) {
+            return out.append(minorUnits);
+        }
+        if (minorUnits == Long.MIN_VALUE) {
+            return out.append(BigDecimal.valueOf(minorUnits, scale).toPlainString()); // Has no positive counterpart
+        }
+        long power = POWERS_OF_TEN[scale];
+        long units = minorUnits / power;
+        long fraction = Math.abs(minorUnits % power);
+        if (minorUnits < 0) {
+            out.append('-');
+        }
+        out.append(Math.abs(units)).append('.');
+        for (long p = power / 10; p > 0; p /= 10) {
+            out.append((char) ('0' + fraction / p % 10));
+        }
+        return out;
+    }
+
+    // Sum of values[from, to); throws ArithmeticException instead of wrapping around
+    public static long sum(long[] values, int from, int to) {
+        long total = 0;
+        for (int i = from; i < to; i++) {
+            total = Math.addExact(total, values[i]);
+        }
+        return total;
+    }
+}
@@ -0,0 +1,153 @@
+package expensetracker;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Two-way name <-> id map of a small lookup table (accounts, categories) of one database, so
+// queries bind integer ids instead of resolving a name with a subselect every time.
+// Loaded on first use and replaced as a whole on every change, so lookups are plain reads of
+// immutable maps from any thread. A name or id it doesn't know makes it reload once, which also
+// picks up rows other processes wrote; code that writes the table itself calls put, remove or
+// invalidate. Connections passed in are only used to (re)load.
+public class NameDictionary {
+    private final String table;
+    private final Metrics.Timer loadTimer;
+    private volatile Entries entries; // Null until first used or after invalidate()
+
+    private static final class Entries {
+        final Map<String, Integer> ids; // In id order
+        final Map<Integer, String> names;
+
+        Entries(Map<String, Integer> ids, Map<Integer, String> names) {
+            this.ids = Collections.unmodifiableMap(ids);
+            this.names = Collections.unmodifiableMap(names);
+        }
+    }
+
+    NameDictionary(String table) {
+        this.table = table;
+        this.loadTimer = Metrics.timer("db.dictionary." + table);
+    }
+
+    // Id of a name, -1 if there is none
+    public int idOf(PooledConnection conn, String name) throws SQLException {
+        if (name == null) {
+            return -1;
+        }
+        Integer id = loaded(conn).ids.get(name);
+        if (id == null) {
+            id = reload(conn).ids.get(name);
+        }
+        return id == null ? -1 : id;
+    }
+
+    // Name of an id, null if there is none (SQL NULL reads as 0, which is never an id)
+    public String nameOf(PooledConnection conn, int id) throws SQLException {
+        if (id <= 0) {
+            return null;
+        }
+        String name = loaded(conn).names.get(id);
+        if (name == null) {
+            name = reload(conn).names.get(id);
+        }
+        return name;
+    }
+
+    // Every name, in id order
+    public List<String> names(PooledConnection conn) throws SQLException {
+        return new ArrayList<>(loaded(conn).ids.keySet());
+    }
+
+    // Every name and its id, in id order; unmodifiable
+    public Map<String, Integer> ids(PooledConnection conn) throws SQLException {
+        return loaded(conn).ids;
+    }
+
+    // Id of a name, inserting it first if the table doesn't have it yet. 'conn' must be the
+    // writer; a new row is part of the caller's transaction, so a caller that rolls it back
+    // must invalidate() before the writer is handed on.
+    int intern(PooledConnection conn, String name) throws SQLException {
+        Integer known = loaded(conn).ids.get(name);
+        if (known != null) {
+            return known;
+        }
+        PreparedStatement insert = conn.prepare("INSERT OR IGNORE INTO " + table + " (name) VALUES (?)");
+        insert.setString(1, name);
+        insert.executeUpdate();
+        PreparedStatement select = conn.prepare("SELECT id FROM " + table + " WHERE name = ?");
+        select.setString(1, name);
+        int id;
+        try (ResultSet rs = select.executeQuery()) {
+            if (!rs.next()) {
+                throw new SQLException("No id for '" + name + "' in " + table);
+            }
+            id = rs.getInt(1);
+        }
+        put(id, name);
+        return id;
+    }
+
+    // A row was added (or renamed) by a committed write
+    public synchronized void put(int id, String name) {
+        Entries current = entries;
+        if (current == null) {
+            return; // Loaded with it when first needed
+        }
+        Map<String, Integer> ids = new LinkedHashMap<>(current.ids);
+        Map<Integer, String> names = new HashMap<>(current.names);
+        String oldName = names.put(id, name);
+        if (oldName != null) {
+            ids.remove(oldName);
+        }
+        ids.put(name, id);
+        entries = new Entries(ids, names);
+    }
+
+    // A row was deleted by a committed write
+    public synchronized void remove(String name) {
+        Entries current = entries;
+        if (current == null || !current.ids.containsKey(name)) {
+            return;
+        }
+        Map<String, Integer> ids = new LinkedHashMap<>(current.ids);
+        Map<Integer, String> names = new HashMap<>(current.names);
+        names.remove(ids.remove(name));
+        entries = new Entries(ids, names);
+    }
+
+    // Forget everything; the next lookup reloads the table
+    public void invalidate() {
+        entries = null;
+    }
+
+    private Entries loaded(PooledConnection conn) throws SQLException {
+        Entries current = entries;
+        return current != null ? current : reload(conn);
+    }
+
+    private synchronized Entries reload(PooledConnection conn) throws SQLException {
+        Map<String, Integer> ids = new LinkedHashMap<>();
+        Map<Integer, String> names = new HashMap<>();
+        Metrics.Sample sample = loadTimer.start();
+        try (ResultSet rs = conn.prepare("SELECT id, name FROM " + table + " ORDER BY id").executeQuery()) {
+            while (rs.next()) {
+                ids.put(rs.getString(2), rs.getInt(1));
+                names.put(rs.getInt(1), rs.getString(2));
+            }
+            sample.stop(ids.size());
+        } catch (SQLException e) {
+            sample.fail(e);
+            throw e;
+        }
+        Entries loaded = new Entries(ids, names);
+        entries = loaded;
+        return loaded;
+    }
+}
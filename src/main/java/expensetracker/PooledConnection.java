@@ -0,0 +1,111 @@
+package expensetracker;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+// A connection leased from Database, with a per-connection prepared-statement cache.
+// Closing the lease hands the connection back; statements from prepare() stay open and
+// must not be closed by the caller (their ResultSets must be). The cache keeps the most
+// recently used statements only, since SQL text varies with attached partitions and search
+// filters; an evicted statement stays usable until the lease ends and is closed then.
+// Archive partitions attached to the connection stay attached across leases.
+public class PooledConnection implements AutoCloseable {
+    private final Database database;
+    private final Connection conn;
+    private final Consumer<PooledConnection> release;
+    private final int statementCacheSize; // 0 = no cache, every statement is closed with its lease
+    private final Map<String, PreparedStatement> statements;
+    private final List<PreparedStatement> leaseStatements = new ArrayList<>(); // Uncached or evicted, closed on release
+    private final Map<String, String> attached = new LinkedHashMap<>(); // Schema name -> file, see ExpenseArchive
+
+    PooledConnection(Database database, Connection conn, int statementCacheSize, Consumer<PooledConnection> release) {
+        this.database = database;
+        this.conn = conn;
+        this.statementCacheSize = statementCacheSize;
+        this.release = release;
+        this.statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if (size() <= statementCacheSize) {
+                    return false;
+                }
+                forThisLease(eldest.getValue()); // The current lease may still be using it
+                return true;
+            }
+        };
+    }
+
+    public Connection connection() {
+        return conn;
+    }
+
+    // The database this connection belongs to, for its account and category dictionaries
+    public Database database() {
+        return database;
+    }
+
+    // Databases ATTACHed to this connection, by schema name, oldest first
+    Map<String, String> attached() {
+        return attached;
+    }
+
+    // Cached statement for this SQL on this connection
+    public PreparedStatement prepare(String sql) throws SQLException {
+        if (statementCacheSize == 0) {
+            return forThisLease(conn.prepareStatement(sql));
+        }
+        PreparedStatement stmt = statements.get(sql);
+        if (stmt == null || stmt.isClosed()) {
+            stmt = conn.prepareStatement(sql);
+            statements.put(sql, stmt);
+        }
+        return stmt;
+    }
+
+    // Cached statement that reports generated keys
+    public PreparedStatement prepareReturningKeys(String sql) throws SQLException {
+        if (statementCacheSize == 0) {
+            return forThisLease(conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS));
+        }
+        String key = "KEYS:" + sql;
+        PreparedStatement stmt = statements.get(key);
+        if (stmt == null || stmt.isClosed()) {
+            stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+            statements.put(key, stmt);
+        }
+        return stmt;
+    }
+
+    private PreparedStatement forThisLease(PreparedStatement stmt) {
+        leaseStatements.add(stmt);
+        return stmt;
+    }
+
+    @Override
+    public void close() {
+        for (PreparedStatement stmt : leaseStatements) {
+            try {
+                stmt.close();
+            } catch (SQLException e) {
+                // Nothing useful to do; the connection itself stays usable
+            }
+        }
+        leaseStatements.clear();
+        release.accept(this);
+    }
+
+    void closeConnection() throws SQLException {
+        for (PreparedStatement stmt : statements.values()) {
+            stmt.close();
+        }
+        statements.clear();
+        conn.close();
+    }
+}
@@ -0,0 +1,417 @@
+package expensetracker;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+// Versioned schema for ExpensesDB.db, shared by ExpenseTracker and ExpenseTrackerGUI.
+// The applied version lives in PRAGMA user_version; every step runs in its own transaction
+// and is written so it also brings forward databases created by older versions of either class.
+public class SchemaMigrations {
+    private static final Logger logger = Logger.getLogger(SchemaMigrations.class.getName());
+
+    private interface Migration {
+        void apply(Statement stmt) throws SQLException;
+    }
+
+    // Index = version reached after the step; never reorder or edit a released step
+    private static final Migration[] MIGRATIONS = {
+        SchemaMigrations::createBaseTables,
+        SchemaMigrations::addCategoryColumn,
+        SchemaMigrations::uniqueAccountNames,
+        SchemaMigrations::addEpochDay,
+        SchemaMigrations::addExpenseIndexes,
+        stmt -> ExpenseSummary.install(stmt.getConnection()),
+        SchemaMigrations::addAccountBalance,
+        stmt -> ExpenseSearch.install(stmt.getConnection()),
+        SchemaMigrations::amountsToMinorUnits,
+        stmt -> ExpenseReports.install(stmt.getConnection()),
+        stmt -> ExpenseJournal.install(stmt.getConnection()),
+        SchemaMigrations::categoryIds,
+        stmt -> ExpenseArchive.install(stmt.getConnection()),
+        SchemaMigrations::bypassableDeleteTriggers,
+    };
+
+    // Queries on the hot path; none of them may fall back to a full table scan
+    static final String[] HOT_QUERIES = {
+        "SELECT IFNULL(SUM(row_count), 0) FROM expense_totals WHERE account_id = ?",
+        "SELECT e.id, e.date, e.description, e.amount, e.category_id FROM expenses e WHERE e.account_id = ? AND e.id > ? ORDER BY e.id LIMIT ?",
+        "SELECT e.id FROM expenses e WHERE e.account_id = ? AND e.id > ? ORDER BY e.id LIMIT 1 OFFSET ?",
+        "SELECT SUM(amount) FROM expenses WHERE account_id = ? AND epoch_day BETWEEN ? AND ?",
+        "SELECT e.account_id, e.date, e.description, e.amount, e.category_id FROM expenses e WHERE 1 = 1 AND e.account_id = ? ORDER BY e.account_id, e.id",
+        "SELECT IFNULL(SUM(total), 0) FROM expense_totals WHERE account_id = ?",
+        "SELECT e.id, e.date, e.description, e.amount, e.category_id FROM expenses e WHERE e.account_id = ? ORDER BY e.id",
+        "SELECT e.id, e.account_id, e.date, e.description, e.amount, e.category_id FROM (SELECT f.rowid AS id, e.account_id, e.date, "
+                + "e.description, e.amount, e.category_id, e.epoch_day FROM main.expenses_fts f JOIN main.expenses e ON e.id = f.rowid "
+                + "WHERE f.expenses_fts MATCH ?) e WHERE 1 = 1 AND e.account_id = ? AND e.id > ? ORDER BY e.id LIMIT ?",
+        "SELECT IFNULL(SUM(total), 0) FROM expense_daily_totals WHERE account_id = ? AND epoch_day BETWEEN ? AND ?",
+        "SELECT month, SUM(total) FROM expense_totals WHERE account_id = ? AND month BETWEEN ? AND ? GROUP BY month",
+        "DELETE FROM expenses WHERE account_id = ? AND id BETWEEN ? AND ?",
+    };
+
+    // Condition of every delete trigger on expenses; see createTriggerControl
+    static final String UNLESS_BYPASSED = "WHEN NOT (SELECT bypass FROM expense_trigger_control)";
+
+    // From here on the expenses table enforces NOT NULL on account_id, date, description and amount
+    private static final int NOT_NULL_VERSION = 9;
+
+    public static int latestVersion() {
+        return MIGRATIONS.length;
+    }
+
+    // Bring the database up to the latest version
+    public static void migrate(Connection conn) throws SQLException {
+        int version = currentVersion(conn);
+        if (version > MIGRATIONS.length) {
+            throw new SQLException("Database schema version " + version + " is newer than this program (" + MIGRATIONS.length + ")");
+        }
+        if (version == MIGRATIONS.length) {
+            return;
+        }
+        boolean autoCommit = conn.getAutoCommit();
+        boolean foreignKeys;
+        try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery("PRAGMA foreign_keys")) {
+            foreignKeys = rs.next() && rs.getInt(1) == 1;
+        }
+        // Off while steps rebuild tables: a dropped parent must not cascade into its children, and
+        // old databases may still hold expenses of accounts deleted long ago
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("PRAGMA foreign_keys = OFF");
+        }
+        try {
+            for (int next = version + 1; next <= MIGRATIONS.length; next++) {
+                conn.setAutoCommit(false);
+                try (Statement stmt = conn.createStatement()) {
+                    if (next == version + 1 && version < NOT_NULL_VERSION) {
+                        quarantineIncompleteExpenses(stmt);
+                    }
+                    MIGRATIONS[next - 1].apply(stmt);
+                    stmt.executeUpdate("PRAGMA user_version = " + next);
+                    conn.commit();
+                    logger.info("Database migrated to schema version " + next + ".");
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw new SQLException("Migration to schema version " + next + " failed: " + e.getMessage(), e);
+                }
+            }
+        } finally {
+            conn.setAutoCommit(autoCommit);
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("PRAGMA foreign_keys = " + (foreignKeys ? "ON" : "OFF"));
+            }
+        }
+    }
+
+    public static int currentVersion(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery("PRAGMA user_version")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    // 1: the tables both classes used to create on their own
+    private static void createBaseTables(Statement stmt) throws SQLException {
+        stmt.executeUpdate(
+            "CREATE TABLE IF NOT EXISTS accounts (" +
+            "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+            "name TEXT NOT NULL UNIQUE);"
+        );
+        stmt.executeUpdate(
+            "CREATE TABLE IF NOT EXISTS expenses (" +
+            "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+            "account_id INTEGER NOT NULL, " +
+            "date TEXT NOT NULL, " +
+            "description TEXT NOT NULL, " +
+            "amount REAL NOT NULL, " +
+            "category TEXT, " +
+            "FOREIGN KEY (account_id) REFERENCES accounts(id) " +
+            "ON DELETE CASCADE ON UPDATE CASCADE);"
+        );
+    }
+
+    // 2: ExpenseTracker databases predating the category column
+    private static void addCategoryColumn(Statement stmt) throws SQLException {
+        if (!hasColumn(stmt, "expenses", "category")) {
+            stmt.executeUpdate("ALTER TABLE expenses ADD COLUMN category TEXT");
+        }
+    }
+
+    // 3: GUI databases allowed duplicate account names; fold duplicates into the oldest id
+    private static void uniqueAccountNames(Statement stmt) throws SQLException {
+        stmt.executeUpdate(
+            "UPDATE expenses SET account_id = (" +
+            "SELECT MIN(a2.id) FROM accounts a1 JOIN accounts a2 ON a2.name = a1.name WHERE a1.id = expenses.account_id) " +
+            "WHERE account_id IN (SELECT a1.id FROM accounts a1 JOIN accounts a2 ON a2.name = a1.name AND a2.id < a1.id)"
+        );
+        stmt.executeUpdate("DELETE FROM accounts WHERE id NOT IN (SELECT MIN(id) FROM accounts GROUP BY name)");
+        if (!hasUniqueIndexOn(stmt, "accounts", "name")) {
+            stmt.executeUpdate("CREATE UNIQUE INDEX IF NOT EXISTS idx_accounts_name ON accounts(name)");
+        }
+    }
+
+    // 4: sortable integer date (days since 1970-01-01) next to the display text
+    private static void addEpochDay(Statement stmt) throws SQLException {
+        if (!hasColumn(stmt, "expenses", "epoch_day")) {
+            stmt.executeUpdate("ALTER TABLE expenses ADD COLUMN epoch_day INTEGER");
+        }
+        stmt.executeUpdate("UPDATE expenses SET epoch_day = CAST(julianday(date) - 2440587.5 AS INTEGER) WHERE epoch_day IS NULL");
+        // Writers set epoch_day themselves; these only catch inserts and edits that don't
+        stmt.executeUpdate(
+            "CREATE TRIGGER IF NOT EXISTS expenses_epoch_day_insert AFTER INSERT ON expenses WHEN NEW.epoch_day IS NULL BEGIN " +
+            "UPDATE expenses SET epoch_day = CAST(julianday(NEW.date) - 2440587.5 AS INTEGER) WHERE id = NEW.id; END;"
+        );
+        stmt.executeUpdate(
+            "CREATE TRIGGER IF NOT EXISTS expenses_epoch_day_update AFTER UPDATE OF date ON expenses BEGIN " +
+            "UPDATE expenses SET epoch_day = CAST(julianday(NEW.date) - 2440587.5 AS INTEGER) WHERE id = NEW.id; END;"
+        );
+    }
+
+    // 5: per-account lookups and account + date range sums (covering, amount included).
+    // idx_expenses_account is (account_id, rowid), so it also serves "account_id = ? ORDER BY id".
+    private static void addExpenseIndexes(Statement stmt) throws SQLException {
+        stmt.executeUpdate("CREATE INDEX IF NOT EXISTS idx_expenses_account ON expenses(account_id)");
+        stmt.executeUpdate("CREATE INDEX IF NOT EXISTS idx_expenses_account_day ON expenses(account_id, epoch_day, amount)");
+    }
+
+    // 7: account balances for transfers, in minor units (cents)
+    private static void addAccountBalance(Statement stmt) throws SQLException {
+        if (!hasColumn(stmt, "accounts", "balance")) {
+            stmt.executeUpdate("ALTER TABLE accounts ADD COLUMN balance INTEGER NOT NULL DEFAULT 0");
+        }
+    }
+
+    // 9: exact amounts, INTEGER minor units of the ledger currency instead of REAL.
+    // SQLite can't change a column's type, so the table is rebuilt under the same ids and
+    // everything hanging off it (indexes, triggers, summary table) is put back.
+    private static void amountsToMinorUnits(Statement stmt) throws SQLException {
+        long lastId = lastExpenseId(stmt);
+        long unitsPerMajor = Math.round(Math.pow(10, Money.LEDGER_SCALE));
+        stmt.executeUpdate(
+            "CREATE TABLE expenses_new (" +
+            "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+            "account_id INTEGER NOT NULL, " +
+            "date TEXT NOT NULL, " +
+            "description TEXT NOT NULL, " +
+            "amount INTEGER NOT NULL, " +
+            "category TEXT, " +
+            "epoch_day INTEGER, " +
+            "FOREIGN KEY (account_id) REFERENCES accounts(id) " +
+            "ON DELETE CASCADE ON UPDATE CASCADE);"
+        );
+        stmt.executeUpdate(
+            "INSERT INTO expenses_new (id, account_id, date, description, amount, category, epoch_day) " +
+            "SELECT id, account_id, date, description, CAST(ROUND(amount * " + unitsPerMajor + ") AS INTEGER), category, epoch_day FROM expenses"
+        );
+        stmt.executeUpdate("DROP TABLE expenses"); // Its indexes and triggers go with it
+        stmt.executeUpdate("ALTER TABLE expenses_new RENAME TO expenses");
+        keepExpenseIds(stmt, lastId);
+
+        addEpochDay(stmt);
+        addExpenseIndexes(stmt);
+        stmt.executeUpdate("DROP TABLE IF EXISTS expense_totals");
+        ExpenseSummary.install(stmt.getConnection());
+        ExpenseSearch.install(stmt.getConnection()); // Same rowids, so only the triggers need recreating
+    }
+
+    // 12: categories as small integer ids into a lookup table instead of the name on every row.
+    // The table is rebuilt as in step 9; the month buckets are re-keyed on the id.
+    private static void categoryIds(Statement stmt) throws SQLException {
+        stmt.executeUpdate(
+            "CREATE TABLE IF NOT EXISTS categories (" +
+            "id INTEGER PRIMARY KEY, " +
+            "name TEXT NOT NULL UNIQUE);"
+        );
+        stmt.executeUpdate("INSERT OR IGNORE INTO categories (name) SELECT DISTINCT category FROM expenses WHERE category IS NOT NULL ORDER BY category");
+
+        long lastId = lastExpenseId(stmt);
+        stmt.executeUpdate(
+            "CREATE TABLE expenses_new (" +
+            "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+            "account_id INTEGER NOT NULL, " +
+            "date TEXT NOT NULL, " +
+            "description TEXT NOT NULL, " +
+            "amount INTEGER NOT NULL, " +
+            "category_id INTEGER, " +
+            "epoch_day INTEGER, " +
+            "FOREIGN KEY (account_id) REFERENCES accounts(id) " +
+            "ON DELETE CASCADE ON UPDATE CASCADE, " +
+            "FOREIGN KEY (category_id) REFERENCES categories(id));"
+        );
+        stmt.executeUpdate(
+            "INSERT INTO expenses_new (id, account_id, date, description, amount, category_id, epoch_day) " +
+            "SELECT e.id, e.account_id, e.date, e.description, e.amount, c.id, e.epoch_day " +
+            "FROM expenses e LEFT JOIN categories c ON c.name = e.category"
+        );
+        stmt.executeUpdate("DROP TABLE expenses");
+        stmt.executeUpdate("ALTER TABLE expenses_new RENAME TO expenses");
+        keepExpenseIds(stmt, lastId);
+
+        addEpochDay(stmt);
+        addExpenseIndexes(stmt);
+        stmt.executeUpdate("DROP TABLE IF EXISTS expense_totals");
+        ExpenseSummary.install(stmt.getConnection());
+        ExpenseSearch.install(stmt.getConnection());
+        ExpenseReports.install(stmt.getConnection()); // Day buckets are unchanged; only their triggers went
+    }
+
+    // Tables created by the first ExpenseTrackerGUI had no NOT NULL columns, and its insert gave an
+    // unknown account name a NULL account_id. Such rows abort the summary (step 6) and the rebuild
+    // (step 9), so they are moved aside, untouched and still in major units, before either runs.
+    private static void quarantineIncompleteExpenses(Statement stmt) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery("SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = 'expenses'")) {
+            if (!rs.next()) {
+                return;
+            }
+        }
+        String incomplete = "account_id IS NULL OR date IS NULL OR description IS NULL OR amount IS NULL";
+        String category = hasColumn(stmt, "expenses", "category") ? "category" : "NULL";
+        stmt.executeUpdate(
+            "CREATE TABLE IF NOT EXISTS expenses_quarantine (" +
+            "id INTEGER PRIMARY KEY, " +
+            "account_id INTEGER, " +
+            "date TEXT, " +
+            "description TEXT, " +
+            "amount REAL, " +
+            "category TEXT);"
+        );
+        int moved = stmt.executeUpdate("INSERT OR REPLACE INTO expenses_quarantine (id, account_id, date, description, amount, category) " +
+                "SELECT id, account_id, date, description, amount, " + category + " FROM expenses WHERE " + incomplete);
+        if (moved > 0) {
+            stmt.executeUpdate("DELETE FROM expenses WHERE " + incomplete);
+            logger.warning("Moved " + moved + " expenses missing an account, date, description or amount to expenses_quarantine.");
+        }
+    }
+
+    // 14: the delete triggers check a flag, so a bulk delete can stand them aside without a schema change
+    private static void bypassableDeleteTriggers(Statement stmt) throws SQLException {
+        createTriggerControl(stmt);
+        stmt.executeUpdate("DROP TRIGGER IF EXISTS expense_totals_delete");
+        stmt.executeUpdate("DROP TRIGGER IF EXISTS expense_daily_totals_delete");
+        stmt.executeUpdate("DROP TRIGGER IF EXISTS expenses_fts_delete");
+        ExpenseSummary.install(stmt.getConnection());
+        ExpenseSearch.install(stmt.getConnection());
+        ExpenseReports.install(stmt.getConnection());
+    }
+
+    // One row whose bypass flag the delete triggers check. A writer sets it only inside its own
+    // transaction and clears it before committing, so no other connection ever sees it set.
+    static void createTriggerControl(Statement stmt) throws SQLException {
+        stmt.executeUpdate(
+            "CREATE TABLE IF NOT EXISTS expense_trigger_control (" +
+            "id INTEGER PRIMARY KEY CHECK (id = 1), " +
+            "bypass INTEGER NOT NULL);"
+        );
+        stmt.executeUpdate("INSERT OR IGNORE INTO expense_trigger_control (id, bypass) VALUES (1, 0)");
+    }
+
+    private static long lastExpenseId(Statement stmt) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery("SELECT seq FROM sqlite_sequence WHERE name = 'expenses'")) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    // After a rebuild, never hand out an id of a row deleted before it
+    private static void keepExpenseIds(Statement stmt, long lastId) throws SQLException {
+        stmt.executeUpdate("UPDATE sqlite_sequence SET seq = MAX(seq, " + lastId + ") WHERE name = 'expenses'");
+        stmt.executeUpdate("INSERT INTO sqlite_sequence (name, seq) SELECT 'expenses', " + lastId
+                + " WHERE " + lastId + " > 0 AND NOT EXISTS (SELECT 1 FROM sqlite_sequence WHERE name = 'expenses')");
+    }
+
+    // Bind the epoch_day column for a YYYY-MM-DD date; NULL (left to the trigger) if it doesn't parse
+    static void bindEpochDay(PreparedStatement stmt, int index, String date) throws SQLException {
+        try {
+            stmt.setLong(index, LocalDate.parse(date).toEpochDay());
+        } catch (DateTimeException | NullPointerException e) {
+            stmt.setNull(index, Types.INTEGER);
+        }
+    }
+
+    static boolean hasColumn(Statement stmt, String table, String column) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery("PRAGMA table_info(" + table + ")")) {
+            while (rs.next()) {
+                if (column.equalsIgnoreCase(rs.getString("name"))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean hasUniqueIndexOn(Statement stmt, String table, String column) throws SQLException {
+        List<String> uniqueIndexes = new ArrayList<>();
+        try (ResultSet rs = stmt.executeQuery("PRAGMA index_list(" + table + ")")) {
+            while (rs.next()) {
+                if (rs.getInt("unique") == 1) {
+                    uniqueIndexes.add(rs.getString("name"));
+                }
+            }
+        }
+        for (String index : uniqueIndexes) {
+            List<String> columns = new ArrayList<>();
+            try (ResultSet rs = stmt.executeQuery("PRAGMA index_info('" + index + "')")) {
+                while (rs.next()) {
+                    columns.add(rs.getString("name"));
+                }
+            }
+            if (columns.size() == 1 && column.equalsIgnoreCase(columns.get(0))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Every step of a hot query's plan that walks a whole table instead of searching an index
+    public static List<String> findFullScans(Connection conn) throws SQLException {
+        return findFullScans(conn, HOT_QUERIES);
+    }
+
+    // The same for other queries, such as ones built at run time over the archive partitions
+    static List<String> findFullScans(Connection conn, String... queries) throws SQLException {
+        List<String> scans = new ArrayList<>();
+        for (String query : queries) {
+            try (PreparedStatement stmt = conn.prepareStatement("EXPLAIN QUERY PLAN " + query)) {
+                for (int i = 1; i <= stmt.getParameterMetaData().getParameterCount(); i++) {
+                    stmt.setInt(i, 1);
+                }
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        String detail = rs.getString("detail");
+                        // A virtual table "scan" is the FTS index answering MATCH, not a table walk
+                        if (detail.startsWith("SCAN ") && !detail.contains("CONSTANT ROW") && !detail.contains("VIRTUAL TABLE")) {
+                            scans.add(query + "  ->  " + detail);
+                        }
+                    }
+                }
+            }
+        }
+        return scans;
+    }
+
+    // Command line: java SchemaMigrations [--check-plans [jdbc-url]]
+    // Migrates ExpensesDB.db (or the given database); with --check-plans exits 1 when a hot query
+    // needs a full scan. SchemaMigrationsTest runs the same check on a seeded database.
+    public static void main(String[] args) throws Exception {
+        Class.forName("org.sqlite.JDBC");
+        String url = args.length > 1 ? args[1] : ExpenseTracker.DB_URL;
+        try (Connection conn = DriverManager.getConnection(url)) {
+            migrate(conn);
+            System.out.println("Schema version " + currentVersion(conn) + ".");
+            if (args.length > 0 && "--check-plans".equals(args[0])) {
+                List<String> scans = findFullScans(conn);
+                for (String scan : scans) {
+                    System.out.println("FULL SCAN: " + scan);
+                }
+                System.out.println(HOT_QUERIES.length + " hot queries checked, " + scans.size() + " full scan(s).");
+                System.exit(scans.isEmpty() ? 0 : 1);
+            }
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package expensetracker;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.IntStream;
+
+// Startup time of the GUI's data path, without the GUI: how soon the last session's snapshot can
+// be painted, and how soon the live data that replaces it is ready (schema checked, journal
+// replayed, readers warmed up, first page and total of the snapshot's account fetched).
+// Cold runs each start a fresh JVM on the database, as a launch does; warm runs reopen it in this
+// JVM, with classes loaded, code compiled and the file in the OS page cache.
+// Usage: java -cp target/classes:sqlite-jdbc.jar expensetracker.StartupBenchmark [rows=1000000] [runs=10]
+public class StartupBenchmark {
+    private static final String[] PHASES = {"snapshot", "open", "migrate", "journal", "warmUp", "firstPage", "total"};
+    private static final int ACCOUNTS = 10;
+    private static final int PAGE_SIZE = 500; // As the GUI's table
+
+    public static void main(String[] args) throws Exception {
+        Logger.getLogger("").setLevel(Level.WARNING);
+        if (args.length == 2 && "--once".equals(args[0])) {
+            // One cold run, in a JVM of its own started by the parent
+            long[] done = startup(args[1]);
+            StringBuilder line = new StringBuilder();
+            for (long nanos : done) {
+                line.append(nanos).append(' ');
+            }
+            System.out.println(line.toString().trim());
+            return;
+        }
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        File dbFile = File.createTempFile("expense-startup-", ".db");
+        dbFile.deleteOnExit();
+        String url = "jdbc:sqlite:" + dbFile.getAbsolutePath();
+        seed(url, rows);
+        try {
+            long[][] cold = new long[runs][];
+            for (int i = 0; i < runs; i++) {
+                cold[i] = coldStartup(url);
+            }
+            startup(url); // Loads and compiles what the warm runs measure
+            long[][] warm = new long[runs][];
+            for (int i = 0; i < runs; i++) {
+                warm[i] = startup(url);
+            }
+            System.out.printf("Startup of a %,d-row database, %d runs each; milliseconds from launch until each phase is done%n", rows, runs);
+            print("cold", cold);
+            print("warm", warm);
+        } finally {
+            Files.deleteIfExists(StartupSnapshot.fileOf(url));
+            Files.deleteIfExists(Paths.get(dbFile + ".writes"));
+        }
+    }
+
+    // Accounts, 'rows' expenses spread over them, and the snapshot a session on the first account leaves behind
+    private static void seed(String url, int rows) throws Exception {
+        ExpenseTracker.initDB(url);
+        try (PooledConnection conn = ExpenseTracker.database().writer()) {
+            PreparedStatement stmt = conn.prepare("INSERT INTO accounts (name) VALUES (?)");
+            for (int a = 1; a <= ACCOUNTS; a++) {
+                stmt.setString(1, "Account " + a);
+                stmt.executeUpdate();
+            }
+        }
+        ExpenseTracker.database().accounts().invalidate();
+        ExpenseTracker.addExpenses(IntStream.range(0, rows).mapToObj(i -> new Expense(1 + i % ACCOUNTS,
+                String.format("%04d-%02d-%02d", 2015 + i % 10, 1 + i % 12, 1 + i % 28), "Startup expense " + i, 100 + i % 50_000, "Food")));
+        List<String[]> firstRows = new ArrayList<>();
+        for (Expense expense : ExpenseTracker.findExpensesByAccount(1)) {
+            if (firstRows.size() == StartupSnapshot.MAX_ROWS) {
+                break;
+            }
+            firstRows.add(new String[]{expense.getDate(), expense.getDescription(), Money.format(expense.getAmount()), expense.getCategory()});
+        }
+        List<String> accounts = new ArrayList<>();
+        for (int a = 1; a <= ACCOUNTS; a++) {
+            accounts.add("Account " + a);
+        }
+        long total;
+        try (PooledConnection conn = ExpenseTracker.database().reader()) {
+            total = ExpenseSummary.accountTotal(conn, 1);
+        }
+        new StartupSnapshot(accounts, "Account 1", total, firstRows).save(url);
+        ExpenseTracker.closeDB();
+    }
+
+    private static long[] coldStartup(String url) throws Exception {
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), StartupBenchmark.class.getName(), "--once", url)
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        String line;
+        try (BufferedReader out = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            line = out.readLine();
+        }
+        if (process.waitFor() != 0 || line == null) {
+            throw new IllegalStateException("Cold startup run failed");
+        }
+        return Arrays.stream(line.split(" ")).mapToLong(Long::parseLong).toArray();
+    }
+
+    // What ExpenseTrackerGUI does from launch to live data; nanoseconds from the start until each phase is done
+    static long[] startup(String url) throws Exception {
+        long[] done = new long[PHASES.length];
+        long start = System.nanoTime();
+        StartupSnapshot snapshot = StartupSnapshot.load(url);
+        done[0] = System.nanoTime() - start;
+        try (Database db = Database.open(url)) {
+            done[1] = System.nanoTime() - start;
+            try (PooledConnection conn = db.writer()) {
+                SchemaMigrations.migrate(conn.connection());
+            }
+            done[2] = System.nanoTime() - start;
+            BatchingExpenseWriter.open(db, (rows, firstId) -> { }).close();
+            done[3] = System.nanoTime() - start;
+            db.warmUp(SchemaMigrations.HOT_QUERIES);
+            done[4] = System.nanoTime() - start;
+            try (PooledConnection conn = db.reader()) {
+                List<String> accounts = db.accounts().names(conn);
+                int accountId = db.accounts().idOf(conn, snapshot != null ? snapshot.getAccount() : accounts.get(0));
+                db.archive().accountExpenses(conn, "e.date, e.description, e.amount, e.category_id", accountId, 0, 0, PAGE_SIZE,
+                        rs -> db.categories().nameOf(conn, rs.getInt(5)));
+                done[5] = System.nanoTime() - start;
+                ExpenseSummary.accountTotal(conn, accountId);
+                done[6] = System.nanoTime() - start;
+            }
+        }
+        return done;
+    }
+
+    private static void print(String kind, long[][] runs) {
+        for (int phase = 0; phase < PHASES.length; phase++) {
+            long[] nanos = new long[runs.length];
+            for (int i = 0; i < runs.length; i++) {
+                nanos[i] = runs[i][phase];
+            }
+            Arrays.sort(nanos);
+            System.out.printf("%-5s %-10s  median %9.1f ms  max %9.1f ms%n", kind, PHASES[phase],
+                    nanos[nanos.length / 2] / 1e6, nanos[nanos.length - 1] / 1e6);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package expensetracker;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+// What the GUI showed when it was last closed: the account list, the selected account, its
+// total and its first rows as displayed, kept in <database>.snapshot next to the database so
+// the next launch can paint them before the database is even opened. Only a hint: live data
+// replaces it as soon as the database is ready, and a missing or unreadable file just means
+// an empty first paint.
+public final class StartupSnapshot {
+    private static final Logger logger = Logger.getLogger(StartupSnapshot.class.getName());
+    static final int MAX_ROWS = 100; // A screenful and then some
+
+    private final List<String> accounts;
+    private final String account;
+    private final long total;
+    private final List<String[]> rows; // Date, description, amount, category as displayed
+
+    public StartupSnapshot(List<String> accounts, String account, long total, List<String[]> rows) {
+        this.accounts = Collections.unmodifiableList(new ArrayList<>(accounts));
+        this.account = account;
+        this.total = total;
+        this.rows = Collections.unmodifiableList(new ArrayList<>(rows.subList(0, Math.min(rows.size(), MAX_ROWS))));
+    }
+
+    public List<String> getAccounts() {
+        return accounts;
+    }
+
+    // Selected account, null if there was none
+    public String getAccount() {
+        return account;
+    }
+
+    // Total of the selected account, in minor units
+    public long getTotal() {
+        return total;
+    }
+
+    public List<String[]> getRows() {
+        return rows;
+    }
+
+    // Snapshot file of a database; null for in-memory databases
+    static Path fileOf(String url) {
+        Path db = Database.file(url);
+        return db == null ? null : Paths.get(db + ".snapshot");
+    }
+
+    // The snapshot last saved for a database, null if there is none or it can't be read
+    public static StartupSnapshot load(String url) {
+        Path file = fileOf(url);
+        if (file == null) {
+            return null;
+        }
+        try {
+            Map<String, Object> json = Json.asObject(Json.parse(new String(Files.readAllBytes(file), StandardCharsets.UTF_8)));
+            List<String> accounts = new ArrayList<>();
+            for (Object name : Json.asArray(json.get("accounts"))) {
+                accounts.add((String) name);
+            }
+            List<String[]> rows = new ArrayList<>();
+            for (Object row : Json.asArray(json.get("rows"))) {
+                List<Object> cells = Json.asArray(row);
+                String[] cellTexts = new String[cells.size()];
+                for (int i = 0; i < cellTexts.length; i++) {
+                    cellTexts[i] = (String) cells.get(i);
+                }
+                rows.add(cellTexts);
+            }
+            return new StartupSnapshot(accounts, Json.getString(json, "account", false),
+                    Long.parseLong(Json.getString(json, "total", true)), rows);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException | RuntimeException e) {
+            logger.warning("Ignoring unreadable startup snapshot " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Written beside the old one and moved over it, so a crash never leaves half a snapshot
+    public void save(String url) throws IOException {
+        Path file = fileOf(url);
+        if (file == null) {
+            return;
+        }
+        StringBuilder out = new StringBuilder(256 + rows.size() * 96).append("{\"accounts\":[");
+        for (int i = 0; i < accounts.size(); i++) {
+            if (i > 0) {
+                out.append(',');
+            }
+            Json.quote(out, accounts.get(i));
+        }
+        out.append("],\"account\":");
+        Json.quote(out, account).append(",\"total\":\"").append(total).append("\",\"rows\":[");
+        for (int r = 0; r < rows.size(); r++) {
+            out.append(r > 0 ? ",[" : "[");
+            String[] row = rows.get(r);
+            for (int i = 0; i < row.length; i++) {
+                if (i > 0) {
+                    out.append(',');
+                }
+                Json.quote(out, row[i]);
+            }
+            out.append(']');
+        }
+        out.append("]}\n");
+        Path partial = Paths.get(file + ".part");
+        Files.write(partial, out.toString().getBytes(StandardCharsets.UTF_8));
+        Files.move(partial, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,233 @@
+package expensetracker;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Moves money between accounts.balance (minor units) for any number of calling threads.
+// Callers queue transfers; each worker thread owns its own connection, drains up to
+// maxGroupSize queued transfers and applies them in one BEGIN IMMEDIATE transaction (group
+// commit). A debit only happens when the balance covers it, so money is never created or
+// destroyed. SQLITE_BUSY rolls the group back and retries it with jittered exponential backoff.
+// A worker that stops fails the group it holds; once the last one has stopped, the engine takes
+// no more transfers and fails the queued ones, so no caller waits forever.
+public class TransferEngine implements AutoCloseable {
+    private static final Logger logger = Logger.getLogger(TransferEngine.class.getName());
+    private static final int MAX_ATTEMPTS = 10;
+    private static final long BASE_BACKOFF_MICROS = 200;
+    private static final Metrics.Timer GROUP_COMMIT = Metrics.timer("transfers.groupCommit");
+    private static final Metrics.Counter BUSY_RETRIES = Metrics.counter("transfers.busyRetries");
+
+    private static final class Transfer {
+        final int fromAccountId;
+        final int toAccountId;
+        final long amount;
+        final CompletableFuture<Boolean> result = new CompletableFuture<>();
+
+        Transfer(int fromAccountId, int toAccountId, long amount) {
+            this.fromAccountId = fromAccountId;
+            this.toAccountId = toAccountId;
+            this.amount = amount;
+        }
+    }
+
+    private final Database db;
+    private final int maxGroupSize;
+    private final BlockingQueue<Transfer> queue = new LinkedBlockingQueue<>();
+    private final List<Thread> workers = new ArrayList<>();
+    private final AtomicInteger liveWorkers = new AtomicInteger();
+    private volatile boolean running = true;
+
+    public TransferEngine(Database db) throws SQLException {
+        this(db, 2, 256);
+    }
+
+    public TransferEngine(Database db, int workerCount, int maxGroupSize) throws SQLException {
+        this.db = db;
+        this.maxGroupSize = maxGroupSize;
+        liveWorkers.set(workerCount);
+        for (int i = 0; i < workerCount; i++) {
+            Connection conn = db.openConnection();
+            Thread worker = new Thread(() -> work(conn), "transfer-worker-" + i);
+            worker.setDaemon(true);
+            workers.add(worker);
+        }
+        workers.forEach(Thread::start);
+    }
+
+    // Queue a transfer; completes with true when committed, false when funds or an account are missing
+    public CompletableFuture<Boolean> submit(int fromAccountId, int toAccountId, long amount) {
+        if (amount <= 0) {
+            throw new IllegalArgumentException("Transfer amount must be positive: " + amount);
+        }
+        if (!running) {
+            throw new IllegalStateException("Transfer engine is closed");
+        }
+        Transfer transfer = new Transfer(fromAccountId, toAccountId, amount);
+        if (fromAccountId == toAccountId) {
+            transfer.result.complete(false);
+        } else {
+            queue.add(transfer);
+            if (liveWorkers.get() == 0) {
+                failQueued(new SQLException("Transfer engine stopped")); // The last worker left after the check above
+            }
+        }
+        return transfer.result;
+    }
+
+    // Transfer and wait for the outcome
+    public boolean transfer(int fromAccountId, int toAccountId, long amount) throws SQLException {
+        try {
+            return submit(fromAccountId, toAccountId, amount).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof SQLException) {
+                throw (SQLException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    // Sum of every balance; constant under transfers
+    public long totalBalance() throws SQLException {
+        try (PooledConnection conn = db.reader(); ResultSet rs = conn.prepare("SELECT IFNULL(SUM(balance), 0) FROM accounts").executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    private void work(Connection conn) {
+        List<Transfer> group = new ArrayList<>(maxGroupSize);
+        try (Connection c = conn;
+             PreparedStatement debit = c.prepareStatement("UPDATE accounts SET balance = balance - ? WHERE id = ? AND balance >= ?");
+             PreparedStatement credit = c.prepareStatement("UPDATE accounts SET balance = balance + ? WHERE id = ?")) {
+            while (running || !queue.isEmpty()) {
+                Transfer first = queue.poll(50, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                group.add(first);
+                queue.drainTo(group, maxGroupSize - 1);
+                applyWithRetry(c, debit, credit, group);
+                group.clear();
+            }
+        } catch (SQLException e) {
+            logger.severe("Transfer worker stopped: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            logger.log(Level.SEVERE, "Transfer worker stopped", e);
+        } finally {
+            SQLException stopped = new SQLException("Transfer engine stopped");
+            for (Transfer transfer : group) {
+                transfer.result.completeExceptionally(stopped);
+            }
+            if (liveWorkers.decrementAndGet() == 0) {
+                running = false;
+                failQueued(stopped);
+            }
+        }
+    }
+
+    private void failQueued(SQLException e) {
+        for (Transfer transfer; (transfer = queue.poll()) != null; ) {
+            transfer.result.completeExceptionally(e);
+        }
+    }
+
+    private void applyWithRetry(Connection conn, PreparedStatement debit, PreparedStatement credit, List<Transfer> group)
+            throws InterruptedException {
+        for (int attempt = 1; ; attempt++) {
+            Metrics.Sample sample = GROUP_COMMIT.start();
+            try {
+                boolean[] outcomes = applyGroup(conn, debit, credit, group);
+                sample.stop(group.size());
+                for (int i = 0; i < group.size(); i++) {
+                    group.get(i).result.complete(outcomes[i]);
+                }
+                return;
+            } catch (SQLException e) {
+                sample.fail(e);
+                rollbackQuietly(conn);
+                if (Database.isBusy(e) && attempt < MAX_ATTEMPTS) {
+                    BUSY_RETRIES.increment();
+                    long ceiling = BASE_BACKOFF_MICROS << Math.min(attempt, 12);
+                    TimeUnit.MICROSECONDS.sleep(ThreadLocalRandom.current().nextLong(ceiling / 2, ceiling));
+                    continue;
+                }
+                for (Transfer transfer : group) {
+                    transfer.result.completeExceptionally(e);
+                }
+                return;
+            }
+        }
+    }
+
+    // One transaction for the whole group; a transfer that can't be made leaves no trace
+    private static boolean[] applyGroup(Connection conn, PreparedStatement debit, PreparedStatement credit, List<Transfer> group)
+            throws SQLException {
+        boolean[] outcomes = new boolean[group.size()];
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("BEGIN IMMEDIATE");
+            for (int i = 0; i < group.size(); i++) {
+                Transfer t = group.get(i);
+                debit.setLong(1, t.amount);
+                debit.setInt(2, t.fromAccountId);
+                debit.setLong(3, t.amount);
+                if (debit.executeUpdate() == 0) {
+                    continue; // Insufficient funds or unknown source account
+                }
+                credit.setLong(1, t.amount);
+                credit.setInt(2, t.toAccountId);
+                if (credit.executeUpdate() == 0) {
+                    // Unknown target account: put the money back
+                    credit.setInt(2, t.fromAccountId);
+                    credit.executeUpdate();
+                    continue;
+                }
+                outcomes[i] = true;
+            }
+            stmt.execute("COMMIT");
+        }
+        return outcomes;
+    }
+
+    private static void rollbackQuietly(Connection conn) {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("ROLLBACK");
+        } catch (SQLException e) {
+            // No transaction was open
+        }
+    }
+
+    // Finish every queued transfer, then stop the workers. Waits for them even when interrupted,
+    // so no transfer is left half done, and keeps the interrupt for the caller.
+    @Override
+    public void close() {
+        running = false;
+        boolean interrupted = false;
+        for (Thread worker : workers) {
+            while (worker.isAlive()) {
+                try {
+                    worker.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package expensetracker;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class BatchingExpenseWriterTest {
+    @TempDir
+    Path dir;
+
+    private String url;
+    private Path journalFile;
+
+    @BeforeEach
+    void createSchema() throws Exception {
+        url = "jdbc:sqlite:" + dir.resolve("writer.db");
+        journalFile = BatchingExpenseWriter.journalFile(url);
+        try (Database db = open()) {
+            try (PooledConnection conn = db.writer()) {
+                SchemaMigrations.migrate(conn.connection());
+            }
+            TestDatabases.addAccounts(db, 2);
+        }
+    }
+
+    private Database open() throws SQLException {
+        Database.Config config = new Database.Config();
+        config.readers = 1;
+        config.busyTimeoutMillis = 10;
+        return Database.open(url, config);
+    }
+
+    private static Expense expense(int accountId, String description) {
+        return new Expense(accountId, "2024-12-14", description, 1_000, "Food");
+    }
+
+    private static long count(Database db) throws SQLException {
+        try (PooledConnection conn = db.reader(); ResultSet rs = conn.prepare("SELECT COUNT(*) FROM expenses").executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    // What a crash leaves behind: records journaled and acknowledged, never committed
+    private void journalWithoutCommitting(List<Expense> expenses) throws Exception {
+        try (ExpenseJournal journal = ExpenseJournal.open(journalFile, 0)) {
+            journal.sync(journal.append(expenses));
+        }
+    }
+
+    @Test
+    void replaysAcknowledgedExpensesOnOpen() throws Exception {
+        journalWithoutCommitting(Arrays.asList(expense(1, "a"), expense(2, "b")));
+        journalWithoutCommitting(Collections.singletonList(expense(1, "c")));
+        try (Database db = open()) {
+            BatchingExpenseWriter.open(db, null).close();
+            assertEquals(3, count(db));
+            try (PooledConnection conn = db.reader()) {
+                assertEquals(2, ExpenseJournal.appliedSeq(conn));
+            }
+            // Applied and emptied, so a second start replays nothing
+            BatchingExpenseWriter.open(db, null).close();
+            assertEquals(3, count(db));
+        }
+        assertEquals(0, Files.size(journalFile));
+    }
+
+    @Test
+    void discardsATornRecordAtTheEnd() throws Exception {
+        journalWithoutCommitting(Collections.singletonList(expense(1, "complete")));
+        // A crash part way through the next append: a length prefix and half a payload
+        Files.write(journalFile, new byte[]{0, 0, 0, 64, 0, 0, 0, 0, 0, 0, 0, 2, 0, 0}, StandardOpenOption.APPEND);
+        try (Database db = open()) {
+            try (BatchingExpenseWriter writer = BatchingExpenseWriter.open(db, null)) {
+                assertEquals(1, count(db));
+                // New records follow the last complete one, not the torn bytes
+                writer.submit(expense(2, "after")).get();
+            }
+            assertEquals(2, count(db));
+        }
+        try (ExpenseJournal journal = ExpenseJournal.open(journalFile, 0)) {
+            assertTrue(journal.unapplied().isEmpty());
+        }
+    }
+
+    @Test
+    void failsOnlyTheSubmissionThatBreaksAConstraint() throws Exception {
+        try (Database db = open(); BatchingExpenseWriter writer = BatchingExpenseWriter.open(db, null)) {
+            CompletableFuture<Long> bad = writer.submit(expense(99, "no such account"));
+            CompletableFuture<Long> good = writer.submit(expense(1, "fine"));
+            ExecutionException e = assertThrows(ExecutionException.class, bad::get);
+            assertTrue(Database.isConstraint((SQLException) e.getCause()), e.getCause().toString());
+            assertNotNull(good.get());
+            assertNull(writer.failure());
+            assertEquals(1, count(db));
+        }
+    }
+
+    @Test
+    void completesFuturesBeforeTheListenerAndSurvivesItsFailure() throws Exception {
+        AtomicReference<CompletableFuture<Long>> submitted = new AtomicReference<>();
+        AtomicBoolean doneWhenNotified = new AtomicBoolean();
+        CountDownLatch published = new CountDownLatch(1);
+        try (Database db = open()) {
+            BatchingExpenseWriter.CommitListener listener = (rows, firstId) -> {
+                awaitQuietly(published);
+                doneWhenNotified.set(submitted.get() != null && submitted.get().isDone());
+                throw new IllegalStateException("listener bug");
+            };
+            try (BatchingExpenseWriter writer = BatchingExpenseWriter.open(db, listener)) {
+                submitted.set(writer.submit(expense(1, "first")));
+                published.countDown();
+                submitted.get().get();
+                writer.submit(expense(1, "second")).get();
+                assertNull(writer.failure());
+            }
+            assertEquals(2, count(db));
+        }
+        assertTrue(doneWhenNotified.get());
+    }
+
+    @Test
+    void flushWaitsForEverythingSubmittedBefore() throws Exception {
+        try (Database db = open(); BatchingExpenseWriter writer = new BatchingExpenseWriter(db, null, 1_000, 500, 16, null)) {
+            CompletableFuture<Long> first = writer.submit(expense(1, "a"));
+            CompletableFuture<Long> refused = writer.submit(expense(99, "no such account"));
+            CompletableFuture<Long> last = writer.submit(expense(2, "b"));
+            writer.flush();
+            assertTrue(first.isDone() && refused.isCompletedExceptionally() && last.isDone());
+            assertEquals(2, count(db));
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Test
+    void stopsAndKeepsTheJournalWhileTheDatabaseStaysLocked() throws Exception {
+        try (Database db = open()) {
+            try (Connection other = DriverManager.getConnection(url); Statement stmt = other.createStatement()) {
+                stmt.execute("BEGIN IMMEDIATE");
+                try (BatchingExpenseWriter writer = BatchingExpenseWriter.open(db, null)) {
+                    CompletableFuture<Long> blocked = writer.submit(expense(1, "locked out"));
+                    ExecutionException e = assertThrows(ExecutionException.class, blocked::get);
+                    assertTrue(Database.isBusy((SQLException) e.getCause()), e.getCause().toString());
+                    assertNotNull(writer.failure());
+                    assertThrows(IllegalStateException.class, () -> writer.submit(expense(1, "refused")));
+                }
+                stmt.execute("ROLLBACK");
+            }
+            assertEquals(0, count(db));
+            assertTrue(Files.size(journalFile) > 0, "the failed submission stays journaled");
+            // The next start replays it
+            BatchingExpenseWriter.open(db, null).close();
+            assertEquals(1, count(db));
+        }
+    }
+}
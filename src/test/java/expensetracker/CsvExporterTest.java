@@ -0,0 +1,133 @@
+package expensetracker;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// RFC-4180 output: fields holding a comma, quote or line break are quoted with embedded quotes
+// doubled, records end in CRLF, and what a conforming reader gets back is what was stored
+class CsvExporterTest {
+    @TempDir
+    Path dir;
+
+    private Database db;
+
+    @BeforeEach
+    void seed() throws SQLException {
+        db = TestDatabases.seeded(dir, 2, Arrays.asList(
+                new Expense(1, "2024-01-05", "Plain", 1_250, "Food"),
+                new Expense(1, "2024-01-06", "Dinner, drinks", 4_200, "Food, misc"),
+                new Expense(1, "2024-01-07", "The \"best\" pizza", 999, null),
+                new Expense(2, "2024-01-08", "Line one\nline two", 1, "Bills"),
+                new Expense(2, "2024-01-09", "Old Mac\rand Windows\r\nbreaks", 100_000, "Bills")));
+    }
+
+    @AfterEach
+    void close() throws SQLException {
+        db.close();
+    }
+
+    private static String field(String value) throws IOException {
+        StringWriter out = new StringWriter();
+        CsvExporter.writeField(out, value);
+        return out.toString();
+    }
+
+    // A strict RFC-4180 reader: quoted fields may hold anything, unquoted ones no quote, comma or
+    // line break, and every record ends in CRLF
+    private static List<List<String>> parse(String csv) {
+        List<List<String>> records = new ArrayList<>();
+        List<String> record = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        int i = 0;
+        while (i < csv.length()) {
+            if (csv.charAt(i) == '"') {
+                for (i++; !(csv.charAt(i) == '"' && (i + 1 == csv.length() || csv.charAt(i + 1) != '"')); i++) {
+                    if (csv.charAt(i) == '"') {
+                        i++; // A doubled quote
+                    }
+                    field.append(csv.charAt(i));
+                }
+                i++;
+            } else {
+                while (i < csv.length() && ",\r\n".indexOf(csv.charAt(i)) < 0) {
+                    if (csv.charAt(i) == '"') {
+                        throw new IllegalArgumentException("Bare quote at " + i);
+                    }
+                    field.append(csv.charAt(i++));
+                }
+            }
+            record.add(field.toString());
+            field.setLength(0);
+            if (csv.startsWith("\r\n", i)) {
+                records.add(record);
+                record = new ArrayList<>();
+                i += 2;
+            } else if (csv.charAt(i) == ',') {
+                i++;
+            } else {
+                throw new IllegalArgumentException("Expected a comma or CRLF at " + i);
+            }
+        }
+        assertEquals(0, record.size(), "last record ends in CRLF");
+        return records;
+    }
+
+    private static final List<List<String>> EXPECTED = Arrays.asList(
+            Arrays.asList("Account", "Date", "Description", "Amount", "Category"),
+            Arrays.asList("Account 1", "2024-01-05", "Plain", "12.50", "Food"),
+            Arrays.asList("Account 1", "2024-01-06", "Dinner, drinks", "42.00", "Food, misc"),
+            Arrays.asList("Account 1", "2024-01-07", "The \"best\" pizza", "9.99", ""),
+            Arrays.asList("Account 2", "2024-01-08", "Line one\nline two", "0.01", "Bills"),
+            Arrays.asList("Account 2", "2024-01-09", "Old Mac\rand Windows\r\nbreaks", "1000.00", "Bills"));
+
+    @Test
+    void quotesOnlyWhatNeedsQuoting() throws IOException {
+        assertEquals("Plain text", field("Plain text"));
+        assertEquals("", field(""));
+        assertEquals("", field(null));
+        assertEquals("\"a,b\"", field("a,b"));
+        assertEquals("\"say \"\"hi\"\"\"", field("say \"hi\""));
+        assertEquals("\"\"\"\"", field("\""));
+        assertEquals("\"a\nb\"", field("a\nb"));
+        assertEquals("\"a\rb\"", field("a\rb"));
+        assertEquals("\"a\r\nb\"", field("a\r\nb"));
+        assertEquals(" padded ", field(" padded "));
+    }
+
+    @Test
+    void exportReadsBackAsStored() throws Exception {
+        Path file = dir.resolve("all.csv");
+        assertEquals(5, new CsvExporter(db, false).export(file, null, null, null));
+        assertEquals(EXPECTED, parse(new String(Files.readAllBytes(file), StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void gzippedPartitionsReadBackAsStored() throws Exception {
+        Path out = Files.createDirectory(dir.resolve("parts"));
+        assertEquals(5, new CsvExporter(db, true).exportPartitioned(out, null, null, 2));
+        List<List<String>> records = new ArrayList<>(parse(gunzip(out.resolve("1.csv.gz"))));
+        records.addAll(parse(gunzip(out.resolve("2.csv.gz"))).subList(1, 3));
+        assertEquals(EXPECTED, records);
+    }
+
+    private static String gunzip(Path file) throws IOException {
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(file))) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
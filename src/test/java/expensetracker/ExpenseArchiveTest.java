@@ -0,0 +1,110 @@
+package expensetracker;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// With more archived years than can be attached at once, unranged reads go through the archive
+// in batches and still see every row in the same order as before archiving
+class ExpenseArchiveTest {
+    private static final int YEARS = 16;
+    private static final int ROWS = YEARS * 800;
+
+    @TempDir
+    Path dir;
+
+    private Database db;
+
+    @BeforeEach
+    void seed() throws SQLException {
+        List<Expense> expenses = new ArrayList<>(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            // Years interleave, so id order runs across every partition
+            expenses.add(new Expense(1 + i % 3, String.format("%d-%02d-%02d", 2010 + i % YEARS, 1 + i % 12, 1 + i % 28),
+                    (i % 4 == 0 ? "Coffee " : "Groceries ") + i, 100 + i, i % 5 == 0 ? null : "Food"));
+        }
+        db = TestDatabases.seeded(dir, 3, expenses);
+    }
+
+    @AfterEach
+    void close() throws SQLException {
+        db.close();
+    }
+
+    private String export(String name) throws IOException, SQLException {
+        Path file = dir.resolve(name);
+        assertEquals(ROWS, new CsvExporter(db, false).export(file, null, null, null));
+        return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    }
+
+    private List<Long> pages(PooledConnection conn, int accountId, int pageSize) throws SQLException {
+        List<Long> ids = new ArrayList<>();
+        long afterId = 0;
+        while (true) {
+            List<Long> page = db.archive().accountExpenses(conn, null, accountId, afterId, 0, pageSize, rs -> rs.getLong(1));
+            if (page.isEmpty()) {
+                return ids;
+            }
+            ids.addAll(page);
+            afterId = page.get(page.size() - 1);
+        }
+    }
+
+    @Test
+    void readsMoreYearsThanCanBeAttachedAtOnce() throws IOException, SQLException {
+        String exported = export("before.csv");
+        ExpenseSearch.Filter coffee = new ExpenseSearch.Filter("coffee", null, null, null, null);
+        int matches;
+        long[] totals;
+        try (PooledConnection conn = db.reader()) {
+            matches = ExpenseSearch.count(conn, coffee);
+            totals = ColumnarExpenseStore.load(conn).totalsByAccountCents();
+        }
+
+        db.archive().archive(2016, false, true); // 2010 to 2015, compressed
+        db.archive().archive(2024, false, false); // 2016 to 2023
+        try (PooledConnection conn = db.reader()) {
+            assertEquals(2024 - 2010, db.archive().partitions(conn).size());
+            assertEquals(2, db.archive().batches(conn, null, null));
+
+            List<Long> expected = new ArrayList<>();
+            for (long id = 1; id <= ROWS; id += 3) {
+                expected.add(id); // Account 1
+            }
+            assertEquals(expected, pages(conn, 1, 250));
+            assertEquals(Long.valueOf(expected.get(600)), db.archive().accountExpenses(conn, null, 1, 0, 600, 1, rs -> rs.getLong(1)).get(0));
+            assertEquals(expected.size(), db.archive().accountExpenses(conn, "e.amount", 1, 0, 0, -1, rs -> rs.getLong(2)).size());
+
+            assertEquals(matches, ExpenseSearch.count(conn, coffee));
+            List<Expense> page = ExpenseSearch.search(conn, coffee, 0, 50);
+            assertEquals(50, page.size());
+            for (int i = 0; i < page.size(); i++) {
+                assertEquals(1 + 4 * i, page.get(i).getId());
+            }
+            assertEquals(1 + 4 * 199, ExpenseSearch.idAfter(conn, coffee, 0, 200));
+
+            ColumnarExpenseStore columnar = ColumnarExpenseStore.load(conn);
+            assertEquals(ROWS, columnar.size());
+            assertArrayEquals(totals, columnar.totalsByAccountCents());
+            assertEquals(Collections.emptyList(), ExpenseSummary.checkConsistency(conn));
+        }
+        assertEquals(exported, export("after.csv"));
+
+        try (PooledConnection conn = db.writer()) {
+            ExpenseSummary.rebuild(conn);
+            assertEquals(Collections.emptyList(), ExpenseSummary.checkConsistency(conn));
+        }
+    }
+}
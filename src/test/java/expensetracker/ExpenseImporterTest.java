@@ -0,0 +1,70 @@
+package expensetracker;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ExpenseImporterTest {
+    @TempDir
+    Path dir;
+
+    @BeforeEach
+    void openDatabase() throws Exception {
+        ExpenseTracker.initDB("jdbc:sqlite:" + dir.resolve("import.db"));
+        TestDatabases.addAccounts(ExpenseTracker.database(), 1);
+    }
+
+    @AfterEach
+    void closeDatabase() {
+        ExpenseTracker.closeDB();
+    }
+
+    @Test
+    void importsOfxDebitsAndSkipsCredits() throws Exception {
+        Path ofx = dir.resolve("statement.ofx");
+        Files.write(ofx, ("<OFX><BANKTRANLIST>"
+                + "<STMTTRN><TRNTYPE>DEBIT<DTPOSTED>20241214120000<TRNAMT>-12.50<NAME>Grocer</STMTTRN>"
+                + "<STMTTRN><TRNTYPE>CREDIT<DTPOSTED>20241215<TRNAMT>100.00<NAME>Salary</STMTTRN>"
+                + "<STMTTRN><TRNTYPE>CREDIT<DTPOSTED>20241216<TRNAMT>+3.00<NAME>Refund</STMTTRN>"
+                + "</BANKTRANLIST></OFX>").getBytes(StandardCharsets.UTF_8));
+
+        ExpenseImporter.ImportReport report = new ExpenseImporter(2, 100, 16).importOfx(ofx, "Account 1");
+
+        assertEquals(1, report.getInserted());
+        assertEquals(2, report.getSkipped());
+        assertEquals(0, report.getRejected());
+        List<Expense> expenses = ExpenseTracker.findExpensesByAccount(1);
+        assertEquals(1, expenses.size());
+        assertEquals("2024-12-14", expenses.get(0).getDate());
+        assertEquals(1_250, expenses.get(0).getAmount());
+    }
+
+    @Test
+    void failsInsteadOfHangingWhenTheWriterDies() throws Exception {
+        StringBuilder csv = new StringBuilder("account,date,description,amount\n");
+        for (int i = 0; i < 20_000; i++) {
+            csv.append("Account 1,2024-12-14,Row ").append(i).append(",1.00\n");
+        }
+        Path file = dir.resolve("rows.csv");
+        Files.write(file, csv.toString().getBytes(StandardCharsets.UTF_8));
+        // Small queues, so the parser and the validator are blocked on them when the writer goes
+        ExpenseImporter importer = new ExpenseImporter(1, 10, 4, batch -> {
+            throw new IllegalStateException("disk on fire");
+        });
+
+        IllegalStateException e = assertTimeoutPreemptively(Duration.ofSeconds(30),
+                () -> assertThrows(IllegalStateException.class, () -> importer.importCsv(file)));
+        assertEquals("disk on fire", e.getCause().getMessage());
+        assertEquals(0, ExpenseTracker.findExpensesByAccount(1).size());
+    }
+}
@@ -0,0 +1,87 @@
+package expensetracker;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.sql.ResultSet;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ExpenseServerTest {
+    @TempDir
+    Path dir;
+
+    private ExpenseServer server;
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @BeforeEach
+    void start() throws Exception {
+        ExpenseTracker.initDB("jdbc:sqlite:" + dir.resolve("server.db"));
+        TestDatabases.addAccounts(ExpenseTracker.database(), 2);
+        server = new ExpenseServer(0);
+        server.start();
+    }
+
+    @AfterEach
+    void stop() throws Exception {
+        server.close();
+        ExpenseTracker.closeDB();
+    }
+
+    private HttpResponse<String> post(String path, String json) throws Exception {
+        return client.send(HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + server.getPort() + path))
+                .POST(HttpRequest.BodyPublishers.ofString(json)).build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    @Test
+    void insertsAnExpenseOfAKnownAccount() throws Exception {
+        HttpResponse<String> response = post("/expenses", "{\"accountId\":1,\"date\":\"2024-12-14\",\"description\":\"Lunch\",\"amount\":\"20.50\"}");
+        assertEquals(201, response.statusCode(), response.body());
+        assertTrue(response.body().startsWith("{\"id\":"), response.body());
+    }
+
+    @Test
+    void rejectsAnUnknownAccountWithBadRequest() throws Exception {
+        HttpResponse<String> single = post("/expenses", "{\"accountId\":99,\"date\":\"2024-12-14\",\"description\":\"Lunch\",\"amount\":\"20.50\"}");
+        assertEquals(400, single.statusCode(), single.body());
+        assertEquals("{\"error\":\"No account with id 99\"}", single.body());
+
+        HttpResponse<String> bulk = post("/expenses/bulk", "[{\"accountId\":1,\"date\":\"2024-12-14\",\"description\":\"a\",\"amount\":1},"
+                + "{\"accountId\":98,\"date\":\"2024-12-14\",\"description\":\"b\",\"amount\":1}]");
+        assertEquals(400, bulk.statusCode(), bulk.body());
+        assertEquals(0, ExpenseTracker.findExpensesByAccount(1).size(), "nothing of a refused bulk request is written");
+    }
+
+    // ExpenseLoadTest's mixed load, shortened: no request may fail, and every acknowledged write
+    // must be in the table once the writer has flushed
+    @Test
+    void servesMixedLoadWithoutErrors() throws Exception {
+        TestDatabases.addAccounts(ExpenseTracker.database(), ExpenseLoadTest.ACCOUNTS);
+        ExpenseLoadTest.Result result = ExpenseLoadTest.run("http://127.0.0.1:" + server.getPort(), 16, 3, 20);
+        assertEquals(0, result.errors);
+        assertTrue(result.reads.length > 0 && result.writes.length > 0, result.reads.length + " reads, " + result.writes.length + " writes");
+        ExpenseTracker.writer().flush();
+        try (PooledConnection conn = ExpenseTracker.database().reader();
+             ResultSet rs = conn.prepare("SELECT COUNT(*) FROM expenses WHERE description = 'Load test'").executeQuery()) {
+            assertTrue(rs.next());
+            assertEquals(result.writes.length, rs.getLong(1));
+        }
+    }
+
+    @Test
+    void rejectsAmountsOutOfRangeWithBadRequest() throws Exception {
+        for (String amount : new String[]{"1e999999999", "-1e999999999", "1e-999999999", "0.001", "92233720368547758.08"}) {
+            HttpResponse<String> response = post("/expenses", "{\"accountId\":1,\"date\":\"2024-12-14\",\"description\":\"Lunch\",\"amount\":" + amount + "}");
+            assertEquals(400, response.statusCode(), amount + ": " + response.body());
+        }
+        assertEquals(201, post("/expenses", "{\"accountId\":1,\"date\":\"2024-12-14\",\"description\":\"Lunch\",\"amount\":2.05E3}").statusCode());
+        assertEquals(201, post("/expenses", "{\"accountId\":1,\"date\":\"2024-12-14\",\"description\":\"Lunch\",\"amount\":0E+999999999}").statusCode());
+    }
+}
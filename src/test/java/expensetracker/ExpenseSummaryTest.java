@@ -0,0 +1,85 @@
+package expensetracker;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// The consistency checker: the triggers keep expense_totals equal to a fresh aggregation through
+// inserts, updates and deletes, and checkConsistency names every bucket that drifts from it
+class ExpenseSummaryTest {
+    private static final String[] CATEGORIES = {"Food", "Transport", null};
+
+    @TempDir
+    Path dir;
+
+    private Database db;
+
+    @BeforeEach
+    void seed() throws SQLException {
+        List<Expense> expenses = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            expenses.add(new Expense(1 + i % 3, String.format("2024-%02d-%02d", 1 + i % 6, 1 + i % 28), "Seeded " + i, 100 + i, CATEGORIES[i % CATEGORIES.length]));
+        }
+        db = TestDatabases.seeded(dir, 3, expenses);
+    }
+
+    @AfterEach
+    void close() throws SQLException {
+        db.close();
+    }
+
+    private void execute(String sql) throws SQLException {
+        try (PooledConnection conn = db.writer(); Statement stmt = conn.connection().createStatement()) {
+            stmt.executeUpdate(sql);
+        }
+    }
+
+    private List<String> check() throws SQLException {
+        try (PooledConnection conn = db.writer()) {
+            return ExpenseSummary.checkConsistency(conn);
+        }
+    }
+
+    @Test
+    void triggersKeepTheTotalsConsistent() throws SQLException {
+        assertEquals(Collections.emptyList(), check());
+        execute("UPDATE expenses SET amount = amount * 2 WHERE id % 7 = 0");
+        execute("UPDATE expenses SET date = '2023-12-31' WHERE id % 11 = 0"); // Moves rows to another month
+        execute("UPDATE expenses SET account_id = 3 WHERE account_id = 2 AND id % 5 = 0");
+        execute("UPDATE expenses SET category_id = NULL WHERE id % 13 = 0");
+        execute("DELETE FROM expenses WHERE id % 4 = 0");
+        assertEquals(Collections.emptyList(), check());
+        execute("DELETE FROM expenses WHERE account_id = 1");
+        assertEquals(Collections.emptyList(), check());
+        try (PooledConnection conn = db.reader()) {
+            assertEquals(0, ExpenseSummary.totalsByAccount(conn).getOrDefault(1, 0L));
+        }
+    }
+
+    @Test
+    void reportsEveryDriftedBucketAndRebuildRepairsThem() throws SQLException {
+        execute("UPDATE expense_totals SET total = total + 1 WHERE account_id = 1 AND month = '2024-01'");
+        execute("DELETE FROM expense_totals WHERE account_id = 2 AND month = '2024-02'");
+        execute("INSERT INTO expense_totals (account_id, category_id, month, total, row_count) VALUES (3, 0, '1999-01', 5, 1)");
+        List<String> mismatches = check();
+        assertEquals(3, mismatches.size(), mismatches.toString());
+        assertTrue(mismatches.contains("account 3, category 0, month 1999-01: expected null (null rows), stored 5 (1 rows)"), mismatches.toString());
+        assertTrue(mismatches.stream().anyMatch(m -> m.startsWith("account 1, ") && m.contains("month 2024-01")), mismatches.toString());
+        assertTrue(mismatches.stream().anyMatch(m -> m.startsWith("account 2, ") && m.contains("month 2024-02") && m.endsWith("stored null (null rows)")),
+                mismatches.toString());
+        try (PooledConnection conn = db.writer()) {
+            ExpenseSummary.rebuild(conn);
+        }
+        assertEquals(Collections.emptyList(), check());
+    }
+}
@@ -0,0 +1,181 @@
+package expensetracker;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// deleteExpenses must leave the totals, the daily totals and the search index as the per-row
+// triggers would, on both its paths; deleteAccount must take archived expenses along
+class ExpenseTrackerTest {
+    private static final String[] CATEGORIES = {"Food", "Transport", "Bills", null};
+    private static final int ROWS = 6_000;
+
+    @TempDir
+    Path dir;
+
+    private Database db;
+
+    @BeforeEach
+    void seed() throws SQLException {
+        List<Expense> expenses = new ArrayList<>(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            expenses.add(new Expense(1 + i % 2, String.format("%d-%02d-%02d", 2022 + i % 3, 1 + i % 12, 1 + i % 28),
+                    (i % 3 == 0 ? "Coffee " : "Groceries ") + i, 100 + i, CATEGORIES[i % CATEGORIES.length]));
+        }
+        db = TestDatabases.seeded(dir, 2, expenses);
+    }
+
+    @AfterEach
+    void close() throws SQLException {
+        db.close();
+    }
+
+    private int delete(int accountId, List<long[]> idRanges) throws SQLException {
+        try (PooledConnection conn = db.writer()) {
+            return ExpenseTracker.deleteExpenses(conn, accountId, idRanges);
+        }
+    }
+
+    private long query(String sql) throws SQLException {
+        try (PooledConnection conn = db.writer(); Statement stmt = conn.connection().createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    private void assertConsistent() throws SQLException {
+        try (PooledConnection conn = db.writer()) {
+            assertEquals(Collections.emptyList(), ExpenseSummary.checkConsistency(conn));
+            try (Statement stmt = conn.connection().createStatement()) {
+                stmt.execute("INSERT INTO expenses_fts (expenses_fts, rank) VALUES ('integrity-check', 1)");
+            }
+        }
+        String fresh = "SELECT account_id, epoch_day, SUM(amount), COUNT(*) FROM expenses GROUP BY 1, 2";
+        String stored = "SELECT account_id, epoch_day, total, row_count FROM expense_daily_totals";
+        assertEquals(0, query("SELECT COUNT(*) FROM (" + fresh + " EXCEPT " + stored + ")"));
+        assertEquals(0, query("SELECT COUNT(*) FROM (" + stored + " EXCEPT " + fresh + ")"));
+        assertEquals(query("SELECT COUNT(*) FROM expenses WHERE description LIKE 'Coffee %'"),
+                query("SELECT COUNT(*) FROM expenses_fts WHERE expenses_fts MATCH 'coffee'"));
+    }
+
+    // Every other id of the account's rows in [first, last], as single-row ranges
+    private List<long[]> scattered(int accountId, long first, long last) throws SQLException {
+        List<long[]> ranges = new ArrayList<>();
+        try (PooledConnection conn = db.writer(); Statement stmt = conn.connection().createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT id FROM expenses WHERE account_id = " + accountId + " AND id BETWEEN " + first + " AND " + last + " ORDER BY id")) {
+            for (int i = 0; rs.next(); i++) {
+                if (i % 2 == 0) {
+                    ranges.add(new long[]{rs.getLong(1), rs.getLong(1)});
+                }
+            }
+        }
+        return ranges;
+    }
+
+    @Test
+    void bulkDeleteAdjustsTotalsAndIndexOncePerSet() throws SQLException {
+        List<long[]> ranges = scattered(1, 1, ROWS);
+        ranges.add(new long[]{1, ROWS}); // Overlaps the others and takes the rest of account 1
+        assertTrue(ranges.size() >= ExpenseTracker.BULK_DELETE_ROWS);
+        assertEquals(ROWS / 2, delete(1, ranges));
+        assertEquals(0, query("SELECT COUNT(*) FROM expenses WHERE account_id = 1"));
+        assertEquals(ROWS / 2, query("SELECT COUNT(*) FROM expenses WHERE account_id = 2"));
+        assertEquals(0, query("SELECT COUNT(*) FROM expense_totals WHERE account_id = 1"));
+        assertEquals(0, query("SELECT COUNT(*) FROM expense_daily_totals WHERE account_id = 1"));
+        assertConsistent();
+    }
+
+    private List<String> triggers() throws SQLException {
+        List<String> triggers = new ArrayList<>();
+        try (PooledConnection conn = db.writer(); Statement stmt = conn.connection().createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT name, sql FROM sqlite_master WHERE type = 'trigger' ORDER BY name")) {
+            while (rs.next()) {
+                triggers.add(rs.getString(1) + ": " + rs.getString(2));
+            }
+        }
+        return triggers;
+    }
+
+    @Test
+    void bulkDeleteLeavesTheTriggersInPlace() throws SQLException {
+        List<String> triggers = triggers();
+        long schemaVersion = query("PRAGMA schema_version");
+        assertEquals(ROWS / 4, delete(2, scattered(2, 1, ROWS)));
+        assertEquals(triggers, triggers());
+        assertEquals(schemaVersion, query("PRAGMA schema_version"), "a bulk delete must not change the schema");
+        assertEquals(0, query("SELECT bypass FROM expense_trigger_control"));
+        assertConsistent();
+        try (PooledConnection conn = db.writer(); Statement stmt = conn.connection().createStatement()) {
+            stmt.executeUpdate("DELETE FROM expenses WHERE id IN (2, 4, 6)");
+        }
+        assertConsistent();
+    }
+
+    @Test
+    void smallDeleteGoesThroughTheTriggers() throws SQLException {
+        assertEquals(4, delete(1, Arrays.asList(new long[]{1, 3}, new long[]{7, 7}, new long[]{9, 10}))); // 1, 3, 7 and 9
+        assertEquals(0, delete(1, Collections.singletonList(new long[]{2, 2}))); // Account 2's row
+        assertEquals(ROWS - 4, query("SELECT COUNT(*) FROM expenses"));
+        assertConsistent();
+    }
+
+    @Test
+    void deletesKeepTheColumnarMirror() throws SQLException {
+        System.setProperty("expensetracker.columnar", "true");
+        try (PooledConnection conn = db.writer()) {
+            db.loadColumnar(conn);
+        } finally {
+            System.clearProperty("expensetracker.columnar");
+        }
+        ColumnarExpenseStore columnar = db.columnar();
+        delete(1, Arrays.asList(new long[]{1, 3}, new long[]{7, 7}));
+        delete(2, scattered(2, 1, ROWS));
+        assertEquals(query("SELECT COUNT(*) FROM expenses"), columnar.size());
+        try (PooledConnection conn = db.reader()) {
+            for (int account = 1; account <= 2; account++) {
+                assertEquals(ExpenseSummary.accountTotal(conn, account), columnar.totalCents(account));
+            }
+        }
+    }
+
+    @Test
+    void deletingAnAccountEmptiesItsArchivedYears() throws SQLException, IOException {
+        db.archive().archive(2023, false, true); // 2022, compressed
+        db.archive().archive(2024, false, false); // 2023
+        try (PooledConnection conn = db.writer()) {
+            assertEquals(1, ExpenseTracker.deleteAccount(conn, 1));
+        }
+        try (PooledConnection conn = db.reader()) {
+            assertEquals(Collections.emptyList(), ExpenseSummary.checkConsistency(conn));
+            String all = db.archive().expenses(conn, null, null);
+            assertTrue(all.contains("UNION ALL"), all);
+            try (Statement stmt = conn.connection().createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT COUNT(*), SUM(account_id = 1) FROM " + all + " e")) {
+                assertTrue(rs.next());
+                assertEquals(ROWS / 2, rs.getLong(1));
+                assertEquals(0, rs.getLong(2));
+            }
+            long archived = 0;
+            for (ExpenseArchive.Partition partition : db.archive().partitions(conn)) {
+                archived += partition.getRowCount();
+            }
+            assertEquals(2 * ROWS / 6, archived); // Account 2's rows of 2022 and 2023
+        }
+        assertTrue(Files.exists(dir.resolve("test.2022.db.gz")));
+        assertTrue(Files.notExists(dir.resolve("test.2022.db")));
+        assertEquals(0, query("SELECT COUNT(*) FROM accounts WHERE id = 1"));
+    }
+}
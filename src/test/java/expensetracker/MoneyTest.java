@@ -0,0 +1,29 @@
+package expensetracker;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+class MoneyTest {
+    @Test
+    void formatsMinorUnitsWithTheLedgerScale() {
+        assertEquals("12.50", Money.format(1250));
+        assertEquals("-0.05", Money.format(-5));
+        assertEquals("0.00", Money.format(0));
+    }
+
+    @Test
+    void formatsTheExtremesOfLong() {
+        assertEquals("92233720368547758.07", Money.format(Long.MAX_VALUE));
+        assertEquals("-92233720368547758.08", Money.format(Long.MIN_VALUE));
+        assertEquals("-9223372036854775.808", Money.appendMinor(new StringBuilder(), Long.MIN_VALUE, 3).toString());
+        assertEquals("-9223372036854775808", Money.appendMinor(new StringBuilder(), Long.MIN_VALUE, 0).toString());
+    }
+
+    @Test
+    void parsesWhatItFormats() {
+        for (long minor : new long[]{0, 1, -1, 99, -100, 123_456_789, Long.MAX_VALUE}) {
+            assertEquals(minor, Money.parseMinor(Money.format(minor)));
+        }
+    }
+}
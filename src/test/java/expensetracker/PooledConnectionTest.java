@@ -0,0 +1,60 @@
+package expensetracker;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class PooledConnectionTest {
+    @TempDir
+    Path dir;
+
+    private Database open(int statementCacheSize) throws Exception {
+        Database.Config config = new Database.Config();
+        config.readers = 1;
+        config.statementCacheSize = statementCacheSize;
+        return Database.open("jdbc:sqlite:" + dir.resolve("cache.db"), config);
+    }
+
+    @Test
+    void reusesCachedStatements() throws Exception {
+        try (Database db = open(4); PooledConnection conn = db.reader()) {
+            assertSame(conn.prepare("SELECT 1"), conn.prepare("SELECT 1"));
+        }
+    }
+
+    @Test
+    void closesStatementsEvictedFromTheCacheWhenTheLeaseEnds() throws Exception {
+        try (Database db = open(4)) {
+            List<PreparedStatement> prepared = new ArrayList<>();
+            try (PooledConnection conn = db.reader()) {
+                for (int i = 0; i < 10; i++) {
+                    prepared.add(conn.prepare("SELECT " + i));
+                }
+                // Evicted, but the lease may still be using it
+                PreparedStatement first = prepared.get(0);
+                assertFalse(first.isClosed());
+                try (ResultSet rs = first.executeQuery()) {
+                    assertTrue(rs.next());
+                    assertEquals(0, rs.getInt(1));
+                }
+            }
+            for (int i = 0; i < 10; i++) {
+                assertEquals(i < 6, prepared.get(i).isClosed(), "statement " + i);
+            }
+            try (PooledConnection conn = db.reader()) {
+                assertSame(prepared.get(9), conn.prepare("SELECT 9"));
+                assertNotSame(prepared.get(0), conn.prepare("SELECT 0"));
+            }
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package expensetracker;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// The --check-plans gate: no hot query may need a full table scan; and databases of older versions still migrate
+class SchemaMigrationsTest {
+    @TempDir
+    Path dir;
+
+    private Database open(String name) throws SQLException {
+        return TestDatabases.open(dir.resolve(name));
+    }
+
+    // Deterministic rows spread evenly over the accounts
+    private static void seed(Database db, int accounts, int rows) throws SQLException {
+        TestDatabases.addAccounts(db, accounts);
+        List<Expense> expenses = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            expenses.add(new Expense(1 + i % accounts, String.format("%d-%02d-%02d", 2022 + i % 3, 1 + i % 12, 1 + i % 28), "Seeded " + i, 100 + i, "Food"));
+        }
+        TestDatabases.insert(db, expenses);
+    }
+
+    private static List<String> fullScans(Database db) throws SQLException {
+        try (PooledConnection conn = db.writer()) {
+            return SchemaMigrations.findFullScans(conn.connection());
+        }
+    }
+
+    private static void execute(Database db, String sql) throws SQLException {
+        try (PooledConnection conn = db.writer(); Statement stmt = conn.connection().createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+
+    @Test
+    void seededDatabaseKeepsHotQueriesOnIndexes() throws Exception {
+        try (Database db = open("seeded.db")) {
+            seed(db, 50, 20_000);
+            assertEquals(Collections.emptyList(), fullScans(db));
+            // Statistics of a realistically sized table agree with the schema's indexes
+            execute(db, "ANALYZE");
+            assertEquals(Collections.emptyList(), fullScans(db));
+        }
+    }
+
+    @Test
+    void archiveUnionKeepsEveryBranchOnItsIndex() throws Exception {
+        try (Database db = open("archived.db")) {
+            seed(db, 50, 3_000);
+            db.archive().archive(2024, false, false);
+            try (PooledConnection conn = db.reader()) {
+                // As ExpenseTracker.findExpensesByAccount builds it
+                String byAccount = "SELECT e.id, e.date, e.description, e.amount, e.category_id FROM " + db.archive().expenses(conn, null, null)
+                        + " e WHERE e.account_id = ? ORDER BY e.id";
+                assertTrue(byAccount.contains("UNION ALL"), byAccount);
+                assertEquals(Collections.emptyList(), SchemaMigrations.findFullScans(conn.connection(), byAccount));
+            }
+        }
+    }
+
+    @Test
+    void shippedDatabaseKeepsHotQueriesOnIndexes() throws Exception {
+        Path shipped = Paths.get("ExpensesDB.db");
+        Files.copy(shipped, dir.resolve("shipped.db"));
+        try (Database db = open("shipped.db")) {
+            assertEquals(Collections.emptyList(), fullScans(db));
+        }
+    }
+
+    private static long count(Database db, String sql) throws SQLException {
+        try (PooledConnection conn = db.reader(); Statement stmt = conn.connection().createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    @Test
+    void guiEraDatabaseWithIncompleteRowsMigrates() throws Exception {
+        Path file = dir.resolve("gui.db");
+        // The first ExpenseTrackerGUI's schema and insert, which gave an unknown account name a NULL account_id
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + file); Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("CREATE TABLE IF NOT EXISTS accounts (id INTEGER PRIMARY KEY AUTOINCREMENT, name TEXT);");
+            stmt.executeUpdate("CREATE TABLE IF NOT EXISTS expenses (id INTEGER PRIMARY KEY AUTOINCREMENT, account_id INTEGER, date TEXT, "
+                    + "description TEXT, amount REAL, category TEXT, FOREIGN KEY (account_id) REFERENCES accounts(id));");
+            stmt.executeUpdate("INSERT INTO accounts (name) VALUES ('Checking')");
+            try (PreparedStatement insert = conn.prepareStatement("INSERT INTO expenses (account_id, date, description, amount, category) "
+                    + "VALUES ((SELECT id FROM accounts WHERE name = ?), ?, ?, ?, ?)")) {
+                Object[][] rows = {
+                    {"Checking", "2021-03-04", "Groceries", 12.5, "Food"},
+                    {"Savings", "2021-03-05", "Unknown account", 3.0, "Food"},
+                    {"Checking", null, "No date", 4.0, null},
+                    {"Checking", "2021-03-06", null, 5.0, null},
+                    {"Checking", "2021-03-07", "No amount", null, "Food"},
+                    {"Checking", "2021-03-08", "Rent", 700.0, "Home"},
+                };
+                for (Object[] row : rows) {
+                    for (int i = 0; i < row.length; i++) {
+                        insert.setObject(i + 1, row[i]);
+                    }
+                    insert.executeUpdate();
+                }
+            }
+        }
+
+        try (Database db = TestDatabases.open(file)) {
+            try (PooledConnection conn = db.reader()) {
+                assertEquals(SchemaMigrations.latestVersion(), SchemaMigrations.currentVersion(conn.connection()));
+                assertEquals(Collections.emptyList(), ExpenseSummary.checkConsistency(conn));
+            }
+            assertEquals(2, count(db, "SELECT COUNT(*) FROM expenses"));
+            assertEquals(71250, count(db, "SELECT SUM(amount) FROM expenses"));
+            assertEquals(4, count(db, "SELECT COUNT(*) FROM expenses_quarantine"));
+            assertEquals(2 + 3 + 4 + 5, count(db, "SELECT SUM(id) FROM expenses_quarantine"));
+        }
+    }
+}
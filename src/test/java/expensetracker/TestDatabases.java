@@ -0,0 +1,70 @@
+package expensetracker;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+
+// Databases for tests: a migrated file, accounts 1..n named "Account n", and rows inserted
+// through the writer's bulk path in one transaction
+final class TestDatabases {
+    private TestDatabases() {
+    }
+
+    // A migrated database at 'file' with two readers
+    static Database open(Path file) throws SQLException {
+        Database.Config config = new Database.Config();
+        config.readers = 2;
+        return open(file, config);
+    }
+
+    static Database open(Path file, Database.Config config) throws SQLException {
+        Database db = Database.open("jdbc:sqlite:" + file, config);
+        try (PooledConnection conn = db.writer()) {
+            SchemaMigrations.migrate(conn.connection());
+        } catch (SQLException e) {
+            db.close();
+            throw e;
+        }
+        return db;
+    }
+
+    // A migrated database in 'dir' holding 'accounts' accounts and 'rows'
+    static Database seeded(Path dir, int accounts, List<Expense> rows) throws SQLException {
+        Database db = open(dir.resolve("test.db"));
+        addAccounts(db, accounts);
+        insert(db, rows);
+        return db;
+    }
+
+    static void addAccounts(Database db, int count) throws SQLException {
+        try (PooledConnection conn = db.writer()) {
+            PreparedStatement stmt = conn.prepare("INSERT OR IGNORE INTO accounts (id, name) VALUES (?, ?)");
+            for (int i = 1; i <= count; i++) {
+                stmt.setInt(1, i);
+                stmt.setString(2, "Account " + i);
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        }
+        db.accounts().invalidate();
+    }
+
+    static void insert(Database db, List<Expense> rows) throws SQLException {
+        try (PooledConnection conn = db.writer()) {
+            Connection c = conn.connection();
+            c.setAutoCommit(false);
+            try {
+                ExpenseTracker.insertRows(conn, rows);
+                c.commit();
+            } catch (SQLException e) {
+                c.rollback();
+                db.categories().invalidate();
+                throw e;
+            } finally {
+                c.setAutoCommit(true);
+            }
+        }
+    }
+}
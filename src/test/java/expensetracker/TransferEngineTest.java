@@ -0,0 +1,156 @@
+package expensetracker;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// The 'ExpenseBenchmark transfers' stress test under the build: the sum of all balances must not
+// move and no balance may go negative, however many threads and workers contend
+class TransferEngineTest {
+    private static final int ACCOUNTS = 20;
+    private static final long OPENING_BALANCE = 10_000;
+
+    @TempDir
+    Path dir;
+
+    private Database db;
+
+    @BeforeEach
+    void openAccounts() throws SQLException {
+        Database.Config config = new Database.Config();
+        config.readers = 1;
+        config.busyTimeoutMillis = 10; // Workers collide on BEGIN IMMEDIATE and take the retry path
+        db = Database.open("jdbc:sqlite:" + dir.resolve("transfers.db"), config);
+        try (PooledConnection conn = db.writer()) {
+            SchemaMigrations.migrate(conn.connection());
+            PreparedStatement stmt = conn.prepare("INSERT INTO accounts (id, name, balance) VALUES (?, ?, ?)");
+            for (int i = 1; i <= ACCOUNTS; i++) {
+                stmt.setInt(1, i);
+                stmt.setString(2, "Stress " + i);
+                stmt.setLong(3, OPENING_BALANCE);
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        }
+        db.accounts().invalidate();
+    }
+
+    @AfterEach
+    void close() throws SQLException {
+        db.close();
+    }
+
+    private long balance(int accountId) throws SQLException {
+        try (PooledConnection conn = db.reader()) {
+            PreparedStatement stmt = conn.prepare("SELECT balance FROM accounts WHERE id = ?");
+            stmt.setInt(1, accountId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+    }
+
+    private long totalBalance() throws SQLException {
+        try (PooledConnection conn = db.reader(); ResultSet rs = conn.prepare("SELECT SUM(balance) FROM accounts").executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    private long accountsBelowZero() throws SQLException {
+        try (PooledConnection conn = db.reader(); ResultSet rs = conn.prepare("SELECT COUNT(*) FROM accounts WHERE balance < 0").executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    @Test
+    void conservesBalancesUnderConcurrentTransfers() throws Exception {
+        int threads = 16;
+        int perThread = 500;
+        LongAdder committed = new LongAdder();
+        LongAdder refused = new LongAdder();
+        LongAdder failed = new LongAdder();
+        try (TransferEngine engine = new TransferEngine(db, 4, 64)) {
+            long before = engine.totalBalance();
+            List<Thread> callers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int seed = t;
+                callers.add(new Thread(() -> {
+                    Random random = new Random(seed);
+                    List<CompletableFuture<Boolean>> pending = new ArrayList<>();
+                    for (int i = 0; i < perThread; i++) {
+                        // Amounts up to half an opening balance, so plenty are refused for lack of funds
+                        pending.add(engine.submit(1 + random.nextInt(ACCOUNTS), 1 + random.nextInt(ACCOUNTS), 1 + random.nextInt(5_000)));
+                    }
+                    for (CompletableFuture<Boolean> result : pending) {
+                        try {
+                            (result.join() ? committed : refused).increment();
+                        } catch (RuntimeException e) {
+                            failed.increment();
+                        }
+                    }
+                }));
+            }
+            callers.forEach(Thread::start);
+            for (Thread caller : callers) {
+                caller.join();
+            }
+            assertEquals(0, failed.sum());
+            assertEquals((long) threads * perThread, committed.sum() + refused.sum());
+            assertTrue(committed.sum() > 0);
+            assertEquals(before, engine.totalBalance());
+        }
+        assertEquals(ACCOUNTS * OPENING_BALANCE, totalBalance());
+        assertEquals(0, accountsBelowZero());
+    }
+
+    @Test
+    void refusedTransfersLeaveNoTrace() throws SQLException {
+        try (TransferEngine engine = new TransferEngine(db)) {
+            assertFalse(engine.transfer(1, 2, OPENING_BALANCE + 1)); // Insufficient funds
+            assertFalse(engine.transfer(1, ACCOUNTS + 1, 100)); // Unknown target: the debit is put back
+            assertFalse(engine.transfer(ACCOUNTS + 1, 1, 100)); // Unknown source
+            assertFalse(engine.transfer(1, 1, 100));
+            assertTrue(engine.transfer(1, 2, OPENING_BALANCE));
+        }
+        assertEquals(0, balance(1));
+        assertEquals(2 * OPENING_BALANCE, balance(2));
+        assertEquals(ACCOUNTS * OPENING_BALANCE, totalBalance());
+    }
+
+    @Test
+    void stopsTakingTransfersOnceEveryWorkerHasStopped() throws Exception {
+        // No accounts table, so the workers can't prepare their statements and stop at once
+        try (Database empty = Database.open("jdbc:sqlite:" + dir.resolve("empty.db"), new Database.Config());
+             TransferEngine engine = new TransferEngine(empty)) {
+            List<CompletableFuture<Boolean>> queued = new ArrayList<>();
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            assertThrows(IllegalStateException.class, () -> {
+                while (System.nanoTime() < deadline) {
+                    queued.add(engine.submit(1, 2, 100));
+                    Thread.sleep(1);
+                }
+            });
+            for (CompletableFuture<Boolean> result : queued) {
+                ExecutionException e = assertThrows(ExecutionException.class, () -> result.get(10, TimeUnit.SECONDS));
+                assertTrue(e.getCause() instanceof SQLException, e.getCause().toString());
+            }
+        }
+    }
+}